@@ -0,0 +1,138 @@
+package com.fathzer.plugin.loader.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import com.fathzer.plugin.loader.jar.ClassDataSharingRecorder;
+import com.fathzer.plugin.loader.jar.JarClassLoaderPool;
+import com.fathzer.plugin.loader.jar.JarPluginLoader;
+import com.fathzer.plugin.loader.jar.MappedJarPluginLoader;
+
+/** Compares the cold start time of JVMs that load plugins with and without a Class Data Sharing archive.
+ * <br>This is not a JMH benchmark, cold starts require to launch new JVMs. Run it with
+ * <code>java -cp target/benchmarks.jar com.fathzer.plugin.loader.benchmarks.ClassDataSharingStartupHarness [classCount] [runs]</code>.
+ * <br>It generates a jar of <i>classCount</i> plugins (default 2000), and then:<ol>
+ * <li>Runs a training JVM that loads all the plugins using a {@link ClassDataSharingRecorder} and writes the class list.</li>
+ * <li>Builds a static CDS archive from this class list.</li>
+ * <li>Launches <i>runs</i> (default 10) JVMs that load all the plugins without the archive, and as many with the archive.
+ * This is done once with a {@link JarPluginLoader} that uses a {@link JarClassLoaderPool}, and once with a {@link MappedJarPluginLoader}.</li>
+ * </ol>
+ * It reports the average time spent in loading the plugins (measured by the launched JVMs) and the average JVM wall clock time.
+ * <br>Requires Java 11+.
+ */
+public final class ClassDataSharingStartupHarness {
+	private static final String JAR_NAME = "cds";
+	private static final String TRAIN = "train";
+	private static final String RUN = "run";
+	private static final String URL = "url";
+	private static final String MAPPED = "mapped";
+
+	private ClassDataSharingStartupHarness() {
+		super();
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length>0 && (TRAIN.equals(args[0]) || RUN.equals(args[0]))) {
+			child(args);
+			return;
+		}
+		final int classCount = args.length>0 ? Integer.parseInt(args[0]) : 2000;
+		final int runs = args.length>1 ? Integer.parseInt(args[1]) : 10;
+		final Path dir = Files.createTempDirectory("cds");
+		try {
+			final Path jar = SyntheticJars.create(dir, JAR_NAME, classCount);
+			final Path classList = dir.resolve("classes.lst");
+			final Path archive = dir.resolve("plugins.jsa");
+			launch(new ArrayList<>(), TRAIN, jar.toString(), classList.toString());
+			final List<String> dumpOptions = new ArrayList<>(ClassDataSharingRecorder.getDumpOptions(classList, archive));
+			dumpOptions.add("-Xlog:cds=off");
+			launch(dumpOptions);
+			System.out.println(classCount+" plugin classes, "+runs+" runs");
+			for (String loaderType : new String[] {URL, MAPPED}) {
+				final long[] without = new long[2];
+				final long[] with = new long[2];
+				for (int i = 0; i < runs; i++) {
+					add(without, launch(new ArrayList<>(), RUN, jar.toString(), loaderType));
+					add(with, launch(new ArrayList<>(ClassDataSharingRecorder.getRuntimeOptions(archive)), RUN, jar.toString(), loaderType));
+				}
+				System.out.println(loaderType+" class loader without archive: plugins loaded in "+without[0]/runs+"ms, JVM ran in "+without[1]/runs+"ms");
+				System.out.println(loaderType+" class loader with archive:    plugins loaded in "+with[0]/runs+"ms, JVM ran in "+with[1]/runs+"ms");
+			}
+		} finally {
+			SyntheticJars.delete(dir);
+		}
+	}
+
+	private static void add(long[] total, long[] values) {
+		total[0] += values[0];
+		total[1] += values[1];
+	}
+
+	/** Launches a JVM.
+	 * @param jvmOptions The JVM options
+	 * @param args The arguments of this class main method. If empty, no main class is launched.
+	 * @return An array containing the plugins loading time (or 0 if it was not printed by the JVM) and the JVM wall clock time.
+	 */
+	private static long[] launch(List<String> jvmOptions, String... args) throws IOException, InterruptedException {
+		final List<String> command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.addAll(jvmOptions);
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		if (args.length>0) {
+			command.add(ClassDataSharingStartupHarness.class.getName());
+			command.addAll(Arrays.asList(args));
+		}
+		final long start = System.nanoTime();
+		final Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		long loadingTime = 0;
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+			for (String line = in.readLine(); line!=null; line = in.readLine()) {
+				if (line.startsWith(RUN)) {
+					loadingTime = Long.parseLong(line.substring(RUN.length()).trim());
+				} else {
+					System.out.println(line);
+				}
+			}
+		}
+		if (process.waitFor()!=0) {
+			throw new IOException("Command "+command+" failed");
+		}
+		return new long[] {loadingTime, (System.nanoTime()-start)/1000000};
+	}
+
+	private static void child(String[] args) throws IOException {
+		final long start = System.nanoTime();
+		final Path jar = Paths.get(args[1]);
+		if (TRAIN.equals(args[0])) {
+			try (ClassDataSharingRecorder recorder = new ClassDataSharingRecorder()) {
+				load(new JarPluginLoader().withClassLoaderPool(recorder), jar);
+				recorder.writeClassList(Paths.get(args[2]));
+			}
+		} else if (MAPPED.equals(args[2])) {
+			try (MappedJarPluginLoader loader = new MappedJarPluginLoader()) {
+				load(loader, jar);
+			}
+		} else {
+			try (JarClassLoaderPool pool = new JarClassLoaderPool()) {
+				load(new JarPluginLoader().withClassLoaderPool(pool), jar);
+			}
+		}
+		System.out.println(RUN+" "+(System.nanoTime()-start)/1000000);
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static void load(JarPluginLoader loader, Path jar) throws IOException {
+		final List<Supplier> plugins = loader.getPlugins(jar, Supplier.class);
+		plugins.forEach(Supplier::get);
+	}
+}
@@ -0,0 +1,112 @@
+package com.fathzer.plugin.loader.benchmarks;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fathzer.plugin.loader.jar.MappedJarClassLoader;
+import com.fathzer.plugin.loader.utils.FileUtils;
+
+/** Measures the time needed by 32 threads to load, for the first time, the classes of a plugin jar.
+ * <br>Every iteration uses a new class loader, so classes are really loaded (not found in the class loader's cache).
+ * Each thread loads all the classes of the jar, starting at a different class, so different threads load different classes at the same time.
+ * <br>The <i>serial</i> loader is a {@link URLClassLoader} that is not registered as parallel capable, it serializes all class
+ * loading on its own lock. It is the baseline to compare with the parallel capable class loaders built by the library.
+ * <br>Run it with <code>java -jar target/benchmarks.jar ClassLoadingContentionBenchmark</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 30)
+@Fork(2)
+@Threads(ClassLoadingContentionBenchmark.THREADS)
+public class ClassLoadingContentionBenchmark {
+	static final int THREADS = 32;
+	private static final int CLASS_COUNT = 512;
+	private static final String JAR_NAME = "contention";
+
+	@Param({"serial", "url", "mapped"})
+	private String loaderType;
+
+	private Path dir;
+	private Path jar;
+	private List<String> classNames;
+	private ClassLoader loader;
+	private final AtomicInteger threadIndex = new AtomicInteger();
+
+	/** A {@link URLClassLoader} that is not parallel capable.
+	 * <br>Parallel capability is not inherited, a subclass that does not call {@link ClassLoader#registerAsParallelCapable()}
+	 * loads its classes while holding the lock of the class loader instance.
+	 */
+	private static class SerialURLClassLoader extends URLClassLoader {
+		private SerialURLClassLoader(URL url) {
+			super(new URL[] {url});
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void createJar() throws IOException {
+		dir = Files.createTempDirectory("contention");
+		jar = SyntheticJars.create(dir, JAR_NAME, CLASS_COUNT);
+		classNames = SyntheticJars.getClassNames(JAR_NAME, CLASS_COUNT);
+	}
+
+	@Setup(Level.Iteration)
+	public void createLoader() throws IOException {
+		threadIndex.set(0);
+		if ("serial".equals(loaderType)) {
+			loader = new SerialURLClassLoader(FileUtils.getURL(jar));
+		} else if ("url".equals(loaderType)) {
+			loader = new URLClassLoader(new URL[] {FileUtils.getURL(jar)});
+		} else if ("mapped".equals(loaderType)) {
+			loader = new MappedJarClassLoader(jar);
+		} else {
+			throw new IllegalArgumentException("Unknown loader type "+loaderType);
+		}
+	}
+
+	@TearDown(Level.Iteration)
+	public void closeLoader() throws IOException {
+		if (loader instanceof Closeable) {
+			((Closeable)loader).close();
+		}
+		loader = null;
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteJar() throws IOException {
+		SyntheticJars.delete(dir);
+	}
+
+	@Benchmark
+	public void loadClasses(Blackhole blackhole) throws ClassNotFoundException {
+		final int size = classNames.size();
+		final int start = (threadIndex.getAndIncrement() * size) / THREADS;
+		for (int i = 0; i < size; i++) {
+			blackhole.consume(Class.forName(classNames.get((start+i)%size), false, loader));
+		}
+	}
+}
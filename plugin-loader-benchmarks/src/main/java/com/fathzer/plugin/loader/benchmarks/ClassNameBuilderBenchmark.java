@@ -0,0 +1,70 @@
+package com.fathzer.plugin.loader.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fathzer.plugin.loader.ClassNameBuilder;
+import com.fathzer.plugin.loader.jar.ManifestAttributeClassNameBuilder;
+import com.fathzer.plugin.loader.jar.ServiceClassNameBuilder;
+
+/** Compares the time needed by {@link ServiceClassNameBuilder} and {@link ManifestAttributeClassNameBuilder} to find the plugin class names of a jar.
+ * <br>The jar contains 1 or 100 plugin classes. The first one is declared in the manifest, all of them are declared in the services file.
+ * <br>Run it with <code>java -jar target/benchmarks.jar ClassNameBuilderBenchmark -prof gc</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class ClassNameBuilderBenchmark {
+	@Param({"service", "manifest"})
+	private String builderType;
+
+	@Param({"1", "100"})
+	private int classCount;
+
+	private Path dir;
+	private Path jar;
+	private ClassNameBuilder<Path> builder;
+
+	@Setup
+	public void setup() throws IOException {
+		dir = Files.createTempDirectory("class-names");
+		jar = SyntheticJars.create(dir, "names", classCount);
+		if ("service".equals(builderType)) {
+			builder = ServiceClassNameBuilder.INSTANCE;
+		} else if ("manifest".equals(builderType)) {
+			builder = new ManifestAttributeClassNameBuilder(SyntheticJars.MANIFEST_ATTRIBUTE);
+		} else {
+			throw new IllegalArgumentException("Unknown builder type "+builderType);
+		}
+	}
+
+	@TearDown
+	public void deleteJar() throws IOException {
+		SyntheticJars.delete(dir);
+	}
+
+	@Benchmark
+	public Set<String> get() throws IOException {
+		return builder.get(jar, Supplier.class);
+	}
+}
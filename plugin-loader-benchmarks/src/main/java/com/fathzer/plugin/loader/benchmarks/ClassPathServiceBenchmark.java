@@ -0,0 +1,71 @@
+package com.fathzer.plugin.loader.benchmarks;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fathzer.plugin.loader.classloader.ServiceClassNameBuilder;
+import com.fathzer.plugin.loader.utils.FileUtils;
+
+/** Measures the time needed by {@link ServiceClassNameBuilder} to find the plugin class names in a class loader whose class path contains
+ * 10, 100 or 1000 jars.
+ * <br>Every jar declares the same plugin in its services file.
+ * <br>Run it with <code>java -jar target/benchmarks.jar ClassPathServiceBenchmark -prof gc</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class ClassPathServiceBenchmark {
+	@Param({"10", "100", "1000"})
+	private int jarCount;
+
+	private Path dir;
+	private URLClassLoader loader;
+	private ServiceClassNameBuilder builder;
+
+	@Setup
+	public void setup() throws IOException {
+		dir = Files.createTempDirectory("class-path");
+		final Path model = SyntheticJars.create(dir, "model", 1);
+		final Path jarsDir = Files.createDirectory(dir.resolve("jars"));
+		final URL[] urls = new URL[jarCount];
+		for (int i = 0; i < jarCount; i++) {
+			urls[i] = FileUtils.getURL(Files.copy(model, jarsDir.resolve("plugin"+i+".jar")));
+		}
+		// No parent, the application class path should not be searched
+		loader = new URLClassLoader(urls, null);
+		builder = new ServiceClassNameBuilder();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		loader.close();
+		SyntheticJars.delete(dir);
+	}
+
+	@Benchmark
+	public Set<String> get() throws IOException {
+		return builder.get(loader, Supplier.class);
+	}
+}
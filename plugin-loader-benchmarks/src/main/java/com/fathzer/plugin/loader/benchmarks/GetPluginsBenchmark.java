@@ -0,0 +1,78 @@
+package com.fathzer.plugin.loader.benchmarks;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fathzer.plugin.loader.jar.JarPluginLoader;
+
+/** Measures the time needed by {@link JarPluginLoader#getPlugins(Path, Class)} to load the plugins of 1, 100 or 1000 jars.
+ * <br>Every jar contains {@value #CLASS_COUNT} plugins. As the loader builds a new class loader each time it is called, the plugin classes
+ * are loaded again by every operation. The class loaders are closed at the end of each operation.
+ * <br>Run it with <code>java -jar target/benchmarks.jar GetPluginsBenchmark -prof gc</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(2)
+public class GetPluginsBenchmark {
+	static final int CLASS_COUNT = 4;
+
+	@Param({"1", "100", "1000"})
+	private int jarCount;
+
+	private Path dir;
+	private List<Path> jars;
+	private JarPluginLoader loader;
+
+	@Setup
+	public void createJars() throws IOException {
+		dir = Files.createTempDirectory("get-plugins");
+		final Path model = SyntheticJars.create(dir, "model", CLASS_COUNT);
+		final Path jarsDir = Files.createDirectory(dir.resolve("jars"));
+		// Jars can contain the same classes, they are loaded by different class loaders
+		jars = new ArrayList<>(jarCount);
+		for (int i = 0; i < jarCount; i++) {
+			jars.add(Files.copy(model, jarsDir.resolve("plugin"+i+".jar")));
+		}
+		loader = new JarPluginLoader();
+	}
+
+	@TearDown
+	public void deleteJars() throws IOException {
+		SyntheticJars.delete(dir);
+	}
+
+	@Benchmark
+	@SuppressWarnings("rawtypes")
+	public int getPlugins() throws IOException {
+		int count = 0;
+		for (Path jar : jars) {
+			final List<Supplier> plugins = loader.getPlugins(jar, Supplier.class);
+			count += plugins.size();
+			final ClassLoader classLoader = plugins.get(0).getClass().getClassLoader();
+			((Closeable)classLoader).close();
+		}
+		return count;
+	}
+}
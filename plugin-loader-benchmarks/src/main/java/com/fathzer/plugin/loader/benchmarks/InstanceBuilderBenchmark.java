@@ -0,0 +1,59 @@
+package com.fathzer.plugin.loader.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fathzer.plugin.loader.CachedInstanceBuilder;
+import com.fathzer.plugin.loader.InstanceBuilder;
+
+/** Compares the time needed to instantiate a plugin with {@link InstanceBuilder#DEFAULT}, with {@link CachedInstanceBuilder}
+ * and with a direct constructor call.
+ * <br>Run it with <code>java -jar target/benchmarks.jar InstanceBuilderBenchmark -prof gc</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class InstanceBuilderBenchmark {
+	// Not final, to prevent the JIT compiler from treating the class as a constant
+	private Class<Plugin> pluginClass = Plugin.class;
+
+	/** A fake plugin. */
+	public static class Plugin {
+		private final long creationTime;
+
+		public Plugin() {
+			this.creationTime = System.nanoTime();
+		}
+
+		public long getCreationTime() {
+			return creationTime;
+		}
+	}
+
+	@Benchmark
+	public Plugin direct() {
+		return new Plugin();
+	}
+
+	@Benchmark
+	public Plugin defaultBuilder() throws Exception {
+		return InstanceBuilder.DEFAULT.get(pluginClass);
+	}
+
+	@Benchmark
+	public Plugin cachedBuilder() throws Exception {
+		return CachedInstanceBuilder.INSTANCE.get(pluginClass);
+	}
+}
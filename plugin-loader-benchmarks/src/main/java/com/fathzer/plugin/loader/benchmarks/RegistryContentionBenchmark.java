@@ -0,0 +1,96 @@
+package com.fathzer.plugin.loader.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fathzer.plugin.loader.utils.ConcurrentPluginRegistry;
+import com.fathzer.plugin.loader.utils.PluginRegistry;
+
+/** Compares the lookup throughput of a {@link PluginRegistry} protected by <i>synchronized</i> blocks and of a {@link ConcurrentPluginRegistry},
+ * while plugins are concurrently registered.
+ * <br>Each group is made of 7 threads that look up plugins and one thread that registers plugins.
+ * <br>Run it with <code>java -jar target/benchmarks.jar RegistryContentionBenchmark</code>.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class RegistryContentionBenchmark {
+	private static final int PLUGIN_COUNT = 100;
+
+	@Param({"synchronized", "concurrent"})
+	private String registryType;
+
+	private PluginRegistry<Plugin> registry;
+	private List<String> keys;
+
+	/** A fake plugin. */
+	public static final class Plugin {
+		private final String key;
+
+		private Plugin(String key) {
+			this.key = key;
+		}
+	}
+
+	@Setup
+	public void setup() {
+		if ("synchronized".equals(registryType)) {
+			registry = new PluginRegistry<>(p -> p.key);
+		} else if ("concurrent".equals(registryType)) {
+			registry = new ConcurrentPluginRegistry<>(p -> p.key);
+		} else {
+			throw new IllegalArgumentException("Unknown registry type "+registryType);
+		}
+		keys = new ArrayList<>(PLUGIN_COUNT);
+		for (int i = 0; i < PLUGIN_COUNT; i++) {
+			final String key = "plugin"+i;
+			keys.add(key);
+			registry.register(new Plugin(key));
+		}
+	}
+
+	@Benchmark
+	@Group("lookup")
+	@GroupThreads(7)
+	public Plugin get() {
+		final String key = keys.get(ThreadLocalRandom.current().nextInt(PLUGIN_COUNT));
+		if (registry instanceof ConcurrentPluginRegistry) {
+			return registry.get(key);
+		}
+		synchronized (registry) {
+			return registry.get(key);
+		}
+	}
+
+	@Benchmark
+	@Group("lookup")
+	@GroupThreads(1)
+	public Plugin register() {
+		final Plugin plugin = new Plugin(keys.get(ThreadLocalRandom.current().nextInt(PLUGIN_COUNT)));
+		if (registry instanceof ConcurrentPluginRegistry) {
+			return registry.register(plugin);
+		}
+		synchronized (registry) {
+			return registry.register(plugin);
+		}
+	}
+}
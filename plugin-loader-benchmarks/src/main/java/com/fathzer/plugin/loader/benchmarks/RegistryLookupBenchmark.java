@@ -0,0 +1,81 @@
+package com.fathzer.plugin.loader.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fathzer.plugin.loader.utils.ConcurrentPluginRegistry;
+import com.fathzer.plugin.loader.utils.PluginRegistry;
+
+/** Measures the time needed by a single thread to look up existing and missing keys in a {@link PluginRegistry} and in a {@link ConcurrentPluginRegistry}
+ * that contain 10 or 10000 plugins.
+ * <br>See {@link RegistryContentionBenchmark} for lookups while the registry is modified.
+ * <br>Run it with <code>java -jar target/benchmarks.jar RegistryLookupBenchmark -prof gc</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class RegistryLookupBenchmark {
+	@Param({"plain", "concurrent"})
+	private String registryType;
+
+	@Param({"10", "10000"})
+	private int pluginCount;
+
+	private PluginRegistry<Plugin> registry;
+	private String[] keys;
+	private String[] missingKeys;
+	private int index;
+
+	/** A fake plugin. */
+	public static final class Plugin {
+		private final String key;
+
+		private Plugin(String key) {
+			this.key = key;
+		}
+	}
+
+	@Setup
+	public void setup() {
+		if ("plain".equals(registryType)) {
+			registry = new PluginRegistry<>(p -> p.key);
+		} else if ("concurrent".equals(registryType)) {
+			registry = new ConcurrentPluginRegistry<>(p -> p.key);
+		} else {
+			throw new IllegalArgumentException("Unknown registry type "+registryType);
+		}
+		keys = new String[pluginCount];
+		missingKeys = new String[pluginCount];
+		for (int i = 0; i < pluginCount; i++) {
+			keys[i] = "plugin"+i;
+			missingKeys[i] = "missing"+i;
+			registry.register(new Plugin(keys[i]));
+		}
+	}
+
+	@Benchmark
+	public Plugin get() {
+		index = (index+1) % keys.length;
+		return registry.get(keys[index]);
+	}
+
+	@Benchmark
+	public Plugin getMissing() {
+		index = (index+1) % missingKeys.length;
+		return registry.get(missingKeys[index]);
+	}
+}
@@ -0,0 +1,80 @@
+package com.fathzer.plugin.loader.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.fathzer.plugin.loader.test.support.SyntheticJarBuilder;
+
+/** Builds jars of synthetic plugins used by the benchmarks.
+ * <br>Every generated class implements {@link Supplier} and is declared in the jar's <i>META-INF/services/java.util.function.Supplier</i>
+ * file. The name of the first class is also declared in the <i>Plugin-Class</i> attribute of the jar's manifest.
+ * <br>Jars are generated by the {@link SyntheticJarBuilder} of the <i>plugin-loader-test-support</i> module.
+ */
+public final class SyntheticJars {
+	/** The name of the manifest attribute that contains the name of the first plugin class. */
+	public static final String MANIFEST_ATTRIBUTE = "Plugin-Class";
+
+	private SyntheticJars() {
+		super();
+	}
+
+	/** Gets the names of the classes contained in a jar built by {@link #create(Path, String, int)}.
+	 * @param jarName The jar name passed to {@link #create(Path, String, int)}
+	 * @param classCount The number of classes passed to {@link #create(Path, String, int)}
+	 * @return a list of class names
+	 */
+	public static List<String> getClassNames(String jarName, int classCount) {
+		return getBuilder(jarName, classCount).getClassNames();
+	}
+
+	/** Creates a jar of synthetic plugins.
+	 * @param dir The folder where to create the jar
+	 * @param jarName The jar name, without the <i>.jar</i> extension. It is also used to build the package of the classes,
+	 * so that different jars contain different classes.
+	 * @param classCount The number of classes to generate
+	 * @return The jar file
+	 * @throws IOException If something went wrong
+	 */
+	public static Path create(Path dir, String jarName, int classCount) throws IOException {
+		final SyntheticJarBuilder builder = getBuilder(jarName, classCount);
+		if (classCount>0) {
+			builder.withManifestAttribute(MANIFEST_ATTRIBUTE, builder.getClassNames().get(0));
+		}
+		return builder.build(dir.resolve(jarName+".jar"));
+	}
+
+	private static SyntheticJarBuilder getBuilder(String jarName, int classCount) {
+		return new SyntheticJarBuilder().withPackageName("synthetic.p_"+toIdentifier(jarName)).withClassCount(classCount);
+	}
+
+	/** Deletes a file or a folder and all its content.
+	 * @param path The path to delete
+	 * @throws IOException If something went wrong
+	 */
+	public static void delete(Path path) throws IOException {
+		if (!Files.exists(path)) {
+			return;
+		}
+		final List<Path> files;
+		try (Stream<Path> stream = Files.walk(path)) {
+			files = stream.sorted(Collections.reverseOrder()).collect(Collectors.toList());
+		}
+		for (Path file : files) {
+			Files.delete(file);
+		}
+	}
+
+	private static String toIdentifier(String name) {
+		final StringBuilder result = new StringBuilder(name.length());
+		for (char c : name.toCharArray()) {
+			result.append(Character.isJavaIdentifierPart(c) ? c : '_');
+		}
+		return result.toString();
+	}
+}
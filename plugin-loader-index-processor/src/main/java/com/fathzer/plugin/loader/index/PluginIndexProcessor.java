@@ -0,0 +1,195 @@
+package com.fathzer.plugin.loader.index;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/** An annotation processor that generates a plugin index and plugin factories from {@link PluginService} annotations.
+ * <br>It generates:<ul>
+ * <li>A <i>META-INF/plugin-loader/index</i> resource. Each line of this UTF-8 file has the form <i>service=implementation</i>, where
+ * <i>service</i> is the binary name of the interface/class implemented/sub-classed by the plugin and <i>implementation</i> is
+ * the binary name of the plugin class.</li>
+ * <li>For every plugin class, a class in the same package whose name is the plugin's class binary simple name followed by
+ * <i>$$PluginFactory</i>. This class implements {@link java.util.function.Supplier} and returns a new plugin instance
+ * each time its <i>get</i> method is called.</li>
+ * </ul>
+ * <br>These files are read by <i>com.fathzer.plugin.loader.jar.PluginIndexClassNameBuilder</i> and
+ * <i>com.fathzer.plugin.loader.PluginFactoryInstanceBuilder</i>.
+ * <br>Warning: The index only contains the plugins of the classes compiled by the current compilation, and it replaces the existing one.
+ * So, an incremental build that only recompiles some classes (as IDEs usually do) produces an incomplete index. Do a full build before packaging the jar.
+ */
+public class PluginIndexProcessor extends AbstractProcessor {
+	/** The path of the index resource in the jar. */
+	public static final String INDEX_PATH = "META-INF/plugin-loader/index";
+	/** The suffix of the generated factory classes. */
+	public static final String FACTORY_SUFFIX = "$$PluginFactory";
+
+	private final Map<String, Set<String>> index = new TreeMap<>();
+
+	@Override
+	public Set<String> getSupportedAnnotationTypes() {
+		return Collections.singleton(PluginService.class.getCanonicalName());
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (Element element : roundEnv.getElementsAnnotatedWith(PluginService.class)) {
+			if (isValidPlugin(element)) {
+				final TypeElement plugin = (TypeElement) element;
+				final Set<String> services = getServices(plugin);
+				if (!services.isEmpty()) {
+					final String implementation = processingEnv.getElementUtils().getBinaryName(plugin).toString();
+					services.forEach(s -> index.computeIfAbsent(s, k -> new TreeSet<>()).add(implementation));
+					writeFactory(plugin);
+				}
+			}
+		}
+		if (roundEnv.processingOver() && !index.isEmpty()) {
+			writeIndex();
+		}
+		return true;
+	}
+
+	private boolean isValidPlugin(Element element) {
+		if (element.getKind()!=ElementKind.CLASS) {
+			return error(element, "@%s can only be used on classes", PluginService.class.getSimpleName());
+		}
+		final TypeElement type = (TypeElement) element;
+		if (!type.getModifiers().contains(Modifier.PUBLIC) || type.getModifiers().contains(Modifier.ABSTRACT)) {
+			return error(element, "A plugin class should be public and concrete");
+		}
+		if (type.getNestingKind()!=NestingKind.TOP_LEVEL) {
+			if (type.getNestingKind()!=NestingKind.MEMBER || !type.getModifiers().contains(Modifier.STATIC)) {
+				return error(element, "A nested plugin class should be a static member class");
+			}
+			if (!type.getEnclosingElement().getModifiers().contains(Modifier.PUBLIC)) {
+				return error(element, "The enclosing class of a plugin class should be public");
+			}
+		}
+		final boolean hasPublicNoArgConstructor = ElementFilter.constructorsIn(type.getEnclosedElements()).stream()
+				.anyMatch(c -> c.getModifiers().contains(Modifier.PUBLIC) && c.getParameters().isEmpty());
+		if (!hasPublicNoArgConstructor) {
+			return error(element, "A plugin class should have a public no argument constructor");
+		}
+		return true;
+	}
+
+	private Set<String> getServices(TypeElement plugin) {
+		final Set<String> result = new TreeSet<>();
+		for (AnnotationMirror annotation : plugin.getAnnotationMirrors()) {
+			if (((TypeElement)annotation.getAnnotationType().asElement()).getQualifiedName().contentEquals(PluginService.class.getCanonicalName())) {
+				for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation.getElementValues().entrySet()) {
+					@SuppressWarnings("unchecked")
+					final Iterable<? extends AnnotationValue> values = (Iterable<? extends AnnotationValue>) entry.getValue().getValue();
+					for (AnnotationValue value : values) {
+						final TypeMirror service = (TypeMirror) value.getValue();
+						if (processingEnv.getTypeUtils().isAssignable(processingEnv.getTypeUtils().erasure(plugin.asType()), processingEnv.getTypeUtils().erasure(service))) {
+							result.add(processingEnv.getElementUtils().getBinaryName((TypeElement)processingEnv.getTypeUtils().asElement(service)).toString());
+						} else {
+							error(plugin, "%s is not a %s", plugin.getQualifiedName(), service);
+							return Collections.emptySet();
+						}
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	private void writeFactory(TypeElement plugin) {
+		final PackageElement pkg = processingEnv.getElementUtils().getPackageOf(plugin);
+		final String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+		final String binaryName = processingEnv.getElementUtils().getBinaryName(plugin).toString();
+		final String factoryName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length()+1)) + FACTORY_SUFFIX;
+		final String pluginName = plugin.getQualifiedName().toString();
+		// Generic plugins are returned with wildcard type arguments, and created with the diamond operator, to prevent rawtypes warnings
+		final int typeParameters = plugin.getTypeParameters().size();
+		final String pluginType = typeParameters==0 ? pluginName : pluginName+"<"+String.join(", ", Collections.nCopies(typeParameters, "?"))+">";
+		final String constructor = typeParameters==0 ? pluginName : pluginName+"<>";
+		final String generated = getGeneratedAnnotation();
+		try (PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(binaryName+FACTORY_SUFFIX, plugin).openWriter())) {
+			if (!packageName.isEmpty()) {
+				out.println("package "+packageName+";");
+				out.println();
+			}
+			out.println("/** A factory of "+pluginName+" generated by "+getClass().getName()+".");
+			out.println(" */");
+			if (generated!=null) {
+				out.println("@"+generated+"(\""+getClass().getName()+"\")");
+			}
+			out.println("public final class "+factoryName+" implements java.util.function.Supplier<"+pluginType+"> {");
+			out.println("\t@Override");
+			out.println("\tpublic "+pluginType+" get() {");
+			out.println("\t\treturn new "+constructor+"();");
+			out.println("\t}");
+			out.println("}");
+		} catch (IOException e) {
+			error(plugin, "Unable to write the factory of %s: %s", pluginName, e);
+		}
+	}
+
+	/** Gets the annotation that marks the generated factories.
+	 * @return The name of the <i>Generated</i> annotation available in the compiled code (it depends on the java version), null if there's none.
+	 */
+	private String getGeneratedAnnotation() {
+		for (String name : new String[] {"javax.annotation.processing.Generated", "javax.annotation.Generated"}) {
+			if (processingEnv.getElementUtils().getTypeElement(name)!=null) {
+				return name;
+			}
+		}
+		return null;
+	}
+
+	/** Writes the index of the plugins found during this compilation.
+	 * <br>The previous index, if any, is overwritten. Plugins that are not compiled again are not merged in the new index.
+	 */
+	private void writeIndex() {
+		try {
+			final FileObject resource = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", INDEX_PATH);
+			try (Writer out = new OutputStreamWriter(resource.openOutputStream(), StandardCharsets.UTF_8)) {
+				for (Map.Entry<String, Set<String>> entry : index.entrySet()) {
+					for (String implementation : entry.getValue()) {
+						out.write(entry.getKey()+"="+implementation+"\n");
+					}
+				}
+			}
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Kind.ERROR, "Unable to write the plugin index: "+e);
+		}
+	}
+
+	private boolean error(Element element, String format, Object... args) {
+		processingEnv.getMessager().printMessage(Kind.ERROR, String.format(format, args), element);
+		return false;
+	}
+}
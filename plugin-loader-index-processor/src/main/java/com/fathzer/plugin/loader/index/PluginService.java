@@ -0,0 +1,21 @@
+package com.fathzer.plugin.loader.index;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/** Declares a plugin class.
+ * <br>The annotated class should be a public concrete class with a public no argument constructor.
+ * It is only used at compile time by {@link PluginIndexProcessor}.
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface PluginService {
+	/** Gets the interfaces/classes implemented/sub-classed by the plugin.
+	 * @return an array of classes
+	 */
+	Class<?>[] value();
+}
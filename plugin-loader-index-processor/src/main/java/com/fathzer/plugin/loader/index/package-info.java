@@ -0,0 +1,3 @@
+/** An annotation processor that generates plugin indexes and factories at build time.
+*/
+package com.fathzer.plugin.loader.index;
@@ -0,0 +1,159 @@
+package com.fathzer.plugin.loader.index;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PluginIndexProcessorTest {
+	private static final String SERVICE = "package p;\npublic interface Service {}";
+
+	/** The result of a compilation. */
+	private static class Compilation {
+		private final boolean success;
+		private final List<String> errors;
+
+		private Compilation(boolean success, List<String> errors) {
+			this.success = success;
+			this.errors = errors;
+		}
+	}
+
+	/** A source file in memory. */
+	private static class Source extends SimpleJavaFileObject {
+		private final String code;
+
+		private Source(String className, String code) {
+			super(URI.create("string:///"+className.replace('.', '/')+Kind.SOURCE.extension), Kind.SOURCE);
+			this.code = code;
+		}
+
+		@Override
+		public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+			return code;
+		}
+	}
+
+	private static Compilation compile(Path dir, Source... sources) throws IOException {
+		final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, Locale.ROOT, StandardCharsets.UTF_8)) {
+			final File output = dir.toFile();
+			fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singleton(output));
+			fileManager.setLocation(StandardLocation.SOURCE_OUTPUT, Collections.singleton(output));
+			// Warnings are errors, the generated code should not break builds that use -Werror
+			// (the processing lint is excluded, it reports every annotation that no processor claims)
+			final List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"), "-Xlint:all,-processing", "-Werror");
+			final JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, options, null, Arrays.asList(sources));
+			task.setProcessors(Collections.singleton(new PluginIndexProcessor()));
+			final boolean success = task.call();
+			final List<String> errors = diagnostics.getDiagnostics().stream().filter(d -> d.getKind()==Diagnostic.Kind.ERROR)
+					.map(d -> d.getMessage(Locale.ROOT)).collect(Collectors.toList());
+			return new Compilation(success, errors);
+		}
+	}
+
+	@Test
+	void testIndex(@TempDir Path dir) throws Exception {
+		final Compilation compilation = compile(dir, new Source("p.Service", SERVICE),
+				new Source("p.Plugin", "package p;\n@com.fathzer.plugin.loader.index.PluginService(Service.class)\npublic class Plugin implements Service {}"),
+				new Source("p.Outer", "package p;\npublic class Outer {\n"
+						+ "  @com.fathzer.plugin.loader.index.PluginService({Service.class, Runnable.class})\n"
+						+ "  public static class Nested implements Service, Runnable {\n"
+						+ "    public void run() {}\n"
+						+ "  }\n"
+						+ "  @com.fathzer.plugin.loader.index.PluginService(Service.class)\n"
+						+ "  public static class Generic<T, U extends Number> implements Service {}\n"
+						+ "}"),
+				new Source("p.NotAPlugin", "package p;\npublic class NotAPlugin implements Service {}"));
+		assertTrue(compilation.success, compilation.errors.toString());
+
+		// Lines are sorted by service, then by implementation, and use binary names
+		final List<String> index = Files.readAllLines(dir.resolve(PluginIndexProcessor.INDEX_PATH), StandardCharsets.UTF_8);
+		assertEquals(Arrays.asList("java.lang.Runnable=p.Outer$Nested", "p.Service=p.Outer$Generic", "p.Service=p.Outer$Nested", "p.Service=p.Plugin"), index);
+
+		// Factories are marked as generated
+		final String factorySource = new String(Files.readAllBytes(dir.resolve("p/Outer$Generic"+PluginIndexProcessor.FACTORY_SUFFIX+".java")), StandardCharsets.UTF_8);
+		assertTrue(factorySource.contains("Generated(\""+PluginIndexProcessor.class.getName()+"\")"), factorySource);
+
+		// Factories return new plugin instances
+		assertFalse(Files.exists(dir.resolve("p/NotAPlugin"+PluginIndexProcessor.FACTORY_SUFFIX+".class")));
+		try (URLClassLoader loader = new URLClassLoader(new URL[] {dir.toUri().toURL()}, getClass().getClassLoader())) {
+			for (String plugin : Arrays.asList("p.Plugin", "p.Outer$Nested", "p.Outer$Generic")) {
+				final Class<?> factoryClass = loader.loadClass(plugin+PluginIndexProcessor.FACTORY_SUFFIX);
+				final Supplier<?> factory = (Supplier<?>) factoryClass.getConstructor().newInstance();
+				final Object instance = factory.get();
+				assertEquals(plugin, instance.getClass().getName());
+				assertNotSame(instance, factory.get());
+			}
+		}
+	}
+
+	@Test
+	void testNoPlugin(@TempDir Path dir) throws IOException {
+		final Compilation compilation = compile(dir, new Source("p.Service", SERVICE));
+		assertTrue(compilation.success, compilation.errors.toString());
+		assertFalse(Files.exists(dir.resolve(PluginIndexProcessor.INDEX_PATH)));
+	}
+
+	@Test
+	void testErrors(@TempDir Path dir) throws IOException {
+		assertError(dir, "should be public and concrete",
+				"package p;\n@com.fathzer.plugin.loader.index.PluginService(Service.class)\npublic abstract class Plugin implements Service {}");
+		assertError(dir, "should be public and concrete",
+				"package p;\n@com.fathzer.plugin.loader.index.PluginService(Service.class)\nclass Plugin implements Service {}");
+		assertError(dir, "should be a static member class",
+				"package p;\npublic class Plugin {\n"
+				+ "  @com.fathzer.plugin.loader.index.PluginService(Service.class)\n"
+				+ "  public class Inner implements Service {}\n"
+				+ "}");
+		assertError(dir, "The enclosing class of a plugin class should be public",
+				"package p;\nclass Plugin {\n"
+				+ "  @com.fathzer.plugin.loader.index.PluginService(Service.class)\n"
+				+ "  public static class Nested implements Service {}\n"
+				+ "}");
+		assertError(dir, "should have a public no argument constructor",
+				"package p;\n@com.fathzer.plugin.loader.index.PluginService(Service.class)\npublic class Plugin implements Service {\n  public Plugin(String arg) {}\n}");
+		assertError(dir, "should have a public no argument constructor",
+				"package p;\n@com.fathzer.plugin.loader.index.PluginService(Service.class)\npublic class Plugin implements Service {\n  private Plugin() {}\n}");
+		assertError(dir, "p.Plugin is not a java.lang.Runnable",
+				"package p;\n@com.fathzer.plugin.loader.index.PluginService(Runnable.class)\npublic class Plugin implements Service {}");
+		assertError(dir, "can only be used on classes",
+				"package p;\n@com.fathzer.plugin.loader.index.PluginService(Service.class)\npublic interface Plugin extends Service {}");
+	}
+
+	private static void assertError(Path root, String expectedError, String pluginCode) throws IOException {
+		final Path dir = Files.createTempDirectory(root, "out");
+		final Compilation compilation = compile(dir, new Source("p.Service", SERVICE), new Source("p.Plugin", pluginCode));
+		assertFalse(compilation.success);
+		final List<String> errors = compilation.errors;
+		assertEquals(1, errors.size(), errors.toString());
+		assertTrue(errors.get(0).contains(expectedError), errors.get(0));
+		// The invalid plugin is not indexed
+		assertFalse(Files.exists(dir.resolve(PluginIndexProcessor.INDEX_PATH)));
+	}
+}
@@ -0,0 +1,156 @@
+package com.fathzer.plugin.loader.test.support;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/** Writes the bytecode of the synthetic plugin classes.
+ * <br>Generated classes are equivalent to:<pre>
+ * package a.package;
+ * public class SimpleName implements java.util.function.Supplier&lt;String&gt; {
+ *   public SimpleName() {
+ *     super();
+ *   }
+ *   public Object get() {
+ *     return "SimpleName";
+ *   }
+ * }
+ * </pre>
+ * Writing the bytecode directly is much faster than compiling sources and does not require a JDK.
+ * <br>The classes have no branch, so, as class file version is 52 (java 8), no stack map frame is needed.
+ */
+final class ClassFileWriter {
+	private static final int MAGIC = 0xCAFEBABE;
+	private static final int JAVA_8_VERSION = 52;
+
+	private static final int ACC_PUBLIC = 0x0001;
+	private static final int ACC_PRIVATE = 0x0002;
+	private static final int ACC_SUPER = 0x0020;
+
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_STRING = 8;
+	private static final int CONSTANT_METHOD_REF = 10;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+	// Indexes in the constant pool
+	private static final int THIS_CLASS = 2;
+	private static final int OBJECT_CLASS = 4;
+	private static final int SUPPLIER_CLASS = 6;
+	private static final int INIT_NAME = 7;
+	private static final int VOID_DESCRIPTOR = 8;
+	private static final int OBJECT_INIT = 10;
+	private static final int GET_NAME = 11;
+	private static final int GET_DESCRIPTOR = 12;
+	private static final int CODE = 13;
+	private static final int SIMPLE_NAME = 15;
+	private static final int CONSTANT_POOL_COUNT = 16;
+
+	private static final byte[] CONSTRUCTOR_CODE = {
+			0x2a, // aload_0
+			(byte) 0xb7, 0, OBJECT_INIT, // invokespecial Object.<init>
+			(byte) 0xb1 // return
+	};
+	private static final byte[] GET_CODE = {
+			0x12, SIMPLE_NAME, // ldc simpleName
+			(byte) 0xb0 // areturn
+	};
+
+	private ClassFileWriter() {
+		super();
+	}
+
+	/** Gets the bytecode of a class.
+	 * @param className The class name, for instance <i>com.example.Plugin</i>
+	 * @param plugin true if the class should implement {@link java.util.function.Supplier}
+	 * @param publicConstructor true if its no argument constructor should be public, false to make it private.
+	 * @return The content of the class file
+	 */
+	static byte[] write(String className, boolean plugin, boolean publicConstructor) {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(MAGIC);
+			out.writeShort(0);
+			out.writeShort(JAVA_8_VERSION);
+			writeConstantPool(out, className);
+			out.writeShort(ACC_PUBLIC | ACC_SUPER);
+			out.writeShort(THIS_CLASS);
+			out.writeShort(OBJECT_CLASS);
+			if (plugin) {
+				out.writeShort(1);
+				out.writeShort(SUPPLIER_CLASS);
+			} else {
+				out.writeShort(0);
+			}
+			// No field
+			out.writeShort(0);
+			out.writeShort(2);
+			writeMethod(out, publicConstructor ? ACC_PUBLIC : ACC_PRIVATE, INIT_NAME, VOID_DESCRIPTOR, CONSTRUCTOR_CODE);
+			writeMethod(out, ACC_PUBLIC, GET_NAME, GET_DESCRIPTOR, GET_CODE);
+			// No class attribute
+			out.writeShort(0);
+		} catch (IOException e) {
+			// Can't happen with a ByteArrayOutputStream
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void writeConstantPool(DataOutputStream out, String className) throws IOException {
+		out.writeShort(CONSTANT_POOL_COUNT);
+		// 1 & 2
+		writeUtf8(out, className.replace('.', '/'));
+		writeClass(out, 1);
+		// 3 & 4
+		writeUtf8(out, "java/lang/Object");
+		writeClass(out, 3);
+		// 5 & 6
+		writeUtf8(out, "java/util/function/Supplier");
+		writeClass(out, 5);
+		// 7 to 10
+		writeUtf8(out, "<init>");
+		writeUtf8(out, "()V");
+		out.writeByte(CONSTANT_NAME_AND_TYPE);
+		out.writeShort(INIT_NAME);
+		out.writeShort(VOID_DESCRIPTOR);
+		out.writeByte(CONSTANT_METHOD_REF);
+		out.writeShort(OBJECT_CLASS);
+		out.writeShort(9);
+		// 11 to 13
+		writeUtf8(out, "get");
+		writeUtf8(out, "()Ljava/lang/Object;");
+		writeUtf8(out, "Code");
+		// 14 & 15
+		writeUtf8(out, className.substring(className.lastIndexOf('.')+1));
+		out.writeByte(CONSTANT_STRING);
+		out.writeShort(14);
+	}
+
+	private static void writeUtf8(DataOutputStream out, String value) throws IOException {
+		out.writeByte(CONSTANT_UTF8);
+		out.writeUTF(value);
+	}
+
+	private static void writeClass(DataOutputStream out, int nameIndex) throws IOException {
+		out.writeByte(CONSTANT_CLASS);
+		out.writeShort(nameIndex);
+	}
+
+	private static void writeMethod(DataOutputStream out, int access, int name, int descriptor, byte[] code) throws IOException {
+		out.writeShort(access);
+		out.writeShort(name);
+		out.writeShort(descriptor);
+		// Only the Code attribute
+		out.writeShort(1);
+		out.writeShort(CODE);
+		// max_stack, max_locals, code_length, code, exception_table_length and attributes_count
+		out.writeInt(2+2+4+code.length+2+2);
+		out.writeShort(1);
+		out.writeShort(1);
+		out.writeInt(code.length);
+		out.write(code);
+		out.writeShort(0);
+		out.writeShort(0);
+	}
+}
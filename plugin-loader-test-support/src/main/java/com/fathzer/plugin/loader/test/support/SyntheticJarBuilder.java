@@ -0,0 +1,314 @@
+package com.fathzer.plugin.loader.test.support;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/** A builder of synthetic plugin jars.
+ * <br>Generated jars have the same layout as the <i>plugin-loader-test-plugin</i> jar: Every generated class implements {@link Supplier}
+ * and is declared in the jar's <i>META-INF/services/java.util.function.Supplier</i> file.
+ * <br>The bytecode of the classes is generated directly, so building thousands of jars is fast and does not require a JDK.
+ * Jars are reproducible: Two builders with the same settings produce exactly the same bytes.
+ * <br>Typical usage is:<pre>
+ * final SyntheticJarBuilder builder = new SyntheticJarBuilder().withClassCount(100).withBrokenEntry(BrokenEntry.UNKNOWN_CLASS);
+ * for (int i = 0; i &lt; 1000; i++) {
+ *   builder.withPackageName("synthetic.p"+i).build(dir.resolve("plugin"+i+".jar"));
+ * }
+ * </pre>
+ * This class is not thread safe.
+ */
+public class SyntheticJarBuilder {
+	/** The name of the services file that declares the plugins. */
+	public static final String SERVICES_FILE = "META-INF/services/"+Supplier.class.getName();
+	/** The name of the resource added to the jar to reach the {@link #withMinimumSize(long) minimum size}. */
+	public static final String PADDING_FILE = "META-INF/padding.bin";
+	private static final String CLASS_NAME_PREFIX = "Plugin";
+	// A fixed date makes the jars reproducible (2020-01-01T00:00:00Z)
+	private static final long ENTRY_TIME = 1577836800000L;
+
+	/** A broken entry that can be added to a jar. */
+	public enum BrokenEntry {
+		/** A class declared in the services file that does not exist in the jar. */
+		UNKNOWN_CLASS("UnknownPlugin"),
+		/** A class declared in the services file that does not implement {@link Supplier}. */
+		NOT_A_PLUGIN("NotAPlugin"),
+		/** A class declared in the services file that has no public no argument constructor. */
+		WRONG_CONSTRUCTOR("WrongConstructorPlugin");
+
+		private final String simpleName;
+
+		BrokenEntry(String simpleName) {
+			this.simpleName = simpleName;
+		}
+	}
+
+	private String packageName = "synthetic";
+	private int classCount = 1;
+	private int serviceEntryCount = -1;
+	private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+	private long minimumSize;
+	private final Map<String, String> attributes = new LinkedHashMap<>();
+	private final Set<BrokenEntry> brokenEntries = EnumSet.noneOf(BrokenEntry.class);
+
+	/** Sets the package of the generated classes.
+	 * <br>Jars used together should have different packages, so that they contain different classes.
+	 * @param packageName The package name (default is <i>synthetic</i>)
+	 * @return this
+	 * @throws IllegalArgumentException if packageName is null or empty
+	 */
+	public SyntheticJarBuilder withPackageName(String packageName) {
+		if (packageName==null || packageName.isEmpty()) {
+			throw new IllegalArgumentException();
+		}
+		this.packageName = packageName;
+		return this;
+	}
+
+	/** Sets the number of plugin classes.
+	 * @param classCount The number of classes (default is 1)
+	 * @return this
+	 * @throws IllegalArgumentException if classCount is negative
+	 */
+	public SyntheticJarBuilder withClassCount(int classCount) {
+		if (classCount<0) {
+			throw new IllegalArgumentException();
+		}
+		this.classCount = classCount;
+		return this;
+	}
+
+	/** Sets the number of plugin classes declared in the services file.
+	 * <br>The first <i>serviceEntryCount</i> classes of {@link #getClassNames()} are declared, the other ones are only present in the jar.
+	 * @param serviceEntryCount The number of declared classes, a negative number (the default) to declare all classes.
+	 * If it is greater than the class count, all classes are declared.
+	 * @return this
+	 */
+	public SyntheticJarBuilder withServiceEntryCount(int serviceEntryCount) {
+		this.serviceEntryCount = serviceEntryCount;
+		return this;
+	}
+
+	/** Sets the compression level of the jar entries.
+	 * @param level A {@link Deflater} compression level (default is {@link Deflater#DEFAULT_COMPRESSION}).
+	 * {@link Deflater#NO_COMPRESSION} stores the entries without compression (jar entries have the {@link ZipEntry#STORED} method).
+	 * @return this
+	 * @throws IllegalArgumentException if level is not a valid compression level
+	 */
+	public SyntheticJarBuilder withCompressionLevel(int level) {
+		if ((level<Deflater.NO_COMPRESSION || level>Deflater.BEST_COMPRESSION) && level!=Deflater.DEFAULT_COMPRESSION) {
+			throw new IllegalArgumentException();
+		}
+		this.compressionLevel = level;
+		return this;
+	}
+
+	/** Sets the minimum size of the jar.
+	 * <br>If the jar is smaller, a resource of random bytes named {@link #PADDING_FILE} is added to the jar.
+	 * As random bytes can't be compressed, the size of the jar does not depend on the compression level.
+	 * @param size The minimum size in bytes (default is 0)
+	 * @return this
+	 * @throws IllegalArgumentException if size is negative or greater than {@link Integer#MAX_VALUE}
+	 */
+	public SyntheticJarBuilder withMinimumSize(long size) {
+		if (size<0 || size>Integer.MAX_VALUE) {
+			throw new IllegalArgumentException();
+		}
+		this.minimumSize = size;
+		return this;
+	}
+
+	/** Adds an attribute to the manifest of the jar.
+	 * @param name The attribute name, for instance <i>Plugin-Class</i>
+	 * @param value The attribute value, null to remove the attribute.
+	 * @return this
+	 * @throws IllegalArgumentException if name is null
+	 */
+	public SyntheticJarBuilder withManifestAttribute(String name, String value) {
+		if (name==null) {
+			throw new IllegalArgumentException();
+		}
+		if (value==null) {
+			attributes.remove(name);
+		} else {
+			attributes.put(name, value);
+		}
+		return this;
+	}
+
+	/** Adds a broken entry to the jar.
+	 * <br>The broken entry is declared in the services file after the plugin classes.
+	 * @param entry The broken entry
+	 * @return this
+	 * @throws IllegalArgumentException if entry is null
+	 */
+	public SyntheticJarBuilder withBrokenEntry(BrokenEntry entry) {
+		if (entry==null) {
+			throw new IllegalArgumentException();
+		}
+		brokenEntries.add(entry);
+		return this;
+	}
+
+	/** Gets the names of the plugin classes of the jar.
+	 * @return a list of class names. It does not contain the broken entries.
+	 */
+	public List<String> getClassNames() {
+		final List<String> result = new ArrayList<>(classCount);
+		for (int i = 0; i < classCount; i++) {
+			result.add(packageName+"."+CLASS_NAME_PREFIX+i);
+		}
+		return result;
+	}
+
+	/** Gets an unmodifiable view of the manifest attributes.
+	 * @return a map
+	 */
+	public Map<String, String> getManifestAttributes() {
+		return Collections.unmodifiableMap(attributes);
+	}
+
+	/** Gets the class name of a broken entry.
+	 * @param entry The broken entry
+	 * @return a class name
+	 */
+	public String getClassName(BrokenEntry entry) {
+		return packageName+"."+entry.simpleName;
+	}
+
+	/** Gets the class names declared in the services file of the jar.
+	 * @return a list of class names, including the broken entries.
+	 */
+	public List<String> getServiceEntries() {
+		final List<String> result = getClassNames();
+		if (serviceEntryCount>=0 && serviceEntryCount<result.size()) {
+			result.subList(serviceEntryCount, result.size()).clear();
+		}
+		brokenEntries.forEach(e -> result.add(getClassName(e)));
+		return result;
+	}
+
+	/** Builds the jar in memory.
+	 * @return the content of the jar
+	 */
+	public byte[] build() {
+		try {
+			byte[] result = build(0);
+			if (result.length<minimumSize) {
+				// Random data can't be compressed, so the jar with padding is at least minimumSize long
+				result = build((int)minimumSize-result.length);
+			}
+			return result;
+		} catch (IOException e) {
+			// Can't happen with a ByteArrayOutputStream
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/** Builds the jar in a file.
+	 * <br>The parent directories of the file are created if needed and the file is overwritten if it already exists.
+	 * @param file The jar file
+	 * @return the file
+	 * @throws IOException If the file can't be written
+	 */
+	public Path build(Path file) throws IOException {
+		if (file.getParent()!=null) {
+			Files.createDirectories(file.getParent());
+		}
+		Files.write(file, build());
+		return file;
+	}
+
+	private byte[] build(int paddingSize) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (JarOutputStream out = new JarOutputStream(bytes)) {
+			out.setLevel(compressionLevel);
+			write(out, JarFile.MANIFEST_NAME, this::writeManifest);
+			write(out, SERVICES_FILE, o -> o.write(getServiceEntriesContent()));
+			for (String className : getClassNames()) {
+				write(out, className, ClassFileWriter.write(className, true, true));
+			}
+			if (brokenEntries.contains(BrokenEntry.NOT_A_PLUGIN)) {
+				final String className = getClassName(BrokenEntry.NOT_A_PLUGIN);
+				write(out, className, ClassFileWriter.write(className, false, true));
+			}
+			if (brokenEntries.contains(BrokenEntry.WRONG_CONSTRUCTOR)) {
+				final String className = getClassName(BrokenEntry.WRONG_CONSTRUCTOR);
+				write(out, className, ClassFileWriter.write(className, true, false));
+			}
+			if (paddingSize>0) {
+				final byte[] padding = new byte[paddingSize];
+				new Random(paddingSize).nextBytes(padding);
+				write(out, PADDING_FILE, o -> o.write(padding));
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	private byte[] getServiceEntriesContent() {
+		final StringBuilder content = new StringBuilder();
+		for (String className : getServiceEntries()) {
+			content.append(className).append('\n');
+		}
+		return content.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private void writeManifest(OutputStream out) throws IOException {
+		final Manifest manifest = new Manifest();
+		final Attributes mainAttributes = manifest.getMainAttributes();
+		mainAttributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		attributes.forEach(mainAttributes::putValue);
+		manifest.write(out);
+	}
+
+	private interface ContentWriter {
+		void write(OutputStream out) throws IOException;
+	}
+
+	private void write(JarOutputStream out, String className, byte[] classFile) throws IOException {
+		write(out, className.replace('.', '/')+".class", o -> o.write(classFile));
+	}
+
+	private void write(JarOutputStream out, String name, ContentWriter writer) throws IOException {
+		final JarEntry entry = new JarEntry(name);
+		entry.setTime(ENTRY_TIME);
+		final ContentWriter contentWriter;
+		if (compressionLevel==Deflater.NO_COMPRESSION) {
+			// Stored entries should have their size and crc set before being written
+			final ByteArrayOutputStream content = new ByteArrayOutputStream();
+			writer.write(content);
+			final byte[] data = content.toByteArray();
+			final CRC32 crc = new CRC32();
+			crc.update(data);
+			entry.setMethod(ZipEntry.STORED);
+			entry.setSize(data.length);
+			entry.setCompressedSize(data.length);
+			entry.setCrc(crc.getValue());
+			contentWriter = o -> o.write(data);
+		} else {
+			contentWriter = writer;
+		}
+		out.putNextEntry(entry);
+		contentWriter.write(out);
+		out.closeEntry();
+	}
+}
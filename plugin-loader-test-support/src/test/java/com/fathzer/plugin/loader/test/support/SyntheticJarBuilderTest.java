@@ -0,0 +1,168 @@
+package com.fathzer.plugin.loader.test.support;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fathzer.plugin.loader.test.support.SyntheticJarBuilder.BrokenEntry;
+
+class SyntheticJarBuilderTest {
+
+	@Test
+	void testEntries() throws IOException {
+		final SyntheticJarBuilder builder = new SyntheticJarBuilder().withPackageName("my.plugins").withClassCount(3).withServiceEntryCount(2)
+				.withBrokenEntry(BrokenEntry.UNKNOWN_CLASS).withManifestAttribute("Plugin-Class", "my.plugins.Plugin0");
+		assertEquals(Arrays.asList("my.plugins.Plugin0", "my.plugins.Plugin1", "my.plugins.Plugin2"), builder.getClassNames());
+		assertEquals(Arrays.asList("my.plugins.Plugin0", "my.plugins.Plugin1", "my.plugins.UnknownPlugin"), builder.getServiceEntries());
+		assertEquals(Collections.singletonMap("Plugin-Class", "my.plugins.Plugin0"), builder.getManifestAttributes());
+
+		final Set<String> entries = new HashSet<>();
+		String services = null;
+		try (JarInputStream in = new JarInputStream(new ByteArrayInputStream(builder.build()))) {
+			assertEquals("my.plugins.Plugin0", in.getManifest().getMainAttributes().getValue("Plugin-Class"));
+			for (JarEntry entry = in.getNextJarEntry(); entry!=null; entry = in.getNextJarEntry()) {
+				entries.add(entry.getName());
+				if (SyntheticJarBuilder.SERVICES_FILE.equals(entry.getName())) {
+					services = new String(readAll(in), StandardCharsets.UTF_8);
+				}
+			}
+		}
+		final Set<String> expected = new HashSet<>(Arrays.asList(SyntheticJarBuilder.SERVICES_FILE,
+				"my/plugins/Plugin0.class", "my/plugins/Plugin1.class", "my/plugins/Plugin2.class"));
+		assertEquals(expected, entries);
+		assertEquals("my.plugins.Plugin0\nmy.plugins.Plugin1\nmy.plugins.UnknownPlugin\n", services);
+
+		// Removing an attribute
+		builder.withManifestAttribute("Plugin-Class", null);
+		assertTrue(builder.getManifestAttributes().isEmpty());
+	}
+
+	@Test
+	void testCompression(@TempDir Path dir) throws IOException {
+		final SyntheticJarBuilder builder = new SyntheticJarBuilder().withClassCount(2).withCompressionLevel(Deflater.NO_COMPRESSION);
+		try (JarFile jar = new JarFile(builder.build(dir.resolve("sub/stored.jar")).toFile())) {
+			final List<JarEntry> entries = Collections.list(jar.entries());
+			assertFalse(entries.isEmpty());
+			for (JarEntry entry : entries) {
+				assertEquals(ZipEntry.STORED, entry.getMethod(), entry.getName());
+			}
+		}
+		builder.withCompressionLevel(Deflater.BEST_COMPRESSION);
+		try (JarFile jar = new JarFile(builder.build(dir.resolve("deflated.jar")).toFile())) {
+			assertEquals(ZipEntry.DEFLATED, jar.getEntry(SyntheticJarBuilder.SERVICES_FILE).getMethod());
+		}
+	}
+
+	@Test
+	void testSize() throws IOException {
+		final SyntheticJarBuilder builder = new SyntheticJarBuilder().withClassCount(5);
+		final byte[] jar = builder.build();
+		// Jars are reproducible
+		assertArrayEquals(jar, builder.build());
+		assertArrayEquals(jar, new SyntheticJarBuilder().withClassCount(5).build());
+		assertFalse(getEntryNames(jar).contains(SyntheticJarBuilder.PADDING_FILE));
+
+		// A jar that is already bigger than the minimum size has no padding
+		assertArrayEquals(jar, builder.withMinimumSize(jar.length).build());
+
+		final int size = 100000;
+		for (int level : new int[] {Deflater.NO_COMPRESSION, Deflater.BEST_COMPRESSION}) {
+			final byte[] padded = builder.withMinimumSize(size).withCompressionLevel(level).build();
+			assertTrue(padded.length>=size, "Jar size is "+padded.length);
+			assertTrue(getEntryNames(padded).contains(SyntheticJarBuilder.PADDING_FILE));
+			assertArrayEquals(padded, builder.build());
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void testClasses(@TempDir Path dir) throws Exception {
+		final SyntheticJarBuilder builder = new SyntheticJarBuilder().withClassCount(2)
+				.withBrokenEntry(BrokenEntry.UNKNOWN_CLASS).withBrokenEntry(BrokenEntry.NOT_A_PLUGIN).withBrokenEntry(BrokenEntry.WRONG_CONSTRUCTOR);
+		final Path jar = builder.build(dir.resolve("plugins.jar"));
+		try (URLClassLoader loader = new URLClassLoader(new URL[] {jar.toUri().toURL()}, getClass().getClassLoader())) {
+			for (String className : builder.getClassNames()) {
+				final Class<?> pluginClass = loader.loadClass(className);
+				assertTrue(Supplier.class.isAssignableFrom(pluginClass));
+				final Supplier<String> plugin = (Supplier<String>) pluginClass.getConstructor().newInstance();
+				assertEquals(pluginClass.getSimpleName(), plugin.get());
+			}
+			assertThrows(ClassNotFoundException.class, () -> loader.loadClass(builder.getClassName(BrokenEntry.UNKNOWN_CLASS)));
+			final Class<?> notAPlugin = loader.loadClass(builder.getClassName(BrokenEntry.NOT_A_PLUGIN));
+			assertFalse(Supplier.class.isAssignableFrom(notAPlugin));
+			assertNotNull(notAPlugin.getConstructor().newInstance());
+			final Class<?> wrongConstructor = loader.loadClass(builder.getClassName(BrokenEntry.WRONG_CONSTRUCTOR));
+			assertTrue(Supplier.class.isAssignableFrom(wrongConstructor));
+			assertThrows(NoSuchMethodException.class, () -> wrongConstructor.getConstructor());
+			assertTrue(Modifier.isPrivate(wrongConstructor.getDeclaredConstructor().getModifiers()));
+		}
+	}
+
+	@Test
+	void testClassFileWriter() throws Exception {
+		final byte[] classFile = ClassFileWriter.write("a.b.MyPlugin", true, true);
+		// Magic number and java 8 class file version
+		assertEquals(0xCAFEBABE, ((classFile[0] & 0xFF)<<24) | ((classFile[1] & 0xFF)<<16) | ((classFile[2] & 0xFF)<<8) | (classFile[3] & 0xFF));
+		assertEquals(52, classFile[7]);
+		final Class<?> pluginClass = new ClassLoader(getClass().getClassLoader()) {
+			Class<?> define() {
+				return defineClass("a.b.MyPlugin", classFile, 0, classFile.length);
+			}
+		}.define();
+		assertEquals("MyPlugin", ((Supplier<?>) pluginClass.getConstructor().newInstance()).get());
+	}
+
+	@Test
+	void testWrongArguments() {
+		final SyntheticJarBuilder builder = new SyntheticJarBuilder();
+		assertThrows(IllegalArgumentException.class, () -> builder.withPackageName(null));
+		assertThrows(IllegalArgumentException.class, () -> builder.withPackageName(""));
+		assertThrows(IllegalArgumentException.class, () -> builder.withClassCount(-1));
+		assertThrows(IllegalArgumentException.class, () -> builder.withCompressionLevel(10));
+		assertThrows(IllegalArgumentException.class, () -> builder.withMinimumSize(-1));
+		assertThrows(IllegalArgumentException.class, () -> builder.withMinimumSize(Integer.MAX_VALUE+1L));
+		assertThrows(IllegalArgumentException.class, () -> builder.withManifestAttribute(null, "value"));
+		assertThrows(IllegalArgumentException.class, () -> builder.withBrokenEntry(null));
+	}
+
+	private static Set<String> getEntryNames(byte[] jar) throws IOException {
+		final Set<String> result = new HashSet<>();
+		try (JarInputStream in = new JarInputStream(new ByteArrayInputStream(jar))) {
+			for (JarEntry entry = in.getNextJarEntry(); entry!=null; entry = in.getNextJarEntry()) {
+				result.add(entry.getName());
+			}
+		}
+		return result;
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		final ByteArrayOutputStream result = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[1024];
+		for (int read = in.read(buffer); read>=0; read = in.read(buffer)) {
+			result.write(buffer, 0, read);
+		}
+		return result.toByteArray();
+	}
+}
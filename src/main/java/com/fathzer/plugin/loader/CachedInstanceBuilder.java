@@ -0,0 +1,74 @@
+package com.fathzer.plugin.loader;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.Callable;
+
+/** An {@link InstanceBuilder} that calls the no arg public constructor of classes through a cached {@link MethodHandle}.
+ * <br>It builds the same instances as {@link InstanceBuilder#DEFAULT} but, once a class has been instantiated once, the following
+ * instantiations don't perform any reflective lookup.
+ * <br>The factories are cached in a {@link ClassValue}, this means the cache does not prevent plugin classes (and their class loader) from being garbage collected.
+ * <br>When a method handle can't be built for a class (for instance if the class is not public), this builder falls back to reflection.
+ * <br>Exceptions thrown by constructors are wrapped in an {@link InvocationTargetException}, exactly like {@link Constructor#newInstance(Object...)} does.
+ */
+public class CachedInstanceBuilder implements InstanceBuilder {
+	/** An instance of this class.
+	 */
+	public static final CachedInstanceBuilder INSTANCE = new CachedInstanceBuilder();
+	
+	private static final MethodType FACTORY_TYPE = MethodType.methodType(Object.class);
+	
+	private final ClassValue<Callable<?>> factories = new ClassValue<Callable<?>>() {
+		@Override
+		protected Callable<?> computeValue(Class<?> type) {
+			if (Modifier.isAbstract(type.getModifiers())) {
+				return () -> reflectiveNewInstance(type);
+			}
+			try {
+				final MethodHandle constructor = MethodHandles.publicLookup().findConstructor(type, MethodType.methodType(void.class)).asType(FACTORY_TYPE);
+				return () -> newInstance(constructor);
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				return () -> reflectiveNewInstance(type);
+			}
+		}
+	};
+	
+	/** Constructor.
+	 */
+	protected CachedInstanceBuilder() {
+		super();
+	}
+
+	@Override
+	public <T> T get(Class<T> aClass) throws Exception {
+		return getFactory(aClass).call();
+	}
+	
+	/** Gets the cached factory of a class.
+	 * @param <T> The class of the instances built by the factory.
+	 * @param aClass The class of the instances to create.
+	 * @return A callable that returns a new instance of <i>aClass</i> each time it is called.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Callable<T> getFactory(Class<T> aClass) {
+		return (Callable<T>) factories.get(aClass);
+	}
+
+	@SuppressWarnings("java:S1181")
+	private static Object newInstance(MethodHandle constructor) throws InvocationTargetException {
+		try {
+			return (Object) constructor.invokeExact();
+		} catch (Throwable e) {
+			throw new InvocationTargetException(e);
+		}
+	}
+
+	private static Object reflectiveNewInstance(Class<?> type) throws ReflectiveOperationException {
+		final Constructor<?> constructor = type.getConstructor();
+		return constructor.newInstance();
+	}
+}
@@ -1,6 +1,9 @@
 package com.fathzer.plugin.loader;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
 /** A class that finds the plugin's concrete class name from a context (for instance from a manifest attribute of a jar).
@@ -14,4 +17,20 @@ public interface ClassNameBuilder<T> {
 	 * @throws IOException if something went wrong
 	 */
 	Set<String> get(T context, Class<?> aClass) throws IOException;
+	
+	/** Gets the class names of the implementations of several plugin types.
+	 * <br>The default implementation calls {@link #get(Object, Class)} for every class. Implementations are encouraged to
+	 * override it in order to read the context only once.
+	 * @param context The jar that contains the plugin
+	 * @param classes The interfaces or abstract classes implemented by the plugins.
+	 * @return A map whose keys are the elements of <i>classes</i> and values are the class names of their implementations.
+	 * @throws IOException if something went wrong
+	 */
+	default Map<Class<?>, Set<String>> getAll(T context, Collection<? extends Class<?>> classes) throws IOException {
+		final Map<Class<?>, Set<String>> result = new HashMap<>();
+		for (Class<?> aClass : classes) {
+			result.put(aClass, get(context, aClass));
+		}
+		return result;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,81 @@
+package com.fathzer.plugin.loader;
+
+import java.util.Collection;
+import java.util.List;
+
+/** A {@link PluginLoaderListener} that dispatches the notifications to other listeners.
+ * <br>It is enabled if at least one of its listeners is enabled, and only notifies the listeners that are enabled.
+ * @param <T> The source type
+ * @see PluginLoaderListener#of(PluginLoaderListener...)
+ */
+class CompositePluginLoaderListener<T> implements PluginLoaderListener<T> {
+	private final List<PluginLoaderListener<? super T>> listeners;
+
+	CompositePluginLoaderListener(List<PluginLoaderListener<? super T>> listeners) {
+		this.listeners = listeners;
+	}
+
+	@Override
+	public boolean isEnabled() {
+		for (PluginLoaderListener<? super T> listener : listeners) {
+			if (listener.isEnabled()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void sourceScanned(T source, Collection<? extends Class<?>> classes, int pluginCount, long duration) {
+		for (PluginLoaderListener<? super T> listener : listeners) {
+			if (listener.isEnabled()) {
+				listener.sourceScanned(source, classes, pluginCount, duration);
+			}
+		}
+	}
+
+	@Override
+	public void classNamesFound(T source, Collection<? extends Class<?>> classes, int classNameCount, long duration) {
+		for (PluginLoaderListener<? super T> listener : listeners) {
+			if (listener.isEnabled()) {
+				listener.classNamesFound(source, classes, classNameCount, duration);
+			}
+		}
+	}
+
+	@Override
+	public void classLoaderBuilt(T source, ClassLoader classLoader, long duration) {
+		for (PluginLoaderListener<? super T> listener : listeners) {
+			if (listener.isEnabled()) {
+				listener.classLoaderBuilt(source, classLoader, duration);
+			}
+		}
+	}
+
+	@Override
+	public void classLoaded(T source, String className, long duration) {
+		for (PluginLoaderListener<? super T> listener : listeners) {
+			if (listener.isEnabled()) {
+				listener.classLoaded(source, className, duration);
+			}
+		}
+	}
+
+	@Override
+	public void instanceBuilt(T source, String className, long duration) {
+		for (PluginLoaderListener<? super T> listener : listeners) {
+			if (listener.isEnabled()) {
+				listener.instanceBuilt(source, className, duration);
+			}
+		}
+	}
+
+	@Override
+	public void instantiationFailed(T source, String className, PluginInstantiationException exception, long duration) {
+		for (PluginLoaderListener<? super T> listener : listeners) {
+			if (listener.isEnabled()) {
+				listener.instantiationFailed(source, className, exception, duration);
+			}
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package com.fathzer.plugin.loader;
+
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+/** An {@link InstanceBuilder} that uses the factories generated at build time by the
+ * <a href="https://github.com/fathzer/plugin-loader/tree/main/plugin-loader-index-processor">plugin-loader-index-processor</a>.
+ * <br>The factory of a plugin class is a {@link Supplier} whose binary name is the plugin's binary name followed by {@value #FACTORY_SUFFIX}.
+ * It is searched and instantiated once per plugin class, then every plugin instance is created without reflection.
+ * <br>If a plugin class has no factory, instances are created by {@link CachedInstanceBuilder#INSTANCE}.
+ * @see com.fathzer.plugin.loader.jar.PluginIndexClassNameBuilder
+ */
+public class PluginFactoryInstanceBuilder implements InstanceBuilder {
+	/** The suffix of the factory classes names.
+	 */
+	public static final String FACTORY_SUFFIX = "$$PluginFactory";
+	
+	/** An instance of this class.
+	 */
+	public static final PluginFactoryInstanceBuilder INSTANCE = new PluginFactoryInstanceBuilder();
+	
+	private final ClassValue<Callable<?>> factories = new ClassValue<Callable<?>>() {
+		@Override
+		protected Callable<?> computeValue(Class<?> type) {
+			final Supplier<?> factory = getFactory(type);
+			return factory==null ? CachedInstanceBuilder.INSTANCE.getFactory(type) : factory::get;
+		}
+	};
+	
+	/** Constructor.
+	 */
+	protected PluginFactoryInstanceBuilder() {
+		super();
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T get(Class<T> aClass) throws Exception {
+		return (T) factories.get(aClass).call();
+	}
+	
+	private static Supplier<?> getFactory(Class<?> type) {
+		try {
+			final Class<?> factoryClass = Class.forName(type.getName()+FACTORY_SUFFIX, true, type.getClassLoader());
+			if (Supplier.class.isAssignableFrom(factoryClass)) {
+				return (Supplier<?>) CachedInstanceBuilder.INSTANCE.get(factoryClass);
+			}
+		} catch (Exception | LinkageError e) {
+			// No usable factory, fall back to the default behaviour
+		}
+		return null;
+	}
+}
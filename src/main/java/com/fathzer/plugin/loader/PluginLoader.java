@@ -2,17 +2,32 @@ package com.fathzer.plugin.loader;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /** A class able to load plugins from an abstract source.
  * @param <T> The source type
  */
 public abstract class PluginLoader<T> {
+	/** The start time of a phase that is not measured */
+	private static final long NOT_MEASURED = Long.MIN_VALUE;
+
 	private ClassNameBuilder<T> classNameBuilder;
 	private InstanceBuilder instanceBuilder;
 	private Consumer<PluginInstantiationException> exceptionConsumer;
+	private Executor executor;
+	private PluginLoaderListener<? super T> listener;
 
 	/** Constructor.
 	 * <br>By default, the plugins are instantiated using their public no argument constructor.
@@ -25,6 +40,8 @@ public abstract class PluginLoader<T> {
 		this.classNameBuilder = defaultClassNameBuilder;
 		this.instanceBuilder = InstanceBuilder.DEFAULT;
 		this.exceptionConsumer = e -> {throw e;};
+		this.executor = ForkJoinPool.commonPool();
+		this.listener = PluginLoaderListener.NONE;
 	}
 	
 	/** Sets the class name builder.
@@ -65,6 +82,34 @@ public abstract class PluginLoader<T> {
 		return this;
 	}
 
+	/** Sets the executor used by {@link #getAllPlugins(Collection, Class)} to process the sources.
+	 * <br>The default is {@link ForkJoinPool#commonPool()}.
+	 * @param executor The new executor
+	 * @return this
+	 */
+	public PluginLoader<T> withExecutor(Executor executor) {
+		if (executor==null) {
+			throw new IllegalArgumentException();
+		}
+		this.executor = executor;
+		return this;
+	}
+
+	/** Sets the listener notified of the loading phases.
+	 * <br>A loader has only one listener, setting a listener replaces the previous one. Use {@link PluginLoaderListener#of(PluginLoaderListener...)}
+	 * to notify many listeners.
+	 * <br>The default is {@link PluginLoaderListener#NONE}, which costs nothing: Durations are only measured when the listener is {@link PluginLoaderListener#isEnabled() enabled}.
+	 * @param listener The new listener
+	 * @return this
+	 */
+	public PluginLoader<T> withListener(PluginLoaderListener<? super T> listener) {
+		if (listener==null) {
+			throw new IllegalArgumentException();
+		}
+		this.listener = listener;
+		return this;
+	}
+
 	/** Gets the plugins contained in a source.
 	 * @param <V> The interface/class of the plugins (all plugins should implement/extends this interface/class).
 	 * @param source The source to scan.
@@ -74,39 +119,339 @@ public abstract class PluginLoader<T> {
 	 * @throws PluginInstantiationException if a problem occurs while creating the plugins.
 	 */
 	public <V> List<V> getPlugins(T source, Class<V> aClass) throws IOException {
-		final Set<String> classNames = classNameBuilder.get(source, aClass);
-		final ClassLoader loader = classNames.isEmpty() ? null : buildClassLoader(source);
 		final List<V> result = new ArrayList<>();
-		classNames.forEach(c -> {
-			try {
-				result.add(build(loader, c, aClass));
-			} catch(PluginInstantiationException e) {
-				exceptionConsumer.accept(e);
+		load(new LazyClassLoader(source, listener), aClass, result, exceptionConsumer);
+		return result;
+	}
+	
+	/** Gets the plugins of several types contained in a source.
+	 * <br>The source is read once to find the plugins class names (if the {@link ClassNameBuilder} supports it) and a single
+	 * class loader is built to load all the plugins.
+	 * @param source The source to scan.
+	 * @param classes The interfaces/classes implemented/sub-classed by the plugins
+	 * @return A map whose keys are the elements of <i>classes</i> (in the iteration order of <i>classes</i>) and values are the lists
+	 * of plugin instances that implement/extend them.
+	 * @throws IOException if a problem occurs while reading the source.
+	 * @throws PluginInstantiationException if a problem occurs while creating the plugins.
+	 * @see ClassNameBuilder#getAll(Object, Collection)
+	 */
+	public Map<Class<?>, List<?>> getPlugins(T source, Collection<? extends Class<?>> classes) throws IOException {
+		final PluginLoaderListener<? super T> l = listener;
+		final long start = startTime(l);
+		final Map<Class<?>, Set<String>> classNames = classNameBuilder.getAll(source, classes);
+		if (start!=NOT_MEASURED) {
+			l.classNamesFound(source, classes, classNames.values().stream().mapToInt(Set::size).sum(), System.nanoTime()-start);
+		}
+		final LazyClassLoader loader = new LazyClassLoader(source, l);
+		final Map<Class<?>, List<?>> result = new LinkedHashMap<>();
+		int count = 0;
+		try {
+			for (Class<?> aClass : classes) {
+				final List<?> plugins = instantiate(getProviders(loader, classNames.getOrDefault(aClass, Collections.emptySet()), aClass), exceptionConsumer);
+				count += plugins.size();
+				result.put(aClass, plugins);
 			}
-		});
+		} catch (RuntimeException e) {
+			loader.release(e);
+			throw e;
+		}
+		if (count==0) {
+			loader.release(null);
+		}
+		if (start!=NOT_MEASURED) {
+			l.sourceScanned(source, classes, count, System.nanoTime()-start);
+		}
 		return result;
 	}
 	
-	@SuppressWarnings("unchecked")
-	private <V> V build(ClassLoader loader, String className, Class<V> aClass) {
+	/** Gets the plugins contained in a collection of sources.
+	 * <br>The sources are processed concurrently using the executor set by {@link #withExecutor(Executor)}.
+	 * <br>Nevertheless, the result is the same as calling {@link #getPlugins(Object, Class)} for every source in the iteration order of <i>sources</i>
+	 * and concatenating the results: Plugins are returned in the order of their sources, the exception consumer is called,
+	 * in the calling thread, in the same order, and the first source that can't be read stops the process.
+	 * <br>When the process is stopped, the sources that are not yet processed are skipped, and the class loaders of the plugins that were
+	 * already loaded are {@link #releaseClassLoader(Object, ClassLoader) released}.
+	 * @param <V> The interface/class of the plugins (all plugins should implement/extends this interface/class).
+	 * @param sources The sources to scan.
+	 * @param aClass The interface/class implemented/sub-classed by the plugins
+	 * @return A list of instances.
+	 * @throws IOException if a problem occurs while reading a source.
+	 * @throws PluginInstantiationException if a problem occurs while creating the plugins.
+	 */
+	public <V> List<V> getAllPlugins(Collection<? extends T> sources, Class<V> aClass) throws IOException {
+		final AtomicBoolean aborted = new AtomicBoolean();
+		final List<CompletableFuture<SourceResult<V>>> futures = new ArrayList<>(sources.size());
 		try {
-			final Class<?> pluginClass = loader.loadClass(className);
-			if (aClass.isAssignableFrom(pluginClass)) {
-				return (V)instanceBuilder.get(pluginClass);
-			} else {
-				throw new PluginInstantiationException(className+" is not a "+aClass.getCanonicalName()+" instance");
+			for (T source : sources) {
+				// The sources that are not yet processed when the process is stopped are skipped
+				futures.add(CompletableFuture.supplyAsync(() -> aborted.get() ? null : load(source, aClass), executor));
 			}
-		} catch (PluginInstantiationException e) {
+			final List<V> result = new ArrayList<>();
+			for (CompletableFuture<SourceResult<V>> future : futures) {
+				final SourceResult<V> sourceResult = join(future);
+				if (sourceResult.ioException!=null) {
+					throw sourceResult.ioException;
+				}
+				sourceResult.errors.forEach(exceptionConsumer);
+				result.addAll(sourceResult.plugins);
+			}
+			return result;
+		} catch (IOException | RuntimeException e) {
+			aborted.set(true);
+			discard(futures, e);
 			throw e;
-		} catch (Exception e) {
-			throw new PluginInstantiationException(e);
 		}
 	}
 
+	/** Releases the class loaders of the sources processed by a {@link #getAllPlugins(Collection, Class)} call that failed.
+	 * <br>This method waits for the sources that are being processed.
+	 * @param futures The results of the sources
+	 * @param cause The exception that stopped the process
+	 */
+	private <V> void discard(List<CompletableFuture<SourceResult<V>>> futures, Exception cause) {
+		for (CompletableFuture<SourceResult<V>> future : futures) {
+			final SourceResult<V> sourceResult;
+			try {
+				sourceResult = future.join();
+			} catch (CompletionException e) {
+				// The class loader of a source that failed with an unchecked exception is already released
+				continue;
+			}
+			if (sourceResult!=null) {
+				sourceResult.loader.release(cause);
+			}
+		}
+	}
 	
+	private static <V> V join(CompletableFuture<V> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
+	}
+	
+	private class SourceResult<V> {
+		private final List<V> plugins = new ArrayList<>();
+		private final List<PluginInstantiationException> errors = new ArrayList<>();
+		private final LazyClassLoader loader;
+		private IOException ioException;
+
+		private SourceResult(LazyClassLoader loader) {
+			this.loader = loader;
+		}
+	}
+	
+	private <V> SourceResult<V> load(T source, Class<V> aClass) {
+		final SourceResult<V> result = new SourceResult<>(new LazyClassLoader(source, listener));
+		try {
+			load(result.loader, aClass, result.plugins, result.errors::add);
+		} catch (IOException e) {
+			result.ioException = e;
+		}
+		return result;
+	}
+
+	private <V> void load(LazyClassLoader loader, Class<V> aClass, List<V> result, Consumer<PluginInstantiationException> errors) throws IOException {
+		final PluginLoaderListener<? super T> l = loader.listener;
+		final T source = loader.source;
+		final long start = startTime(l);
+		final List<V> plugins;
+		try {
+			plugins = instantiate(getProviders(loader, aClass), errors);
+		} catch (RuntimeException e) {
+			loader.release(e);
+			throw e;
+		}
+		if (plugins.isEmpty()) {
+			loader.release(null);
+		}
+		if (start!=NOT_MEASURED) {
+			l.sourceScanned(source, Collections.singleton(aClass), plugins.size(), System.nanoTime()-start);
+		}
+		result.addAll(plugins);
+	}
+
+	/** Gets the start time of a measured phase.
+	 * @param listener The listener that will be notified at the end of the phase
+	 * @return The current time, or {@link #NOT_MEASURED} if the listener is not enabled, in order to save the System.nanoTime() call.
+	 */
+	private static long startTime(PluginLoaderListener<?> listener) {
+		return listener.isEnabled() ? System.nanoTime() : NOT_MEASURED;
+	}
+	
+	private static <V> List<V> instantiate(Stream<PluginProvider<V>> providers, Consumer<PluginInstantiationException> errors) {
+		final List<V> result = new ArrayList<>();
+		providers.forEach(p -> {
+			try {
+				result.add(p.get());
+			} catch(PluginInstantiationException e) {
+				errors.accept(e);
+			}
+		});
+		return result;
+	}
+	
+	/** Gets the plugins contained in a source without loading or instantiating them.
+	 * <br>The class names of the plugins are searched when this method is called, but the class loader is only built when
+	 * a plugin class is required, and the plugin classes are loaded and instantiated only when requested.
+	 * <br>The exception consumer is not called by the returned providers, they throw {@link PluginInstantiationException} to the caller.
+	 * @param <V> The interface/class of the plugins (all plugins should implement/extends this interface/class).
+	 * @param source The source to scan.
+	 * @param aClass The interface/class implemented/sub-classed by the plugins
+	 * @return A stream of providers, one per plugin class name.
+	 * @throws IOException if a problem occurs while reading the source.
+	 */
+	public <V> Stream<PluginProvider<V>> getProviders(T source, Class<V> aClass) throws IOException {
+		return getProviders(new LazyClassLoader(source, listener), aClass);
+	}
+
+	private <V> Stream<PluginProvider<V>> getProviders(LazyClassLoader loader, Class<V> aClass) throws IOException {
+		final long start = startTime(loader.listener);
+		final Set<String> classNames = classNameBuilder.get(loader.source, aClass);
+		if (start!=NOT_MEASURED) {
+			loader.listener.classNamesFound(loader.source, Collections.singleton(aClass), classNames.size(), System.nanoTime()-start);
+		}
+		return getProviders(loader, classNames, aClass);
+	}
+	
+	private <V> Stream<PluginProvider<V>> getProviders(LazyClassLoader loader, Set<String> classNames, Class<V> aClass) {
+		return classNames.stream().map(c -> new Provider<>(loader, c, aClass));
+	}
+	
+	private class LazyClassLoader {
+		private final T source;
+		private final PluginLoaderListener<? super T> listener;
+		private ClassLoader loader;
+		
+		private LazyClassLoader(T source, PluginLoaderListener<? super T> listener) {
+			this.source = source;
+			this.listener = listener;
+		}
+		
+		private synchronized ClassLoader get() {
+			if (loader==null) {
+				final long start = startTime(listener);
+				loader = buildClassLoader(source);
+				if (start!=NOT_MEASURED) {
+					listener.classLoaderBuilt(source, loader, System.nanoTime()-start);
+				}
+			}
+			return loader;
+		}
+
+		/** Releases the class loader, if it was built, because no plugin it loaded is returned to the caller.
+		 * <br>Calling this method again has no effect.
+		 * @param cause The exception that prevents the plugins from being returned, null if no plugin was found.
+		 */
+		private synchronized void release(Exception cause) {
+			if (loader!=null) {
+				try {
+					releaseClassLoader(source, loader);
+				} catch (RuntimeException e) {
+					if (cause==null) {
+						throw e;
+					}
+					cause.addSuppressed(e);
+				} finally {
+					loader = null;
+				}
+			}
+		}
+
+		private void failed(String className, PluginInstantiationException e, long start) {
+			if (start!=NOT_MEASURED) {
+				listener.instantiationFailed(source, className, e, System.nanoTime()-start);
+			}
+		}
+	}
+	
+	private class Provider<V> implements PluginProvider<V> {
+		private final LazyClassLoader loader;
+		private final String className;
+		private final Class<V> aClass;
+		private volatile Class<? extends V> type;
+
+		private Provider(LazyClassLoader loader, String className, Class<V> aClass) {
+			this.loader = loader;
+			this.className = className;
+			this.aClass = aClass;
+		}
+
+		@Override
+		public String getClassName() {
+			return className;
+		}
+
+		@Override
+		public Class<? extends V> type() {
+			if (type==null) {
+				long start = startTime(loader.listener);
+				final Class<?> pluginClass;
+				try {
+					final ClassLoader classLoader = loader.get();
+					// Do not count the time spent to build the class loader
+					start = startTime(loader.listener);
+					pluginClass = classLoader.loadClass(className);
+				} catch (Exception e) {
+					final PluginInstantiationException ex = new PluginInstantiationException(e);
+					loader.failed(className, ex, start);
+					throw ex;
+				}
+				if (!aClass.isAssignableFrom(pluginClass)) {
+					final PluginInstantiationException ex = new PluginInstantiationException(className+" is not a "+aClass.getCanonicalName()+" instance");
+					loader.failed(className, ex, start);
+					throw ex;
+				}
+				if (start!=NOT_MEASURED) {
+					loader.listener.classLoaded(loader.source, className, System.nanoTime()-start);
+				}
+				type = pluginClass.asSubclass(aClass);
+			}
+			return type;
+		}
+
+		@Override
+		public V get() {
+			final Class<? extends V> pluginClass = type();
+			final long start = startTime(loader.listener);
+			final V result;
+			try {
+				result = instanceBuilder.get(pluginClass);
+			} catch (Exception e) {
+				final PluginInstantiationException ex = e instanceof PluginInstantiationException ? (PluginInstantiationException) e : new PluginInstantiationException(e);
+				loader.failed(className, ex, start);
+				throw ex;
+			}
+			if (start!=NOT_MEASURED) {
+				loader.listener.instanceBuilt(loader.source, className, System.nanoTime()-start);
+			}
+			return result;
+		}
+	}
+
 	/** Builds the classloader that will be used to load the plugin classes.
 	 * @param context The context, for example, the path of a jar file.
 	 * @return A classLoader that can load classes from the context.
 	 */
 	protected abstract ClassLoader buildClassLoader(T context);
+
+	/** Releases a class loader built by {@link #buildClassLoader(Object)} that loaded no returned plugin.
+	 * <br>The <i>getPlugins</i> methods call this method when they return no plugin, for instance because every instantiation failed,
+	 * or when they throw an exception after the class loader was built. When {@link #getAllPlugins(Collection, Class)} throws an exception,
+	 * it calls this method for every source it processed. The class loaders of the returned plugins, and the ones built by the
+	 * providers returned by {@link #getProviders(Object, Class)}, are never released by this loader.
+	 * <br>The default implementation does nothing.
+	 * @param context The context passed to {@link #buildClassLoader(Object)}.
+	 * @param classLoader The class loader returned by {@link #buildClassLoader(Object)}.
+	 */
+	protected void releaseClassLoader(T context, ClassLoader classLoader) {
+		// Nothing to release by default
+	}
 }
@@ -0,0 +1,118 @@
+package com.fathzer.plugin.loader;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/** A listener of the phases of plugins loading.
+ * <br>It allows to know where the time is spent when plugins are loaded: Searching the plugin class names, building the class loader,
+ * loading the plugin classes or instantiating them.
+ * <br>All durations are in nanoseconds. All methods have an empty default implementation, so a listener only overrides the methods it is interested in.
+ * <br>Please note that the methods can be called concurrently by many threads (for instance by {@link PluginLoader#getAllPlugins(Collection, Class)}).
+ * Their implementations should be thread safe and fast.
+ * @param <T> The source type
+ * @see PluginLoader#withListener(PluginLoaderListener)
+ * @see com.fathzer.plugin.loader.utils.PluginLoaderMetrics
+ */
+public interface PluginLoaderListener<T> {
+	/** A listener that does nothing.
+	 * <br>When a loader uses this listener, it does not even measure the durations.
+	 */
+	PluginLoaderListener<Object> NONE = new PluginLoaderListener<Object>() {
+		@Override
+		public boolean isEnabled() {
+			return false;
+		}
+	};
+
+	/** Combines listeners.
+	 * <br>A loader has only one listener, use this method to notify many listeners (for instance a
+	 * {@link com.fathzer.plugin.loader.utils.PluginLoaderMetrics} and a JDK Flight Recorder listener).
+	 * <br>The returned listener is enabled if at least one of the listeners is enabled. It only notifies the listeners that are enabled.
+	 * @param <T> The source type
+	 * @param listeners The listeners.
+	 * @return A listener that notifies all the <i>listeners</i>.
+	 * @throws IllegalArgumentException if <i>listeners</i> or one of its elements is null.
+	 */
+	@SafeVarargs
+	static <T> PluginLoaderListener<T> of(PluginLoaderListener<? super T>... listeners) {
+		if (listeners==null) {
+			throw new IllegalArgumentException();
+		}
+		final List<PluginLoaderListener<? super T>> list = new ArrayList<>(listeners.length);
+		for (PluginLoaderListener<? super T> listener : listeners) {
+			if (listener==null) {
+				throw new IllegalArgumentException();
+			}
+			list.add(listener);
+		}
+		return new CompositePluginLoaderListener<>(list);
+	}
+
+	/** Tests whether this listener is enabled.
+	 * <br>This method is called by the loader before each phase. If it returns false, the phase is not measured and the listener is not notified.
+	 * It allows a listener to cost nothing while it is not used.
+	 * @return true (the default) if the listener should be notified.
+	 */
+	default boolean isEnabled() {
+		return true;
+	}
+
+	/** Called when the plugins of a source were loaded and instantiated by {@link PluginLoader#getPlugins(Object, Class)},
+	 * {@link PluginLoader#getPlugins(Object, Collection)} or {@link PluginLoader#getAllPlugins(Collection, Class)}.
+	 * @param source The source.
+	 * @param classes The interfaces/classes implemented/sub-classed by the plugins.
+	 * @param pluginCount The number of plugins successfully instantiated.
+	 * @param duration The total time spent to process the source.
+	 */
+	default void sourceScanned(T source, Collection<? extends Class<?>> classes, int pluginCount, long duration) {
+		// Does nothing by default
+	}
+
+	/** Called when the {@link ClassNameBuilder} found the plugin class names of a source.
+	 * @param source The source.
+	 * @param classes The interfaces/classes implemented/sub-classed by the plugins.
+	 * @param classNameCount The number of class names found.
+	 * @param duration The time spent by the {@link ClassNameBuilder}.
+	 */
+	default void classNamesFound(T source, Collection<? extends Class<?>> classes, int classNameCount, long duration) {
+		// Does nothing by default
+	}
+
+	/** Called when the class loader of a source was built.
+	 * @param source The source.
+	 * @param classLoader The class loader.
+	 * @param duration The time spent to build the class loader.
+	 */
+	default void classLoaderBuilt(T source, ClassLoader classLoader, long duration) {
+		// Does nothing by default
+	}
+
+	/** Called when a plugin class was loaded.
+	 * @param source The source.
+	 * @param className The plugin's class name.
+	 * @param duration The time spent to load the class.
+	 */
+	default void classLoaded(T source, String className, long duration) {
+		// Does nothing by default
+	}
+
+	/** Called when a plugin was instantiated.
+	 * @param source The source.
+	 * @param className The plugin's class name.
+	 * @param duration The time spent by the {@link InstanceBuilder}.
+	 */
+	default void instanceBuilt(T source, String className, long duration) {
+		// Does nothing by default
+	}
+
+	/** Called when a plugin class can't be loaded or instantiated.
+	 * @param source The source.
+	 * @param className The plugin's class name.
+	 * @param exception The exception that will be thrown by the loader (or sent to its exception consumer).
+	 * @param duration The time spent before the failure.
+	 */
+	default void instantiationFailed(T source, String className, PluginInstantiationException exception, long duration) {
+		// Does nothing by default
+	}
+}
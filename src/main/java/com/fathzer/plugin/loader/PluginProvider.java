@@ -0,0 +1,32 @@
+package com.fathzer.plugin.loader;
+
+import java.util.function.Supplier;
+
+/** A plugin that is discovered but not yet loaded nor instantiated.
+ * <br>It is quite similar to java.util.ServiceLoader.Provider (which is not available in java 8).
+ * <br>The plugin class is loaded on the first call to {@link #type()} or {@link #get()}.
+ * @param <V> The interface/class implemented/sub-classed by the plugin
+ * @see PluginLoader#getProviders(Object, Class)
+ */
+public interface PluginProvider<V> extends Supplier<V> {
+	/** Gets the plugin's class name.
+	 * <br>This method never loads the plugin class.
+	 * @return a class name (typically an argument of the <i>loadClass</i> method of a ClassLoader).
+	 */
+	String getClassName();
+	
+	/** Gets the plugin's class.
+	 * <br>The class is loaded, but not instantiated.
+	 * @return a class
+	 * @throws PluginInstantiationException if the class can't be loaded or does not implement/extend the expected interface/class.
+	 */
+	Class<? extends V> type();
+	
+	/** Instantiates the plugin.
+	 * <br>Every call creates a new instance.
+	 * @return a new plugin instance
+	 * @throws PluginInstantiationException if a problem occurs while creating the plugin.
+	 */
+	@Override
+	V get();
+}
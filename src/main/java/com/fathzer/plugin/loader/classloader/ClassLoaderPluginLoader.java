@@ -1,12 +1,17 @@
 package com.fathzer.plugin.loader.classloader;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import com.fathzer.plugin.loader.PluginLoader;
 import com.fathzer.plugin.loader.ClassNameBuilder;
 import com.fathzer.plugin.loader.InstanceBuilder;
 import com.fathzer.plugin.loader.PluginInstantiationException;
+import com.fathzer.plugin.loader.PluginProvider;
 
 /** A class able to load plugins from jar files contained in a folder.
  */
@@ -43,6 +48,34 @@ public class ClassLoaderPluginLoader extends PluginLoader<ClassLoader> {
 		return super.getPlugins(source==null ? Thread.currentThread().getContextClassLoader() : source, aClass);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * If that source is null, then the {@link Thread#getContextClassLoader() context ClassLoader} of the calling thread is used.
+	 */
+	@Override
+	public Map<Class<?>, List<?>> getPlugins(ClassLoader source, Collection<? extends Class<?>> classes) throws IOException {
+		return super.getPlugins(source==null ? Thread.currentThread().getContextClassLoader() : source, classes);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * If that source is null, then the {@link Thread#getContextClassLoader() context ClassLoader} of the calling thread is used.
+	 */
+	@Override
+	public <V> Stream<PluginProvider<V>> getProviders(ClassLoader source, Class<V> aClass) throws IOException {
+		return super.getProviders(source==null ? Thread.currentThread().getContextClassLoader() : source, aClass);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * Null sources are replaced by the {@link Thread#getContextClassLoader() context ClassLoader} of the calling thread.
+	 */
+	@Override
+	public <V> List<V> getAllPlugins(Collection<? extends ClassLoader> sources, Class<V> aClass) throws IOException {
+		final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+		return super.getAllPlugins(sources.stream().map(s -> s==null ? contextClassLoader : s).collect(Collectors.toList()), aClass);
+	}
+
 	@Override
 	protected ClassLoader buildClassLoader(ClassLoader context) {
 		return context;
@@ -0,0 +1,165 @@
+package com.fathzer.plugin.loader.jar;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.fathzer.plugin.loader.utils.FileUtils;
+
+/** A {@link JarClassLoaderPool} that records the plugin jars and classes loaded during a training run, in order to build a
+ * <a href="https://docs.oracle.com/en/java/javase/17/vm/class-data-sharing.html">Class Data Sharing</a> (CDS) archive.
+ * <br>Loading and verifying plugin classes can be a significant part of the startup time of an application. A CDS archive allows
+ * the next JVMs to map pre-parsed classes from a shared file instead. There are two ways to build such an archive:<ul>
+ * <li>Dynamically (Java 13+): Run the training application with the {@link #getTrainingOptions(Path)} JVM options. The archive is written
+ * when the JVM exits. This recorder is not required in that case, but {@link #getRecordedClasses()} allows to check which classes were loaded.</li>
+ * <li>Statically (Java 11+): Run the training application with this recorder as the {@link JarPluginLoader#withClassLoaderPool(JarClassLoaderPool) class loader pool}
+ * of its plugin loader, then {@link #writeClassList(Path) write the class list}, and finally run the JVM with the
+ * {@link #getDumpOptions(Path, Path)} options (and the application's class path) to build the archive.</li>
+ * </ul>
+ * Then, start the application with the {@link #getRuntimeOptions(Path)} options.
+ * <br>The JVM can only serve an archived plugin class to a class loader that defines it from a jar file with exactly the same bytes, and
+ * only to one class loader instance. That is why the application should use a {@link JarClassLoaderPool} (so that all the classes of a
+ * jar are loaded by a single class loader), with its default {@link URLClassLoader} or with {@link MappedJarClassLoader}. Both define classes
+ * with the jar file as code source location.
+ * <br>This class is thread safe.
+ */
+public class ClassDataSharingRecorder extends JarClassLoaderPool {
+	private final Map<Path, Set<Class<?>>> recorded = new LinkedHashMap<>();
+
+	private static final class RecordingClassLoader extends URLClassLoader {
+		static {
+			registerAsParallelCapable();
+		}
+
+		private final ClassDataSharingRecorder recorder;
+		private final Path jar;
+
+		private RecordingClassLoader(ClassDataSharingRecorder recorder, Path jar) {
+			super(new URL[] {FileUtils.getURL(jar)});
+			this.recorder = recorder;
+			this.jar = jar;
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			final Class<?> result = super.findClass(name);
+			recorder.record(jar, result);
+			return result;
+		}
+	}
+
+	/** Creates a {@link URLClassLoader} that records the classes it defines.
+	 * @param jar The jar file
+	 * @return A new class loader.
+	 */
+	@Override
+	protected ClassLoader create(Path jar) throws IOException {
+		return new RecordingClassLoader(this, jar);
+	}
+
+	private synchronized void record(Path jar, Class<?> aClass) {
+		recorded.computeIfAbsent(jar, k -> new LinkedHashSet<>()).add(aClass);
+	}
+
+	/** Gets the recorded classes.
+	 * @return A map whose keys are the jar files and values are the names of the classes loaded from the jar, in the order they were loaded.
+	 */
+	public synchronized Map<Path, List<String>> getRecordedClasses() {
+		final Map<Path, List<String>> result = new LinkedHashMap<>();
+		recorded.forEach((jar, classes) -> result.put(jar, classes.stream().map(Class::getName).collect(Collectors.toList())));
+		return result;
+	}
+
+	/** Writes the recorded classes in a class list file usable with the <i>-XX:SharedClassListFile</i> JVM option.
+	 * <br>Plugin classes are written with their super class, their interfaces and the jar they come from, as required by the JVM
+	 * to archive classes loaded by custom class loaders. Their super class and interfaces that are not plugin classes are also written,
+	 * they should be available from the JDK or the application's class path when the archive is built.
+	 * @param file The file to write.
+	 * @throws IOException If something went wrong
+	 * @see #getDumpOptions(Path, Path)
+	 */
+	public void writeClassList(Path file) throws IOException {
+		final Map<Class<?>, Path> sources = new LinkedHashMap<>();
+		synchronized (this) {
+			recorded.forEach((jar, classes) -> classes.forEach(c -> sources.put(c, jar)));
+		}
+		final Map<Class<?>, Integer> ids = new HashMap<>();
+		final List<String> lines = new ArrayList<>();
+		for (Class<?> aClass : sources.keySet()) {
+			addToClassList(aClass, sources, ids, lines);
+		}
+		Files.write(file, lines, StandardCharsets.UTF_8);
+	}
+
+	private static void addToClassList(Class<?> aClass, Map<Class<?>, Path> sources, Map<Class<?>, Integer> ids, List<String> lines) {
+		if (ids.containsKey(aClass)) {
+			return;
+		}
+		final List<Class<?>> parents = new ArrayList<>();
+		if (aClass.getSuperclass()!=null) {
+			parents.add(aClass.getSuperclass());
+		}
+		parents.addAll(Arrays.asList(aClass.getInterfaces()));
+		for (Class<?> parent : parents) {
+			addToClassList(parent, sources, ids, lines);
+		}
+		final int id = ids.size()+1;
+		ids.put(aClass, id);
+		final StringBuilder line = new StringBuilder(aClass.getName().replace('.', '/')).append(" id: ").append(id);
+		final Path jar = sources.get(aClass);
+		if (jar!=null) {
+			if (aClass.getSuperclass()!=null) {
+				line.append(" super: ").append(ids.get(aClass.getSuperclass()));
+			}
+			if (aClass.getInterfaces().length>0) {
+				line.append(" interfaces:");
+				for (Class<?> anInterface : aClass.getInterfaces()) {
+					line.append(' ').append(ids.get(anInterface));
+				}
+			}
+			line.append(" source: ").append(jar.toAbsolutePath());
+		}
+		lines.add(line.toString());
+	}
+
+	/** Gets the JVM options that create a dynamic CDS archive when the JVM exits.
+	 * <br>Requires Java 13 or more.
+	 * @param archive The archive file to create
+	 * @return A list of JVM options
+	 */
+	public static List<String> getTrainingOptions(Path archive) {
+		return Collections.singletonList("-XX:ArchiveClassesAtExit="+archive.toAbsolutePath());
+	}
+
+	/** Gets the JVM options that create a static CDS archive from a class list.
+	 * <br>The JVM launched with these options only creates the archive and exits. It should have the same class path
+	 * as the application.
+	 * @param classList The class list file written by {@link #writeClassList(Path)}
+	 * @param archive The archive file to create
+	 * @return A list of JVM options
+	 */
+	public static List<String> getDumpOptions(Path classList, Path archive) {
+		return Arrays.asList("-Xshare:dump", "-XX:SharedClassListFile="+classList.toAbsolutePath(), "-XX:SharedArchiveFile="+archive.toAbsolutePath());
+	}
+
+	/** Gets the JVM options that make the JVM use a CDS archive.
+	 * @param archive The archive file
+	 * @return A list of JVM options
+	 */
+	public static List<String> getRuntimeOptions(Path archive) {
+		return Collections.singletonList("-XX:SharedArchiveFile="+archive.toAbsolutePath());
+	}
+}
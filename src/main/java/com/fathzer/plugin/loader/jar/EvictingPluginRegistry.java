@@ -0,0 +1,356 @@
+package com.fathzer.plugin.loader.jar;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.fathzer.plugin.loader.utils.ConcurrentPluginRegistry;
+
+/** A {@link ConcurrentPluginRegistry} that unloads the plugins of the jars that are not used.
+ * <br>Jars are registered with {@link #registerJar(Path)}. When a jar is evicted, its plugins are re-registered {@link #registerLazy(String, Supplier) lazily}
+ * and its class loader is released, so that its classes can be unloaded by the garbage collector.
+ * The next {@link #get(String)} of one of its plugins transparently reloads the jar.
+ * <br>A jar is evicted:<ul>
+ * <li>When more than {@link #setMaxLoadedJars(int) a maximum number} of jars are loaded. The least recently used jars are then evicted.</li>
+ * <li>When {@link #evictIdle()} is called and none of its plugins was got during the {@link #setIdleTimeout(long, TimeUnit) idle timeout}.
+ * This method is typically called periodically by a {@link java.util.concurrent.ScheduledExecutorService}.</li>
+ * <li>When {@link #evict(Path)} is called.</li>
+ * </ul>
+ * Only {@link #get(String)} records the use of a plugin, the plugins got from an {@link #acquire() acquired} generation are not considered as used.
+ * <br>The class loader of an evicted jar is released once all the generations that could contain its plugins are released. If the loader has a
+ * {@link JarPluginLoader#withClassLoaderPool(JarClassLoaderPool) class loader pool}, the jar is evicted from the pool and the class loader is released
+ * to the pool, otherwise it is closed.
+ * <br>Please note that classes are unloaded only if the application does not keep references to the evicted plugins.
+ * Jars are expected not to change while they are registered, use a {@link JarFolderWatcher} if they can change.
+ * @param <T> The class of the plugins.
+ */
+public class EvictingPluginRegistry<T> extends ConcurrentPluginRegistry<T> {
+	private final JarPluginLoader loader;
+	private final Class<T> pluginClass;
+	private final Map<Path, RegisteredJar> jars = new ConcurrentHashMap<>();
+	/** The jar of each registered plugin key. Modified while holding the registry's monitor */
+	private final Map<String, RegisteredJar> jarByKey = new ConcurrentHashMap<>();
+	/** The currently loaded jars. Guarded by itself */
+	private final Set<RegisteredJar> loaded = new HashSet<>();
+	private volatile int maxLoadedJars = Integer.MAX_VALUE;
+	private volatile long idleTimeout = Long.MAX_VALUE;
+	private volatile BiConsumer<Path, Exception> errorHandler = (p, e) -> {};
+
+	private final class RegisteredJar {
+		private final Path path;
+		private volatile Set<String> keys = Collections.emptySet();
+		/** The plugins of the jar, null if the jar is not loaded. Guarded by this */
+		private Map<String, T> plugins;
+		/** The class loader of the plugins. Guarded by this */
+		private ClassLoader classLoader;
+		private volatile long lastAccess;
+
+		private RegisteredJar(Path path) {
+			this.path = path;
+		}
+
+		private synchronized Map<String, T> load() throws IOException {
+			if (plugins==null) {
+				final List<T> list = loader.getPlugins(path, pluginClass);
+				final Map<String, T> map = new HashMap<>();
+				list.forEach(p -> map.put(getKeyFunction().apply(p), p));
+				plugins = map;
+				// If no plugin was loaded, the loader already released the class loader it used
+				classLoader = list.isEmpty() ? null : list.get(0).getClass().getClassLoader();
+				synchronized (loaded) {
+					loaded.add(this);
+				}
+			}
+			lastAccess = System.nanoTime();
+			return plugins;
+		}
+
+		private T get(String key) {
+			final T plugin;
+			try {
+				plugin = load().get(key);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			if (plugin==null) {
+				throw new IllegalStateException("Plugin "+key+" is no more available in "+path);
+			}
+			return plugin;
+		}
+	}
+
+	/** Constructor.
+	 * <br>The built registry is empty.
+	 * @param keyFunction A function that get the plugin's key.
+	 * @param loader The loader used to load the plugins of the jars.
+	 * @param pluginClass The class of the plugins.
+	 * @throws IllegalArgumentException if an argument is null.
+	 */
+	public EvictingPluginRegistry(Function<T, String> keyFunction, JarPluginLoader loader, Class<T> pluginClass) {
+		super(keyFunction);
+		if (loader==null || pluginClass==null) {
+			throw new IllegalArgumentException();
+		}
+		this.loader = loader;
+		this.pluginClass = pluginClass;
+	}
+
+	/** Sets the maximum number of loaded jars.
+	 * <br>When a jar is loaded and this number is exceeded, the least recently used jars are evicted.
+	 * <br>Default is {@link Integer#MAX_VALUE}.
+	 * @param maxLoadedJars The maximum number of jars.
+	 * @throws IllegalArgumentException if maxLoadedJars is &lt; 1
+	 */
+	public void setMaxLoadedJars(int maxLoadedJars) {
+		if (maxLoadedJars<1) {
+			throw new IllegalArgumentException();
+		}
+		this.maxLoadedJars = maxLoadedJars;
+	}
+
+	/** Sets the idle timeout.
+	 * <br>By default, jars never time out.
+	 * @param timeout The time after which a jar whose plugins were not used is evicted by {@link #evictIdle()}.
+	 * @param unit The unit of <i>timeout</i>
+	 * @throws IllegalArgumentException if timeout is negative or unit is null
+	 */
+	public void setIdleTimeout(long timeout, TimeUnit unit) {
+		if (timeout<0 || unit==null) {
+			throw new IllegalArgumentException();
+		}
+		this.idleTimeout = unit.toNanos(timeout);
+	}
+
+	/** Sets the handler of errors that occur when a jar is evicted.
+	 * <br>By default, errors are ignored.
+	 * @param errorHandler A consumer that receives the evicted jar and the exception thrown when its class loader was released.
+	 * @throws IllegalArgumentException if errorHandler is null
+	 */
+	public void setErrorHandler(BiConsumer<Path, Exception> errorHandler) {
+		if (errorHandler==null) {
+			throw new IllegalArgumentException();
+		}
+		this.errorHandler = errorHandler;
+	}
+
+	/** Registers the plugins of a jar.
+	 * <br>The jar is loaded in order to get the keys of its plugins, then the plugins are registered lazily.
+	 * @param jar The jar file.
+	 * @return The keys of the jar's plugins.
+	 * @throws IOException If the jar can't be loaded.
+	 * @throws IllegalArgumentException if jar is null
+	 */
+	public Set<String> registerJar(Path jar) throws IOException {
+		if (jar==null) {
+			throw new IllegalArgumentException();
+		}
+		final RegisteredJar registered = jars.computeIfAbsent(jar.toAbsolutePath().normalize(), RegisteredJar::new);
+		final Set<String> keys;
+		try {
+			keys = Collections.unmodifiableSet(new HashSet<>(registered.load().keySet()));
+		} catch (IOException | RuntimeException e) {
+			if (registered.keys.isEmpty()) {
+				jars.remove(registered.path, registered);
+			}
+			throw e;
+		}
+		synchronized (this) {
+			registered.keys = keys;
+			for (String key : keys) {
+				super.registerLazy(key, getFactory(registered, key));
+				jarByKey.put(key, registered);
+			}
+		}
+		evictExceeding(registered);
+		return keys;
+	}
+
+	private Supplier<T> getFactory(RegisteredJar registered, String key) {
+		return () -> {
+			final T plugin = registered.get(key);
+			evictExceeding(registered);
+			return plugin;
+		};
+	}
+
+	/** Gets a plugin by its key.
+	 * <br>If the plugin was evicted, its jar is loaded again.
+	 * @param key The plugin's key
+	 * @return The plugin or null if the plugin does not exists (or its instantiation failed).
+	 */
+	@Override
+	public T get(String key) {
+		final T result = super.get(key);
+		if (result!=null) {
+			final RegisteredJar registered = jarByKey.get(key);
+			if (registered!=null) {
+				registered.lastAccess = System.nanoTime();
+			}
+		}
+		return result;
+	}
+
+	/** Evicts a jar.
+	 * @param jar The jar file.
+	 * @return true if the jar was loaded.
+	 * @throws IllegalArgumentException if jar is null
+	 */
+	public boolean evict(Path jar) {
+		if (jar==null) {
+			throw new IllegalArgumentException();
+		}
+		final RegisteredJar registered = jars.get(jar.toAbsolutePath().normalize());
+		return registered!=null && unload(registered);
+	}
+
+	/** Evicts the jars whose plugins were not used during the {@link #setIdleTimeout(long, TimeUnit) idle timeout}.
+	 * @return The number of evicted jars
+	 */
+	public int evictIdle() {
+		final long timeout = idleTimeout;
+		if (timeout==Long.MAX_VALUE) {
+			return 0;
+		}
+		final long now = System.nanoTime();
+		int count = 0;
+		for (RegisteredJar registered : getLoaded()) {
+			if (now-registered.lastAccess>=timeout && unload(registered)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/** Gets the currently loaded jars.
+	 * @return A set of absolute normalized paths.
+	 */
+	public Set<Path> getLoadedJars() {
+		final Set<Path> result = new HashSet<>();
+		getLoaded().forEach(r -> result.add(r.path));
+		return result;
+	}
+
+	private List<RegisteredJar> getLoaded() {
+		synchronized (loaded) {
+			return new ArrayList<>(loaded);
+		}
+	}
+
+	/** Evicts the least recently used jars if too many jars are loaded.
+	 * @param recent The jar that was just used, it is not evicted.
+	 */
+	private void evictExceeding(RegisteredJar recent) {
+		final List<RegisteredJar> candidates = getLoaded();
+		int exceeding = candidates.size()-maxLoadedJars;
+		if (exceeding<=0) {
+			return;
+		}
+		candidates.remove(recent);
+		candidates.sort(Comparator.comparingLong(r -> r.lastAccess));
+		for (RegisteredJar registered : candidates) {
+			if (exceeding<=0) {
+				break;
+			}
+			if (unload(registered)) {
+				exceeding--;
+			}
+		}
+	}
+
+	private boolean unload(RegisteredJar registered) {
+		final ClassLoader classLoader;
+		final CompletableFuture<Void> released;
+		synchronized (registered) {
+			if (registered.plugins==null) {
+				return false;
+			}
+			classLoader = registered.classLoader;
+			registered.plugins = null;
+			registered.classLoader = null;
+			synchronized (loaded) {
+				loaded.remove(registered);
+			}
+			synchronized (this) {
+				for (String key : registered.keys) {
+					// Keys that were unregistered or registered by someone else are ignored
+					if (jarByKey.get(key)==registered) {
+						super.registerLazy(key, getFactory(registered, key));
+					}
+				}
+				released = getPreviousGenerationsReleased();
+			}
+			final JarClassLoaderPool pool = loader.getClassLoaderPool();
+			if (pool!=null) {
+				// Next load will use a new class loader
+				try {
+					pool.evict(registered.path);
+				} catch (IOException e) {
+					errorHandler.accept(registered.path, e);
+				}
+			}
+		}
+		if (classLoader!=null) {
+			released.thenRun(() -> release(registered.path, classLoader));
+		}
+		return true;
+	}
+
+	private void release(Path jar, ClassLoader classLoader) {
+		try {
+			final JarClassLoaderPool pool = loader.getClassLoaderPool();
+			if (pool!=null) {
+				pool.release(classLoader);
+			} else if (classLoader instanceof Closeable) {
+				((Closeable)classLoader).close();
+			}
+		} catch (IOException | RuntimeException e) {
+			errorHandler.accept(jar, e);
+		}
+	}
+
+	@Override
+	public synchronized T register(T plugin) {
+		jarByKey.remove(getKeyFunction().apply(plugin));
+		return super.register(plugin);
+	}
+
+	@Override
+	public synchronized void registerLazy(String key, Supplier<? extends T> factory) {
+		super.registerLazy(key, factory);
+		jarByKey.remove(key);
+	}
+
+	@Override
+	public synchronized List<T> registerAll(Collection<T> plugins) {
+		plugins.forEach(p -> jarByKey.remove(getKeyFunction().apply(p)));
+		return super.registerAll(plugins);
+	}
+
+	@Override
+	public synchronized T unregister(String key) {
+		jarByKey.remove(key);
+		return super.unregister(key);
+	}
+
+	@Override
+	public synchronized CompletableFuture<Void> replaceAll(Collection<T> plugins) {
+		jarByKey.clear();
+		return super.replaceAll(plugins);
+	}
+}
@@ -0,0 +1,64 @@
+package com.fathzer.plugin.loader.jar;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.fathzer.plugin.loader.ClassNameBuilder;
+
+/** A {@link ClassNameBuilder} that retrieves the class names from a {@link JarIndex}.
+ * <br>Depending on the constructor used, it returns the same class names as a {@link ServiceClassNameBuilder} or a
+ * {@link ManifestAttributeClassNameBuilder}, but jars are only read if they changed since they were indexed.
+ * <br>Please note that this class never saves the index, it's up to you to call {@link JarIndex#save()} when all plugins are loaded.
+ */
+public class IndexedClassNameBuilder implements ClassNameBuilder<Path> {
+	private final JarIndex index;
+	private final String attrName;
+
+	/** Constructor.
+	 * <br>The built instance retrieves the class names in the same way as {@link ServiceClassNameBuilder}.
+	 * @param index The index to use.
+	 */
+	public IndexedClassNameBuilder(JarIndex index) {
+		this(index, null);
+	}
+
+	/** Constructor.
+	 * <br>The built instance retrieves the class names in the same way as {@link ManifestAttributeClassNameBuilder}.
+	 * @param index The index to use.
+	 * @param attrName The name of the manifest's attribute that contains the plugin's class name (null to use service definition files).
+	 */
+	public IndexedClassNameBuilder(JarIndex index, String attrName) {
+		if (index==null) {
+			throw new IllegalArgumentException();
+		}
+		this.index = index;
+		this.attrName = attrName;
+	}
+
+	@Override
+	public Set<String> get(Path file, Class<?> aClass) throws IOException {
+		return get(index.get(file), aClass);
+	}
+
+	@Override
+	public Map<Class<?>, Set<String>> getAll(Path file, Collection<? extends Class<?>> classes) throws IOException {
+		final JarIndex.Entry entry = index.get(file);
+		final Map<Class<?>, Set<String>> result = new HashMap<>();
+		for (Class<?> aClass : classes) {
+			result.put(aClass, get(entry, aClass));
+		}
+		return result;
+	}
+
+	private Set<String> get(JarIndex.Entry entry, Class<?> aClass) {
+		if (attrName==null) {
+			return entry.getClassNames(aClass.getName());
+		} else {
+			return ManifestAttributeClassNameBuilder.toClassNames(entry.getManifestAttribute(attrName));
+		}
+	}
+}
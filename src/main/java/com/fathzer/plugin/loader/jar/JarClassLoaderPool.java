@@ -0,0 +1,225 @@
+package com.fathzer.plugin.loader.jar;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.fathzer.plugin.loader.utils.FileUtils;
+
+/** A pool of class loaders on jar files.
+ * <br>The pool ensures that all the classes of a jar are loaded by a single class loader, whatever the number of times the jar
+ * is loaded. Class loaders are identified by the jar's path and the identity of the file (its size, its last modification time
+ * and its file key). If a jar file is replaced, the next {@link #acquire(Path)} returns a new class loader.
+ * <br>Class loaders are reference counted: Every call to {@link #acquire(Path)} should be balanced by a call to
+ * {@link #release(ClassLoader)} when the classes it loaded are no more used.
+ * A class loader that is evicted from the pool (because its jar changed, or because {@link #evict(Path)} was called)
+ * is closed as soon as it is no more referenced.
+ * <br>This class is thread safe.
+ * @see JarPluginLoader#withClassLoaderPool(JarClassLoaderPool)
+ */
+public class JarClassLoaderPool implements Closeable {
+	private final Map<Path, PooledLoader> pooled = new HashMap<>();
+	private final Map<ClassLoader, PooledLoader> all = new IdentityHashMap<>();
+
+	private static final class FileIdentity {
+		private final long size;
+		private final long lastModified;
+		private final Object fileKey;
+
+		private FileIdentity(BasicFileAttributes attributes) {
+			this.size = attributes.size();
+			this.lastModified = attributes.lastModifiedTime().toMillis();
+			this.fileKey = attributes.fileKey();
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(size, lastModified, fileKey);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (obj == null || getClass() != obj.getClass()) {
+				return false;
+			}
+			final FileIdentity other = (FileIdentity) obj;
+			return size == other.size && lastModified == other.lastModified && Objects.equals(fileKey, other.fileKey);
+		}
+	}
+
+	private static final class PooledLoader {
+		private final Path path;
+		private final FileIdentity identity;
+		private final ClassLoader loader;
+		private int references;
+		private boolean evicted;
+
+		private PooledLoader(Path path, FileIdentity identity, ClassLoader loader) {
+			this.path = path;
+			this.identity = identity;
+			this.loader = loader;
+		}
+	}
+
+	/** Gets the class loader of a jar file.
+	 * <br>The reference count of the returned class loader is incremented.
+	 * @param jar The jar file.
+	 * @return A class loader. If the jar did not change since a previous call, the same class loader is returned.
+	 * @throws IOException If the jar file attributes can't be read, or the class loader can't be created.
+	 */
+	public ClassLoader acquire(Path jar) throws IOException {
+		final Path key = getKey(jar);
+		final FileIdentity identity = new FileIdentity(Files.readAttributes(key, BasicFileAttributes.class));
+		final List<ClassLoader> toClose = new ArrayList<>();
+		try {
+			synchronized (this) {
+				PooledLoader result = pooled.get(key);
+				if (result!=null && !result.identity.equals(identity)) {
+					evict(result, toClose);
+					result = null;
+				}
+				if (result==null) {
+					result = new PooledLoader(key, identity, create(key));
+					pooled.put(key, result);
+					all.put(result.loader, result);
+				}
+				result.references++;
+				return result.loader;
+			}
+		} finally {
+			close(toClose);
+		}
+	}
+
+	/** Releases a class loader previously returned by {@link #acquire(Path)}.
+	 * <br>The reference count of the class loader is decremented. If the class loader was evicted and is no more referenced, it is closed.
+	 * <br>Please note that a class loader that is not evicted remains in the pool even if it is no more referenced.
+	 * @param loader The class loader to release (typically the class loader of a plugin's class).
+	 * @return true if the class loader was closed.
+	 * @throws IllegalArgumentException if the class loader is not referenced in this pool
+	 * @throws IOException If the class loader is closed and an error occurs while closing it
+	 */
+	public boolean release(ClassLoader loader) throws IOException {
+		final List<ClassLoader> toClose = new ArrayList<>();
+		synchronized (this) {
+			final PooledLoader pooledLoader = all.get(loader);
+			if (pooledLoader==null || pooledLoader.references==0) {
+				throw new IllegalArgumentException("This class loader is not referenced in this pool");
+			}
+			pooledLoader.references--;
+			if (pooledLoader.evicted && pooledLoader.references==0) {
+				all.remove(loader);
+				toClose.add(loader);
+			}
+		}
+		close(toClose);
+		return !toClose.isEmpty();
+	}
+
+	/** Evicts the class loader of a jar from this pool.
+	 * <br>The next call to {@link #acquire(Path)} will create a new class loader.
+	 * The evicted class loader is closed immediately if it is not referenced, or when it is released for the last time.
+	 * @param jar The jar file.
+	 * @return true if a class loader was evicted.
+	 * @throws IOException If the class loader is closed and an error occurs while closing it
+	 */
+	public boolean evict(Path jar) throws IOException {
+		final List<ClassLoader> toClose = new ArrayList<>();
+		final boolean result;
+		synchronized (this) {
+			final PooledLoader pooledLoader = pooled.get(getKey(jar));
+			result = pooledLoader!=null;
+			if (result) {
+				evict(pooledLoader, toClose);
+			}
+		}
+		close(toClose);
+		return result;
+	}
+
+	private void evict(PooledLoader pooledLoader, List<ClassLoader> toClose) {
+		pooled.remove(pooledLoader.path);
+		pooledLoader.evicted = true;
+		if (pooledLoader.references==0) {
+			all.remove(pooledLoader.loader);
+			toClose.add(pooledLoader.loader);
+		}
+	}
+
+	/** Gets the number of references to the pooled class loader of a jar.
+	 * @param jar The jar file.
+	 * @return The number of references, -1 if the pool does not contain a class loader for this jar.
+	 */
+	public synchronized int getReferenceCount(Path jar) {
+		final PooledLoader pooledLoader = pooled.get(getKey(jar));
+		return pooledLoader==null ? -1 : pooledLoader.references;
+	}
+
+	/** Gets the number of class loaders in this pool.
+	 * <br>Evicted class loaders that are still referenced are not counted.
+	 * @return an integer
+	 */
+	public synchronized int size() {
+		return pooled.size();
+	}
+
+	/** Closes all the class loaders of this pool, including the evicted ones that are still referenced.
+	 * <br>The pool can still be used after this method is called.
+	 * @throws IOException If an error occurs while closing a class loader
+	 */
+	@Override
+	public void close() throws IOException {
+		final List<ClassLoader> toClose;
+		synchronized (this) {
+			toClose = new ArrayList<>(all.keySet());
+			all.clear();
+			pooled.clear();
+		}
+		close(toClose);
+	}
+
+	/** Creates the class loader of a jar.
+	 * <br>The default implementation returns a {@link URLClassLoader} on the <i>jar</i>'s url.
+	 * <br>You may override this method if you want to change this behaviour. If the returned class loader implements
+	 * {@link Closeable}, it will be closed when it is no more used.
+	 * @param jar The jar file
+	 * @return A new class loader.
+	 * @throws IOException If the class loader can't be created.
+	 */
+	protected ClassLoader create(Path jar) throws IOException {
+		return new URLClassLoader(new URL[]{FileUtils.getURL(jar)});
+	}
+
+	private static Path getKey(Path jar) {
+		return jar.toAbsolutePath().normalize();
+	}
+
+	private static void close(List<ClassLoader> loaders) throws IOException {
+		IOException ex = null;
+		for (ClassLoader loader : loaders) {
+			if (loader instanceof Closeable) {
+				try {
+					((Closeable)loader).close();
+				} catch (IOException e) {
+					ex = e;
+				}
+			}
+		}
+		if (ex!=null) {
+			throw ex;
+		}
+	}
+}
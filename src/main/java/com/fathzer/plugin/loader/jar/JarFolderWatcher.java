@@ -0,0 +1,293 @@
+package com.fathzer.plugin.loader.jar;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import com.fathzer.plugin.loader.utils.FileUtils;
+import com.fathzer.plugin.loader.utils.PluginRegistry;
+
+/** A class that watches a folder containing plugin jars and keeps a {@link PluginRegistry} up to date with the plugins they contain.
+ * <br>When {@link #start() started}, the plugins of all the jars directly contained in the folder are loaded and registered.
+ * Then, when a jar is added, changed or removed, only the plugins of this jar are loaded, replaced or unregistered.
+ * <br>File system events are debounced: A jar is processed only once no event occurred on it during the {@link #setDebounceDelay(long) debounce delay}.
+ * This prevents a jar being written from being loaded many times, or before it is complete. Events are processed on a background thread.
+ * <br>Modifications of the registry are done while holding the registry's monitor. If the registry is not thread safe, the application
+ * should also synchronize on it when reading it. A {@link com.fathzer.plugin.loader.utils.ConcurrentPluginRegistry} does not require it.
+ * <br>When the plugins of a jar are replaced or removed, the class loader that loaded them is released. If <i>loader</i> has a
+ * {@link JarPluginLoader#withClassLoaderPool(JarClassLoaderPool) class loader pool}, it is released to the pool, otherwise it is closed.
+ * The plugin instances that were retrieved from the registry before should not be used anymore.
+ * @param <T> The class of the plugins.
+ */
+public class JarFolderWatcher<T> implements Closeable {
+	private static final String JAR_EXTENSION = ".jar";
+
+	private final Path folder;
+	private final JarPluginLoader loader;
+	private final Class<T> pluginClass;
+	private final PluginRegistry<T> registry;
+	/** The jars currently loaded. Only accessed by the executor's thread */
+	private final Map<Path, LoadedJar<T>> loaded = new HashMap<>();
+	private final Map<Path, ScheduledFuture<?>> pending = new ConcurrentHashMap<>();
+	private volatile long debounceDelay = 500;
+	private volatile BiConsumer<Path, Exception> errorHandler = (p, e) -> {};
+	private ScheduledExecutorService executor;
+	private WatchService watchService;
+
+	private static final class LoadedJar<T> {
+		private final long size;
+		private final long lastModified;
+		private final Map<String, T> plugins;
+		private final ClassLoader classLoader;
+
+		private LoadedJar(BasicFileAttributes attributes, Map<String, T> plugins, ClassLoader classLoader) {
+			this.size = attributes.size();
+			this.lastModified = attributes.lastModifiedTime().toMillis();
+			this.plugins = plugins;
+			this.classLoader = classLoader;
+		}
+
+		private boolean isSame(BasicFileAttributes attributes) {
+			return size==attributes.size() && lastModified==attributes.lastModifiedTime().toMillis();
+		}
+	}
+
+	/** Constructor.
+	 * @param folder The folder to watch.
+	 * @param loader The loader used to load the plugins of the jars.
+	 * @param pluginClass The class of the plugins.
+	 * @param registry The registry where plugins are registered.
+	 * @throws IllegalArgumentException if an argument is null.
+	 */
+	public JarFolderWatcher(Path folder, JarPluginLoader loader, Class<T> pluginClass, PluginRegistry<T> registry) {
+		if (folder==null || loader==null || pluginClass==null || registry==null) {
+			throw new IllegalArgumentException();
+		}
+		this.folder = folder.toAbsolutePath().normalize();
+		this.loader = loader;
+		this.pluginClass = pluginClass;
+		this.registry = registry;
+	}
+
+	/** Sets the debounce delay.
+	 * <br>Default is 500ms.
+	 * @param delay The delay in milliseconds, a jar is processed only once no event occurred on it during this delay.
+	 * @throws IllegalArgumentException if delay is negative
+	 */
+	public void setDebounceDelay(long delay) {
+		if (delay<0) {
+			throw new IllegalArgumentException();
+		}
+		this.debounceDelay = delay;
+	}
+
+	/** Sets the handler of errors that occur when a jar is processed on the background thread.
+	 * <br>By default, errors are ignored.
+	 * @param errorHandler A consumer that receives the jar that can't be loaded (or the watched folder if the error is not related to
+	 * a specific jar) and the exception.
+	 * @throws IllegalArgumentException if errorHandler is null
+	 */
+	public void setErrorHandler(BiConsumer<Path, Exception> errorHandler) {
+		if (errorHandler==null) {
+			throw new IllegalArgumentException();
+		}
+		this.errorHandler = errorHandler;
+	}
+
+	/** Starts watching the folder.
+	 * <br>This method returns once the plugins of the jars already contained in the folder are registered.
+	 * Errors that occur while loading these jars are sent to the {@link #setErrorHandler(BiConsumer) error handler}.
+	 * @throws IOException If the folder can't be watched
+	 * @throws IllegalStateException if this watcher is already started
+	 */
+	public synchronized void start() throws IOException {
+		if (executor!=null) {
+			throw new IllegalStateException("Already started");
+		}
+		watchService = folder.getFileSystem().newWatchService();
+		try {
+			folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+		} catch (IOException e) {
+			watchService.close();
+			throw e;
+		}
+		final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+			final Thread thread = new Thread(r, "plugin-loader-folder-watcher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.setRemoveOnCancelPolicy(true);
+		scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+		executor = scheduler;
+		try {
+			executor.submit(this::rescan).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			// Never happens, rescan handles its exceptions
+			throw new IllegalStateException(e.getCause());
+		}
+		final WatchService service = watchService;
+		final Thread watchThread = new Thread(() -> watch(service), "plugin-loader-folder-events");
+		watchThread.setDaemon(true);
+		watchThread.start();
+	}
+
+	/** Stops watching the folder.
+	 * <br>Plugins remain registered. Pending events are discarded, but a jar that is currently processed is processed until the end.
+	 * @throws IOException If an error occurs while closing the watch service.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (executor!=null) {
+			executor.shutdown();
+			executor = null;
+			pending.clear();
+			watchService.close();
+		}
+	}
+
+	private void watch(WatchService service) {
+		try {
+			while (true) {
+				final WatchKey key = service.take();
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind()==StandardWatchEventKinds.OVERFLOW) {
+						schedule(folder);
+					} else {
+						final Path jar = folder.resolve((Path)event.context());
+						if (jar.getFileName().toString().endsWith(JAR_EXTENSION)) {
+							schedule(jar);
+						}
+					}
+				}
+				if (!key.reset()) {
+					errorHandler.accept(folder, new IOException("Folder "+folder+" is no more accessible"));
+					return;
+				}
+			}
+		} catch (ClosedWatchServiceException e) {
+			// Watcher was closed
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/** Schedules the processing of a jar, or of the whole folder.
+	 * @param path The path of the jar, or the watched folder if the whole folder should be re-scanned.
+	 */
+	private synchronized void schedule(Path path) {
+		if (executor==null) {
+			return;
+		}
+		final ScheduledExecutorService scheduler = executor;
+		pending.compute(path, (k, previous) -> {
+			if (previous!=null) {
+				previous.cancel(false);
+			}
+			return scheduler.schedule(() -> {
+				pending.remove(k);
+				if (k.equals(folder)) {
+					rescan();
+				} else {
+					update(k);
+				}
+			}, debounceDelay, TimeUnit.MILLISECONDS);
+		});
+	}
+
+	private void rescan() {
+		final Set<Path> jars = new HashSet<>(loaded.keySet());
+		try {
+			jars.addAll(FileUtils.getFiles(folder, 1, FileUtils.IS_JAR));
+		} catch (IOException e) {
+			errorHandler.accept(folder, e);
+			return;
+		}
+		jars.forEach(this::update);
+	}
+
+	/** Updates the plugins of a jar.
+	 * @param jar The jar path.
+	 */
+	private void update(Path jar) {
+		try {
+			final LoadedJar<T> previous = loaded.get(jar);
+			final BasicFileAttributes attributes = Files.isRegularFile(jar) ? Files.readAttributes(jar, BasicFileAttributes.class) : null;
+			if (previous!=null && attributes!=null && previous.isSame(attributes)) {
+				// The jar did not change
+				return;
+			}
+			final LoadedJar<T> current = attributes==null ? null : load(jar, attributes);
+			replace(previous, current);
+			if (current==null) {
+				loaded.remove(jar);
+			} else {
+				loaded.put(jar, current);
+			}
+			if (previous!=null) {
+				release(jar, previous.classLoader, current==null);
+			}
+		} catch (Exception e) {
+			errorHandler.accept(jar, e);
+		}
+	}
+
+	private LoadedJar<T> load(Path jar, BasicFileAttributes attributes) throws IOException {
+		final List<T> plugins = loader.getPlugins(jar, pluginClass);
+		final Map<String, T> byKey = new HashMap<>();
+		plugins.forEach(p -> byKey.put(registry.getKeyFunction().apply(p), p));
+		// If no plugin was loaded, the loader already released the class loader it used
+		final ClassLoader classLoader = plugins.isEmpty() ? null : plugins.get(0).getClass().getClassLoader();
+		return new LoadedJar<>(attributes, byKey, classLoader);
+	}
+
+	private void replace(LoadedJar<T> previous, LoadedJar<T> current) {
+		final Map<String, T> previousPlugins = previous==null ? Collections.emptyMap() : previous.plugins;
+		final Map<String, T> currentPlugins = current==null ? Collections.emptyMap() : current.plugins;
+		synchronized (registry) {
+			registry.registerAll(new ArrayList<>(currentPlugins.values()));
+			for (Map.Entry<String, T> entry : previousPlugins.entrySet()) {
+				// Do not remove a plugin with the same key that was registered by someone else
+				if (!currentPlugins.containsKey(entry.getKey()) && registry.get(entry.getKey())==entry.getValue()) {
+					registry.unregister(entry.getKey());
+				}
+			}
+		}
+	}
+
+	private void release(Path jar, ClassLoader classLoader, boolean deleted) throws IOException {
+		final JarClassLoaderPool pool = loader.getClassLoaderPool();
+		if (pool!=null) {
+			if (deleted) {
+				pool.evict(jar);
+			}
+			if (classLoader!=null) {
+				pool.release(classLoader);
+			}
+		} else if (classLoader instanceof Closeable) {
+			((Closeable)classLoader).close();
+		}
+	}
+}
@@ -0,0 +1,348 @@
+package com.fathzer.plugin.loader.jar;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+
+/** A persistent index of the service definition files and manifest attributes of jar files.
+ * <br>Reading a jar to find the plugins it contains can be expensive, especially when the jar is stored on a network file system.
+ * This index remembers, for every jar, its size, its last modification time (and optionally a hash of its content), and the content
+ * of its service definition files and main manifest attributes. A jar is read again only if it has changed since it was indexed.
+ * <br>The index is stored in a compact binary file, protected by a checksum. If this file is corrupted or was written by an
+ * incompatible version of this library, it is ignored and the index is rebuilt.
+ * <br>This class is thread safe.
+ * @see IndexedClassNameBuilder
+ */
+public class JarIndex {
+	private static final int MAGIC = 0x504C4958;
+	private static final byte VERSION = 2;
+	private static final String SERVICES_FOLDER = "META-INF/services/";
+	private static final String HASH_ALGORITHM = "SHA-256";
+
+	private final Path file;
+	private final Map<String, Entry> entries;
+	private volatile boolean hashCheck;
+	private volatile boolean modified;
+
+	/** The indexed content of a jar file.
+	 */
+	public static final class Entry {
+		private final long size;
+		private final long lastModified;
+		private final byte[] hash;
+		private final Map<String, Set<String>> services;
+		private final Map<String, String> manifestAttributes;
+
+		private Entry(long size, long lastModified, byte[] hash, Map<String, Set<String>> services, Map<String, String> manifestAttributes) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.hash = hash;
+			this.services = Collections.unmodifiableMap(services);
+			this.manifestAttributes = manifestAttributes;
+		}
+
+		/** Gets the class names declared in a service definition file.
+		 * @param serviceName The service name (typically the canonical name of the interface implemented by the plugins).
+		 * @return An unmodifiable set, empty if the jar has no definition file for that service.
+		 */
+		public Set<String> getClassNames(String serviceName) {
+			return services.getOrDefault(serviceName, Collections.emptySet());
+		}
+
+		/** Gets the names of the services defined in the jar.
+		 * @return An unmodifiable set.
+		 */
+		public Set<String> getServiceNames() {
+			return services.keySet();
+		}
+
+		/** Gets a main attribute of the jar's manifest.
+		 * @param attrName The attribute's name.
+		 * @return The attribute's value or null if the jar has no manifest or the manifest has no such attribute.
+		 */
+		public String getManifestAttribute(String attrName) {
+			return manifestAttributes.get(attrName);
+		}
+	}
+
+	/** Constructor.
+	 * <br>If <i>file</i> exists, the index it contains is loaded. If it is corrupted, or was written by an incompatible version
+	 * of this library, it is ignored.
+	 * @param file The file where the index is stored.
+	 * @throws IOException If <i>file</i> exists but can't be read.
+	 * @see #save()
+	 */
+	public JarIndex(Path file) throws IOException {
+		if (file==null) {
+			throw new IllegalArgumentException();
+		}
+		this.file = file;
+		this.entries = new ConcurrentHashMap<>();
+		if (Files.isRegularFile(file)) {
+			this.modified = !read(Files.readAllBytes(file));
+		}
+	}
+
+	/** Sets whether the content of jar files is hashed to detect changes.
+	 * <br>By default, a jar is considered as unchanged if its size and last modification time are unchanged.
+	 * Setting this attribute to true makes change detection more reliable, but requires to read the whole content of every jar
+	 * each time it is requested.
+	 * @param hashCheck true to check the hash of jars.
+	 */
+	public void setHashCheck(boolean hashCheck) {
+		this.hashCheck = hashCheck;
+	}
+
+	/** Gets the indexed content of a jar.
+	 * <br>If the jar is not indexed or has changed since it was indexed, it is read and its index entry is updated.
+	 * @param jar The jar file
+	 * @return An index entry
+	 * @throws IOException if the jar can't be read.
+	 */
+	public Entry get(Path jar) throws IOException {
+		final String key = getKey(jar);
+		final BasicFileAttributes attributes = Files.readAttributes(jar, BasicFileAttributes.class);
+		final byte[] hash = hashCheck ? hash(jar) : null;
+		final Entry entry = entries.get(key);
+		if (entry!=null && entry.size==attributes.size() && entry.lastModified==attributes.lastModifiedTime().toMillis() && (hash==null || Arrays.equals(hash, entry.hash))) {
+			return entry;
+		}
+		final Entry result = scan(jar, attributes, hash);
+		entries.put(key, result);
+		modified = true;
+		return result;
+	}
+
+	/** Removes the entries of the jars that no more exist.
+	 * @return true if some entries were removed.
+	 */
+	public boolean prune() {
+		final boolean changed = entries.keySet().removeIf(k -> !Files.exists(file.getFileSystem().getPath(k)));
+		if (changed) {
+			modified = true;
+		}
+		return changed;
+	}
+
+	/** Gets the number of indexed jars.
+	 * @return an integer
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/** Tests whether this index was modified since it was loaded or saved.
+	 * @return true if the index was modified.
+	 */
+	public boolean isModified() {
+		return modified;
+	}
+
+	/** Saves this index in the file passed to the constructor.
+	 * <br>The file is replaced atomically (if the file system supports it), it is never left partially written.
+	 * <br>Nothing is done if the index was not modified.
+	 * @throws IOException If something went wrong
+	 */
+	public synchronized void save() throws IOException {
+		if (!modified) {
+			return;
+		}
+		modified = false;
+		final Path parent = file.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+		final Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+		try {
+			Files.write(tmp, write());
+			try {
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			modified = true;
+			Files.deleteIfExists(tmp);
+			throw e;
+		}
+	}
+
+	private static String getKey(Path jar) {
+		return jar.toAbsolutePath().normalize().toString();
+	}
+
+	private Entry scan(Path jar, BasicFileAttributes attributes, byte[] hash) throws IOException {
+		final Map<String, Set<String>> services = new HashMap<>();
+		final Map<String, String> manifestAttributes = new HashMap<>();
+		try (JarFile jarFile = new JarFile(jar.toFile())) {
+			final Enumeration<JarEntry> jarEntries = jarFile.entries();
+			while (jarEntries.hasMoreElements()) {
+				final JarEntry jarEntry = jarEntries.nextElement();
+				final String name = jarEntry.getName();
+				if (!jarEntry.isDirectory() && name.startsWith(SERVICES_FOLDER) && name.indexOf('/', SERVICES_FOLDER.length())<0) {
+					services.put(name.substring(SERVICES_FOLDER.length()), Collections.unmodifiableSet(ServiceClassNameBuilder.INSTANCE.getClassNames(jarFile, jarEntry)));
+				}
+			}
+			final Manifest manifest = jarFile.getManifest();
+			if (manifest!=null) {
+				for (Map.Entry<Object, Object> attr : manifest.getMainAttributes().entrySet()) {
+					manifestAttributes.put(((Attributes.Name)attr.getKey()).toString(), (String)attr.getValue());
+				}
+			}
+		}
+		return new Entry(attributes.size(), attributes.lastModifiedTime().toMillis(), hash, services, manifestAttributes);
+	}
+
+	private static byte[] hash(Path jar) throws IOException {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			// Every java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+		try (InputStream in = Files.newInputStream(jar)) {
+			final byte[] buffer = new byte[8192];
+			for (int read = in.read(buffer); read>=0; read = in.read(buffer)) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		return digest.digest();
+	}
+
+	private byte[] write() throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		final Map<String, Entry> snapshot = new HashMap<>(entries);
+		out.writeInt(snapshot.size());
+		for (Map.Entry<String, Entry> e : snapshot.entrySet()) {
+			final Entry entry = e.getValue();
+			writeString(out, e.getKey());
+			out.writeLong(entry.size);
+			out.writeLong(entry.lastModified);
+			final byte[] hash = entry.hash==null ? new byte[0] : entry.hash;
+			out.writeShort(hash.length);
+			out.write(hash);
+			out.writeInt(entry.services.size());
+			for (Map.Entry<String, Set<String>> service : entry.services.entrySet()) {
+				writeString(out, service.getKey());
+				out.writeInt(service.getValue().size());
+				for (String className : service.getValue()) {
+					writeString(out, className);
+				}
+			}
+			out.writeInt(entry.manifestAttributes.size());
+			for (Map.Entry<String, String> attr : entry.manifestAttributes.entrySet()) {
+				writeString(out, attr.getKey());
+				writeString(out, attr.getValue());
+			}
+		}
+		final CRC32 crc = new CRC32();
+		crc.update(bytes.toByteArray());
+		out.writeLong(crc.getValue());
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/** Writes a string.
+	 * <br>{@link DataOutputStream#writeUTF(String)} is not used because it fails on strings longer than 64KB
+	 * (some manifest attributes, like OSGi's Export-Package, can be that long).
+	 */
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		final int length = in.readInt();
+		if (length<0 || length>in.available()) {
+			throw new IOException("Invalid string length "+length);
+		}
+		final byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/** Reads the index from a byte array.
+	 * @param bytes The serialized index.
+	 * @return false if the bytes are not a valid index
+	 */
+	private boolean read(byte[] bytes) {
+		if (bytes.length<Long.BYTES) {
+			return false;
+		}
+		final CRC32 crc = new CRC32();
+		crc.update(bytes, 0, bytes.length-Long.BYTES);
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+			in.skipBytes(bytes.length-Long.BYTES);
+			if (in.readLong()!=crc.getValue()) {
+				return false;
+			}
+		} catch (IOException e) {
+			return false;
+		}
+		final Map<String, Entry> result = new HashMap<>();
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length-Long.BYTES))) {
+			if (in.readInt()!=MAGIC || in.readByte()!=VERSION) {
+				return false;
+			}
+			final int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				final String key = readString(in);
+				final long size = in.readLong();
+				final long lastModified = in.readLong();
+				final byte[] hash = new byte[in.readUnsignedShort()];
+				in.readFully(hash);
+				final int serviceCount = in.readInt();
+				final Map<String, Set<String>> services = new HashMap<>();
+				for (int j = 0; j < serviceCount; j++) {
+					final String service = readString(in);
+					final int classCount = in.readInt();
+					final Set<String> classNames = new HashSet<>();
+					for (int k = 0; k < classCount; k++) {
+						classNames.add(readString(in));
+					}
+					services.put(service, Collections.unmodifiableSet(classNames));
+				}
+				final int attrCount = in.readInt();
+				final Map<String, String> manifestAttributes = new HashMap<>();
+				for (int j = 0; j < attrCount; j++) {
+					manifestAttributes.put(readString(in), readString(in));
+				}
+				result.put(key, new Entry(size, lastModified, hash.length==0 ? null : hash, services, manifestAttributes));
+			}
+			if (in.available()!=0) {
+				return false;
+			}
+		} catch (IOException e) {
+			return false;
+		}
+		entries.putAll(result);
+		return true;
+	}
+}
@@ -1,5 +1,8 @@
 package com.fathzer.plugin.loader.jar;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.nio.file.Path;
@@ -12,6 +15,8 @@ import com.fathzer.plugin.loader.InstanceBuilder;
 /** A class able to load plugins from jar files contained in a folder.
  */
 public class JarPluginLoader extends PluginLoader<Path> {
+	private JarClassLoaderPool classLoaderPool;
+
 	/** Constructor.
 	 * <br>By default, the class name of the plugins are searched with a {@link ServiceClassNameBuilder}.
 	 * <br>The plugins are instantiated using their public no argument constructor.
@@ -23,14 +28,68 @@ public class JarPluginLoader extends PluginLoader<Path> {
 		super(ServiceClassNameBuilder.INSTANCE);
 	}
 	
+	/** Sets the pool of class loaders used by this loader.
+	 * <br>By default, a new class loader is built each time plugins are loaded from a jar, and it is never closed (unless no plugin is loaded from it).
+	 * When a pool is set, all the plugins loaded from the same jar share the same class loader. This class loader is
+	 * {@link JarClassLoaderPool#acquire(Path) acquired} each time a class loader is required to load plugin classes.
+	 * It should be {@link JarClassLoaderPool#release(ClassLoader) released} when the plugins are no more used.
+	 * If no plugin is loaded from it, it is released by this loader.
+	 * @param pool The pool to use, null to use no pool.
+	 * @return this
+	 */
+	public JarPluginLoader withClassLoaderPool(JarClassLoaderPool pool) {
+		this.classLoaderPool = pool;
+		return this;
+	}
+
+	/** Gets the pool of class loaders used by this loader.
+	 * @return a pool or null if no pool is used.
+	 * @see #withClassLoaderPool(JarClassLoaderPool)
+	 */
+	public JarClassLoaderPool getClassLoaderPool() {
+		return classLoaderPool;
+	}
+
 	/** Builds the classloader that will be used to load the plugin classes.
-	 * <br>The default implementation returns a {@link URLClassLoader} on the <i>jarFile</i>'s url.
-	 * <br>You may override this method if you want to change this behaviour.
+	 * <br>The default implementation returns a {@link URLClassLoader} on the <i>jarFile</i>'s url, or, if a
+	 * {@link #withClassLoaderPool(JarClassLoaderPool) class loader pool} is set, the class loader acquired from the pool.
+	 * <br>Both are {@link ClassLoader#registerAsParallelCapable() parallel capable}, so plugin classes can be loaded concurrently by many threads.
+	 * <br>You may override this method if you want to change this behaviour. If you return a custom class loader, you should
+	 * ensure it is also registered as parallel capable.
 	 * @param jarFile the jar file passed to {@link #getPlugins(Object, Class)}
 	 * @return A classloader.  
+	 * @throws UncheckedIOException if the class loader can't be acquired from the pool.
 	 */
 	@Override
 	protected ClassLoader buildClassLoader(Path jarFile) {
+		if (classLoaderPool!=null) {
+			try {
+				return classLoaderPool.acquire(jarFile);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
 		return new URLClassLoader(new URL[]{FileUtils.getURL(jarFile)});
 	}
+
+	/** Releases a class loader that loaded no returned plugin.
+	 * <br>The default implementation {@link JarClassLoaderPool#release(ClassLoader) releases} the class loader if a
+	 * {@link #withClassLoaderPool(JarClassLoaderPool) class loader pool} is set, or closes it if it implements {@link Closeable}.
+	 * <br>If you override {@link #buildClassLoader(Path)}, you should ensure this method is consistent with the returned class loader.
+	 * @param jarFile the jar file passed to {@link #buildClassLoader(Path)}
+	 * @param classLoader The class loader returned by {@link #buildClassLoader(Path)}
+	 * @throws UncheckedIOException if the class loader can't be released.
+	 */
+	@Override
+	protected void releaseClassLoader(Path jarFile, ClassLoader classLoader) {
+		try {
+			if (classLoaderPool!=null) {
+				classLoaderPool.release(classLoader);
+			} else if (classLoader instanceof Closeable) {
+				((Closeable)classLoader).close();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
 }
@@ -3,8 +3,11 @@ package com.fathzer.plugin.loader.jar;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import java.util.stream.Collectors;
@@ -33,11 +36,27 @@ public class ManifestAttributeClassNameBuilder implements ClassNameBuilder<Path>
 			if (manifest==null) {
 				return Collections.emptySet();
 			}
-			final String className = manifest.getMainAttributes().getValue(attrName);
-			if (className==null) {
-				return Collections.emptySet();
-			}
-			return Arrays.stream(className.split(",")).map(String::trim).filter(s -> !s.isEmpty()).collect(Collectors.toSet());
+			return toClassNames(manifest.getMainAttributes().getValue(attrName));
+		}
+	}
+	
+	/** {@inheritDoc}
+	 * <br>The manifest attribute does not depend on the plugin class, so all classes are associated with the same class names.
+	 */
+	@Override
+	public Map<Class<?>, Set<String>> getAll(Path file, Collection<? extends Class<?>> classes) throws IOException {
+		final Set<String> classNames = classes.isEmpty() ? Collections.emptySet() : get(file, null);
+		return classes.stream().distinct().collect(Collectors.toMap(Function.identity(), c -> classNames));
+	}
+	
+	/** Converts a manifest attribute value to a set of class names.
+	 * @param attrValue The attribute value (a comma separated list of class names), or null if the attribute is missing.
+	 * @return a Set of class names
+	 */
+	static Set<String> toClassNames(String attrValue) {
+		if (attrValue==null) {
+			return Collections.emptySet();
 		}
+		return Arrays.stream(attrValue.split(",")).map(String::trim).filter(s -> !s.isEmpty()).collect(Collectors.toSet());
 	}
 }
\ No newline at end of file
@@ -0,0 +1,409 @@
+package com.fathzer.plugin.loader.jar;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.CodeSource;
+import java.security.SecureClassLoader;
+import java.security.cert.Certificate;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+import com.fathzer.plugin.loader.utils.FileUtils;
+
+/** A class loader that loads classes from a memory mapped jar file.
+ * <br>Unlike {@link java.net.URLClassLoader}, this class loader maps the jar file in memory once, parses the zip central directory
+ * itself, and defines the classes directly from the mapped memory. Stored (not compressed) classes are defined without any copy,
+ * compressed classes are inflated in a single buffer.
+ * <br>Resources are also read from the mapped file by {@link #getResourceAsStream(String)} and {@link #getEntryInputStream(String)}.
+ * The URLs returned by {@link #getResource(String)} and {@link #getResources(String)} (and used by {@link java.util.ServiceLoader}) look like
+ * <i>jar:file:...!/name</i> URLs, but they are opened by this class loader. So, unlike standard jar URLs, they don't open the jar file again.
+ * <br>Limitations: Signed jars are not verified, and zip64 archives (more than 65535 entries or larger than 4GB) are not supported.
+ * <br>The mapping is released by the garbage collector once this class loader and all its classes are no more referenced.
+ * <br>This class loader is {@link ClassLoader#registerAsParallelCapable() parallel capable}: Different classes can be loaded
+ * concurrently by different threads, class loading is only serialized for a given class name.
+ * @see MappedJarPluginLoader
+ */
+public class MappedJarClassLoader extends SecureClassLoader implements Closeable {
+	private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	private static final int END_SIGNATURE = 0x06054b50;
+	private static final int END_HEADER_SIZE = 22;
+	private static final int LOCAL_HEADER_SIZE = 30;
+	private static final int CENTRAL_HEADER_SIZE = 46;
+	private static final int MAX_COMMENT_SIZE = 0xFFFF;
+	private static final int STORED = 0;
+	private static final int DEFLATED = 8;
+	private static final int ENCRYPTED_FLAG = 1;
+	private static final String CLASS_SUFFIX = ".class";
+
+	static {
+		registerAsParallelCapable();
+	}
+
+	private final URL url;
+	private final String entryUrlPrefix;
+	private final URLStreamHandler entryUrlHandler = new EntryURLStreamHandler();
+	private final CodeSource codeSource;
+	private volatile ByteBuffer buffer;
+	private final Map<String, Entry> entries;
+
+	private static final class Entry {
+		private final String name;
+		private final int method;
+		private final int compressedSize;
+		private final int size;
+		private final int localHeaderOffset;
+
+		private Entry(String name, int method, int compressedSize, int size, int localHeaderOffset) {
+			this.name = name;
+			this.method = method;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.localHeaderOffset = localHeaderOffset;
+		}
+	}
+
+	/** Constructor.
+	 * <br>The parent class loader is the {@link ClassLoader#getSystemClassLoader() system class loader}.
+	 * @param jar The jar file.
+	 * @throws IOException If the jar can't be read or is not a valid jar file.
+	 */
+	public MappedJarClassLoader(Path jar) throws IOException {
+		this(jar, ClassLoader.getSystemClassLoader());
+	}
+
+	/** Constructor.
+	 * @param jar The jar file.
+	 * @param parent The parent class loader.
+	 * @throws IOException If the jar can't be read or is not a valid jar file.
+	 */
+	public MappedJarClassLoader(Path jar, ClassLoader parent) throws IOException {
+		super(parent);
+		this.url = FileUtils.getURL(jar);
+		this.entryUrlPrefix = url+"!/";
+		this.codeSource = new CodeSource(url, (Certificate[]) null);
+		try (FileChannel channel = FileChannel.open(jar, StandardOpenOption.READ)) {
+			final long size = channel.size();
+			if (size>Integer.MAX_VALUE) {
+				throw new ZipException("Zip64 archives are not supported");
+			}
+			this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		this.entries = readCentralDirectory(this.buffer);
+	}
+
+	private static Map<String, Entry> readCentralDirectory(ByteBuffer buffer) throws ZipException {
+		final int end = findEndOfCentralDirectory(buffer);
+		final int count = Short.toUnsignedInt(buffer.getShort(end+10));
+		final long centralDirectoryOffset = Integer.toUnsignedLong(buffer.getInt(end+16));
+		if (count==0xFFFF || centralDirectoryOffset==0xFFFFFFFFL) {
+			throw new ZipException("Zip64 archives are not supported");
+		}
+		final Map<String, Entry> result = new HashMap<>(count*2);
+		int offset = (int) centralDirectoryOffset;
+		for (int i = 0; i < count; i++) {
+			if (offset+CENTRAL_HEADER_SIZE>buffer.limit() || buffer.getInt(offset)!=CENTRAL_HEADER_SIGNATURE) {
+				throw new ZipException("Invalid central directory");
+			}
+			final int flags = Short.toUnsignedInt(buffer.getShort(offset+8));
+			final int method = Short.toUnsignedInt(buffer.getShort(offset+10));
+			final int compressedSize = buffer.getInt(offset+20);
+			final int size = buffer.getInt(offset+24);
+			final int nameLength = Short.toUnsignedInt(buffer.getShort(offset+28));
+			final int extraLength = Short.toUnsignedInt(buffer.getShort(offset+30));
+			final int commentLength = Short.toUnsignedInt(buffer.getShort(offset+32));
+			final int localHeaderOffset = buffer.getInt(offset+42);
+			if (compressedSize<0 || size<0 || localHeaderOffset<0 || offset+CENTRAL_HEADER_SIZE+nameLength>buffer.limit()) {
+				throw new ZipException("Invalid central directory");
+			}
+			final byte[] nameBytes = new byte[nameLength];
+			final ByteBuffer nameBuffer = buffer.duplicate();
+			// Buffer methods are called through the Buffer class, ByteBuffer overrides them since java 9 and this class should run on java 8
+			((Buffer)nameBuffer).position(offset+CENTRAL_HEADER_SIZE);
+			nameBuffer.get(nameBytes);
+			final String name = new String(nameBytes, StandardCharsets.UTF_8);
+			if ((flags & ENCRYPTED_FLAG)==0 && !name.endsWith("/")) {
+				result.putIfAbsent(name, new Entry(name, method, compressedSize, size, localHeaderOffset));
+			}
+			offset += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+		}
+		return result;
+	}
+
+	private static int findEndOfCentralDirectory(ByteBuffer buffer) throws ZipException {
+		final int min = Math.max(0, buffer.limit()-END_HEADER_SIZE-MAX_COMMENT_SIZE);
+		for (int offset = buffer.limit()-END_HEADER_SIZE; offset>=min; offset--) {
+			if (buffer.getInt(offset)==END_SIGNATURE) {
+				return offset;
+			}
+		}
+		throw new ZipException("Not a zip file");
+	}
+
+	private ByteBuffer getBuffer() throws IOException {
+		final ByteBuffer result = buffer;
+		if (result==null) {
+			throw new IOException("Class loader is closed");
+		}
+		return result;
+	}
+
+	/** Gets the raw (maybe compressed) data of an entry.
+	 * @param entry The entry
+	 * @return A read only buffer that shares the content of the mapped file.
+	 * @throws IOException If the local header of the entry is invalid
+	 */
+	private ByteBuffer getRawData(Entry entry) throws IOException {
+		final ByteBuffer mapped = getBuffer();
+		final int header = entry.localHeaderOffset;
+		if (header+LOCAL_HEADER_SIZE>mapped.limit() || mapped.getInt(header)!=LOCAL_HEADER_SIGNATURE) {
+			throw new ZipException("Invalid local header for "+entry.name);
+		}
+		final int start = header + LOCAL_HEADER_SIZE + Short.toUnsignedInt(mapped.getShort(header+26)) + Short.toUnsignedInt(mapped.getShort(header+28));
+		if (start+entry.compressedSize>mapped.limit()) {
+			throw new ZipException("Invalid entry size for "+entry.name);
+		}
+		final ByteBuffer result = mapped.duplicate();
+		((Buffer)result).limit(start+entry.compressedSize);
+		((Buffer)result).position(start);
+		return result.slice();
+	}
+
+	/** Gets the uncompressed data of an entry.
+	 * @param entry The entry
+	 * @return A buffer that shares the content of the mapped file if the entry is stored, a heap buffer if it is compressed.
+	 * @throws IOException If the entry can't be read
+	 */
+	private ByteBuffer getData(Entry entry) throws IOException {
+		final ByteBuffer raw = getRawData(entry);
+		if (entry.method==STORED) {
+			return raw;
+		} else if (entry.method==DEFLATED) {
+			final byte[] result = new byte[entry.size];
+			final Inflater inflater = new Inflater(true);
+			try {
+				final byte[] input = new byte[Math.min(8192, raw.remaining()+1)];
+				int done = 0;
+				boolean dummyFed = false;
+				while (done<result.length && !inflater.finished()) {
+					if (inflater.needsInput()) {
+						final int length = Math.min(input.length, raw.remaining());
+						if (length==0) {
+							if (dummyFed) {
+								throw new ZipException("Truncated compressed data for "+entry.name);
+							}
+							// The inflater may need an extra dummy byte when the data is not zlib wrapped
+							dummyFed = true;
+							input[0] = 0;
+							inflater.setInput(input, 0, 1);
+						} else {
+							raw.get(input, 0, length);
+							inflater.setInput(input, 0, length);
+						}
+					} else if (inflater.needsDictionary()) {
+						throw new ZipException("Invalid compressed data for "+entry.name);
+					}
+					done += inflater.inflate(result, done, result.length-done);
+				}
+			} catch (DataFormatException e) {
+				throw new ZipException("Invalid compressed data for "+entry.name+": "+e.getMessage());
+			} finally {
+				inflater.end();
+			}
+			return ByteBuffer.wrap(result);
+		} else {
+			throw new ZipException("Unsupported compression method "+entry.method+" for "+entry.name);
+		}
+	}
+
+	@Override
+	protected Class<?> findClass(String name) throws ClassNotFoundException {
+		final Entry entry = entries.get(name.replace('.', '/').concat(CLASS_SUFFIX));
+		if (entry==null) {
+			throw new ClassNotFoundException(name);
+		}
+		try {
+			final ByteBuffer data = getData(entry);
+			definePackageIfNeeded(name);
+			return defineClass(name, data, codeSource);
+		} catch (IOException e) {
+			throw new ClassNotFoundException(name, e);
+		}
+	}
+
+	@SuppressWarnings("deprecation")
+	private void definePackageIfNeeded(String className) {
+		final int index = className.lastIndexOf('.');
+		if (index>0) {
+			final String packageName = className.substring(0, index);
+			if (getPackage(packageName)==null) {
+				try {
+					definePackage(packageName, null, null, null, null, null, null, null);
+				} catch (IllegalArgumentException e) {
+					// Package was defined concurrently
+				}
+			}
+		}
+	}
+
+	/** Gets an input stream on an entry of the jar.
+	 * <br>Unlike {@link #getResourceAsStream(String)}, this method only searches in the jar, not in the parent class loader.
+	 * @param name The entry name (for example <i>META-INF/services/java.util.function.Supplier</i>)
+	 * @return An input stream or null if the entry does not exist.
+	 * @throws IOException If the entry can't be read.
+	 */
+	public InputStream getEntryInputStream(String name) throws IOException {
+		final Entry entry = entries.get(name);
+		if (entry==null) {
+			return null;
+		}
+		final InputStream raw = new ByteBufferInputStream(getRawData(entry));
+		if (entry.method==STORED) {
+			return raw;
+		} else if (entry.method==DEFLATED) {
+			return new InflaterInputStream(raw, new Inflater(true)) {
+				private boolean closed;
+
+				@Override
+				public void close() throws IOException {
+					if (!closed) {
+						closed = true;
+						inf.end();
+						super.close();
+					}
+				}
+			};
+		} else {
+			throw new ZipException("Unsupported compression method "+entry.method+" for "+entry.name);
+		}
+	}
+
+	@Override
+	public InputStream getResourceAsStream(String name) {
+		if (entries.containsKey(name) && (getParent()==null || getParent().getResource(name)==null)) {
+			try {
+				return getEntryInputStream(name);
+			} catch (IOException e) {
+				return null;
+			}
+		}
+		return super.getResourceAsStream(name);
+	}
+
+	@Override
+	protected URL findResource(String name) {
+		if (buffer==null || !entries.containsKey(name)) {
+			return null;
+		}
+		try {
+			return new URL("jar", null, -1, entryUrlPrefix+name, entryUrlHandler);
+		} catch (MalformedURLException e) {
+			return null;
+		}
+	}
+
+	@Override
+	protected Enumeration<URL> findResources(String name) throws IOException {
+		final URL resource = findResource(name);
+		return resource==null ? Collections.emptyEnumeration() : Collections.enumeration(Collections.singleton(resource));
+	}
+
+	/** Closes this class loader.
+	 * <br>Classes that are not yet loaded can't be loaded anymore and resources can't be found or read anymore.
+	 * Please note that the memory mapping is only released when this class loader is garbage collected.
+	 */
+	@Override
+	public void close() {
+		this.buffer = null;
+	}
+
+	/** A handler that opens the entry URLs returned by {@link MappedJarClassLoader#findResource(String)} from the mapped file. */
+	private final class EntryURLStreamHandler extends URLStreamHandler {
+		@Override
+		protected URLConnection openConnection(URL u) throws IOException {
+			// The URL constructor splits a '#' in the entry name as a reference
+			final String file = u.getRef()==null ? u.getFile() : u.getFile()+'#'+u.getRef();
+			final Entry entry = file.startsWith(entryUrlPrefix) ? entries.get(file.substring(entryUrlPrefix.length())) : null;
+			if (entry==null) {
+				throw new FileNotFoundException(u.toString());
+			}
+			return new EntryURLConnection(u, entry);
+		}
+	}
+
+	private final class EntryURLConnection extends URLConnection {
+		private final Entry entry;
+
+		private EntryURLConnection(URL url, Entry entry) {
+			super(url);
+			this.entry = entry;
+		}
+
+		@Override
+		public void connect() throws IOException {
+			getBuffer();
+			connected = true;
+		}
+
+		@Override
+		public InputStream getInputStream() throws IOException {
+			connect();
+			return getEntryInputStream(entry.name);
+		}
+
+		@Override
+		public long getContentLengthLong() {
+			return entry.size;
+		}
+	}
+
+	private static final class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		private ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len==0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			final int length = Math.min(len, buffer.remaining());
+			buffer.get(b, off, length);
+			return length;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package com.fathzer.plugin.loader.jar;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.fathzer.plugin.loader.ClassNameBuilder;
+import com.fathzer.plugin.loader.commons.AbstractServiceClassNameBuilder;
+
+/** A {@link JarPluginLoader} that loads the plugins with {@link MappedJarClassLoader} class loaders.
+ * <br>Every jar is mapped in memory once. Its service definition files are read from the mapping, and the plugin classes are
+ * defined directly from it. All the plugins loaded from a jar share the same class loader, that is managed by a
+ * {@link JarClassLoaderPool}.
+ * <br>By default, the class name of the plugins are searched in the service definition files of the jars, like {@link ServiceClassNameBuilder} does.
+ * <br>Call {@link #close()} when the loaded plugins are no more used.
+ */
+public class MappedJarPluginLoader extends JarPluginLoader implements Closeable {
+	/** Constructor.
+	 */
+	public MappedJarPluginLoader() {
+		super();
+		withClassLoaderPool(new MappedJarClassLoaderPool());
+		withClassNameBuilder(new MappedServiceClassNameBuilder());
+	}
+
+	/** Closes the class loaders of the {@link #getClassLoaderPool() pool}.
+	 * @throws IOException If an error occurs while closing a class loader
+	 */
+	@Override
+	public void close() throws IOException {
+		final JarClassLoaderPool pool = getClassLoaderPool();
+		if (pool!=null) {
+			pool.close();
+		}
+	}
+
+	/** A {@link JarClassLoaderPool} that creates {@link MappedJarClassLoader} instances.
+	 */
+	public static class MappedJarClassLoaderPool extends JarClassLoaderPool {
+		@Override
+		protected ClassLoader create(Path jar) throws IOException {
+			return new MappedJarClassLoader(jar);
+		}
+	}
+
+	private class MappedServiceClassNameBuilder extends AbstractServiceClassNameBuilder<Path> {
+		@Override
+		public Set<String> get(Path file, Class<?> aClass) throws IOException {
+			return getAll(file, Collections.singleton(aClass)).get(aClass);
+		}
+
+		@Override
+		public Map<Class<?>, Set<String>> getAll(Path file, Collection<? extends Class<?>> classes) throws IOException {
+			final JarClassLoaderPool pool = getClassLoaderPool();
+			final ClassLoader loader = pool==null ? null : pool.acquire(file);
+			if (!(loader instanceof MappedJarClassLoader)) {
+				// The pool was replaced by a pool that does not use memory mapped class loaders
+				if (loader!=null) {
+					pool.release(loader);
+				}
+				return ServiceClassNameBuilder.INSTANCE.getAll(file, classes);
+			}
+			try {
+				final Map<Class<?>, Set<String>> result = new HashMap<>();
+				for (Class<?> aClass : classes) {
+					result.put(aClass, getClassNames((MappedJarClassLoader) loader, aClass));
+				}
+				return result;
+			} finally {
+				pool.release(loader);
+			}
+		}
+
+		private Set<String> getClassNames(MappedJarClassLoader loader, Class<?> aClass) throws IOException {
+			final InputStream stream = loader.getEntryInputStream(getServiceFilePath(aClass));
+			if (stream==null) {
+				return Collections.emptySet();
+			}
+			try (BufferedReader in = getBufferedReader(stream)) {
+				return toClassNames(in.lines());
+			}
+		}
+	}
+}
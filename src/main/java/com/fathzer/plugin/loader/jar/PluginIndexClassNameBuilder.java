@@ -0,0 +1,92 @@
+package com.fathzer.plugin.loader.jar;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+
+import com.fathzer.plugin.loader.ClassNameBuilder;
+import com.fathzer.plugin.loader.commons.AbstractServiceClassNameBuilder;
+
+/** A {@link ClassNameBuilder} that retrieves the class names from the plugin index generated at build time by the
+ * <a href="https://github.com/fathzer/plugin-loader/tree/main/plugin-loader-index-processor">plugin-loader-index-processor</a>.
+ * <br>The index is a <i>META-INF/plugin-loader/index</i> UTF-8 file whose lines have the form <i>service=implementation</i>.
+ * <br>If a jar does not contain this index, the class names are retrieved in the same way as {@link ServiceClassNameBuilder}.
+ * @see com.fathzer.plugin.loader.PluginFactoryInstanceBuilder
+ */
+public class PluginIndexClassNameBuilder extends AbstractServiceClassNameBuilder<Path> {
+	/** The path of the index in a jar.
+	 */
+	public static final String INDEX_PATH = "META-INF/plugin-loader/index";
+	
+	/** An instance of this class.
+	 */
+	public static final PluginIndexClassNameBuilder INSTANCE = new PluginIndexClassNameBuilder();
+	
+	/** Constructor.
+	 */
+	protected PluginIndexClassNameBuilder() {
+		super();
+	}
+
+	@Override
+	public Set<String> get(Path file, Class<?> aClass) throws IOException {
+		try (JarFile jar = new JarFile(file.toFile())) {
+			final ZipEntry index = jar.getEntry(INDEX_PATH);
+			if (index!=null) {
+				try (BufferedReader in = getBufferedReader(jar.getInputStream(index))) {
+					return toClassNames(in.lines(), aClass.getName());
+				}
+			}
+			final ZipEntry zip = jar.getEntry(getServiceFilePath(aClass));
+			return zip==null ? Collections.emptySet() : ServiceClassNameBuilder.INSTANCE.getClassNames(jar, zip);
+		}
+	}
+
+	/** {@inheritDoc}
+	 * <br>The jar file and its index are read only once.
+	 */
+	@Override
+	public Map<Class<?>, Set<String>> getAll(Path file, Collection<? extends Class<?>> classes) throws IOException {
+		try (JarFile jar = new JarFile(file.toFile())) {
+			final ZipEntry index = jar.getEntry(INDEX_PATH);
+			final List<String> lines;
+			if (index==null) {
+				lines = null;
+			} else {
+				try (BufferedReader in = getBufferedReader(jar.getInputStream(index))) {
+					lines = in.lines().collect(Collectors.toList());
+				}
+			}
+			final Map<Class<?>, Set<String>> result = new HashMap<>();
+			for (Class<?> aClass : classes) {
+				if (lines!=null) {
+					result.put(aClass, toClassNames(lines.stream(), aClass.getName()));
+				} else {
+					final ZipEntry zip = jar.getEntry(getServiceFilePath(aClass));
+					result.put(aClass, zip==null ? Collections.emptySet() : ServiceClassNameBuilder.INSTANCE.getClassNames(jar, zip));
+				}
+			}
+			return result;
+		}
+	}
+
+	/** Converts the lines of an index file to a {@link Set} of implementation class names.
+	 * @param lines The lines of the index file
+	 * @param serviceName The name of the service whose implementations are searched
+	 * @return a Set.
+	 */
+	protected Set<String> toClassNames(Stream<String> lines, String serviceName) {
+		final String prefix = serviceName+"=";
+		return toClassNames(lines.filter(s -> s.startsWith(prefix)).map(s -> s.substring(prefix.length())));
+	}
+}
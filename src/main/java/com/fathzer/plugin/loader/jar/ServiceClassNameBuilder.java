@@ -3,7 +3,10 @@ package com.fathzer.plugin.loader.jar;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.ServiceLoader;
 import java.util.Set;
 import java.util.jar.JarFile;
@@ -32,9 +35,34 @@ public class ServiceClassNameBuilder extends AbstractServiceClassNameBuilder<Pat
 			if (zip==null) {
 				return Collections.emptySet();
 			}
-			try (BufferedReader in = getBufferedReader(jar.getInputStream(zip))) {
-				return toClassNames(in.lines());
+			return getClassNames(jar, zip);
+		}
+	}
+	
+	/** {@inheritDoc}
+	 * <br>The jar file is opened only once.
+	 */
+	@Override
+	public Map<Class<?>, Set<String>> getAll(Path file, Collection<? extends Class<?>> classes) throws IOException {
+		try (JarFile jar = new JarFile(file.toFile())) {
+			final Map<Class<?>, Set<String>> result = new HashMap<>();
+			for (Class<?> aClass : classes) {
+				final ZipEntry zip = jar.getEntry(getServiceFilePath(aClass));
+				result.put(aClass, zip==null ? Collections.emptySet() : getClassNames(jar, zip));
 			}
+			return result;
+		}
+	}
+	
+	/** Gets the class names declared in a service definition file of a jar.
+	 * @param jar The jar file
+	 * @param serviceFile The entry of the service definition file
+	 * @return a Set of class names
+	 * @throws IOException if something went wrong
+	 */
+	Set<String> getClassNames(JarFile jar, ZipEntry serviceFile) throws IOException {
+		try (BufferedReader in = getBufferedReader(jar.getInputStream(serviceFile))) {
+			return toClassNames(in.lines());
 		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,30 @@
+package com.fathzer.plugin.loader.jfr;
+
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/** The event emitted when the class loader of a source is built.
+ */
+@IgnoreJRERequirement
+@Name("com.fathzer.plugin.loader.ClassLoaderBuilt")
+@Label("Plugin Class Loader Built")
+@Category(JfrPluginLoaderListener.CATEGORY)
+@Description("Class loader built to load the plugins of a source")
+@StackTrace(false)
+class ClassLoaderBuiltEvent extends jdk.jfr.Event {
+	@Label("Source")
+	String source;
+
+	@Label("Class Loader")
+	Class<?> classLoader;
+
+	@Label("Elapsed Time")
+	@Timespan
+	long elapsed;
+}
@@ -0,0 +1,34 @@
+package com.fathzer.plugin.loader.jfr;
+
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/** The event emitted when a {@link com.fathzer.plugin.loader.ClassNameBuilder} found the plugin class names of a source.
+ */
+@IgnoreJRERequirement
+@Name("com.fathzer.plugin.loader.ClassNamesFound")
+@Label("Plugin Class Names Found")
+@Category(JfrPluginLoaderListener.CATEGORY)
+@Description("Plugin class names found in a source")
+@StackTrace(false)
+class ClassNamesFoundEvent extends jdk.jfr.Event {
+	@Label("Source")
+	String source;
+
+	@Label("Plugin Classes")
+	@Description("The interfaces or classes implemented by the plugins")
+	String pluginClasses;
+
+	@Label("Class Count")
+	int classCount;
+
+	@Label("Elapsed Time")
+	@Timespan
+	long elapsed;
+}
@@ -0,0 +1,109 @@
+package com.fathzer.plugin.loader.jfr;
+
+import java.util.Collection;
+import java.util.stream.Collectors;
+
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
+
+import com.fathzer.plugin.loader.PluginInstantiationException;
+import com.fathzer.plugin.loader.PluginLoaderListener;
+
+import jdk.jfr.EventType;
+
+/** A {@link PluginLoaderListener} that emits <a href="https://docs.oracle.com/en/java/javase/11/docs/api/jdk.jfr/jdk/jfr/package-summary.html">JDK Flight Recorder</a> events.
+ * <br>The following events, all in the "Plugin Loader" category, are emitted:<ul>
+ * <li><i>com.fathzer.plugin.loader.PluginsLoaded</i> when the plugins of a source are loaded.</li>
+ * <li><i>com.fathzer.plugin.loader.ClassNamesFound</i> when the {@link com.fathzer.plugin.loader.ClassNameBuilder} found the plugin class names of a source.</li>
+ * <li><i>com.fathzer.plugin.loader.ClassLoaderBuilt</i> when the class loader of a source is built.</li>
+ * <li><i>com.fathzer.plugin.loader.PluginInstantiationFailed</i> when a plugin can't be loaded or instantiated.</li>
+ * </ul>
+ * As the loader notifies its listener at the end of a phase, and JFR does not allow to set the start time of an event, these events are
+ * recorded at the end of their phase with a zero JFR duration. The duration of the phase is the <i>Elapsed Time</i> field of the events
+ * (so, they are not displayed as spans in JFR tools' timelines).
+ * <br>When no recording is running (or these events are disabled), this listener is {@link #isEnabled() disabled} and the loader does not even measure durations.
+ * <br>Typical usage is:<pre>
+ * loader.withListener(JfrPluginLoaderListener.INSTANCE);
+ * </pre>
+ * Use {@link PluginLoaderListener#of(PluginLoaderListener...)} to combine this listener with another one (for instance a
+ * {@link com.fathzer.plugin.loader.utils.PluginLoaderMetrics}).
+ * <br><b>WARNING</b>: This class requires a Java 11+ JVM and is not available in java 8 distribution!
+ * @see PluginDownloadEvent
+ */
+@IgnoreJRERequirement
+public class JfrPluginLoaderListener implements PluginLoaderListener<Object> {
+	/** The category of the events emitted by this library. */
+	public static final String CATEGORY = "Plugin Loader";
+	/** An instance of this class. */
+	public static final JfrPluginLoaderListener INSTANCE = new JfrPluginLoaderListener();
+
+	private static final EventType[] EVENT_TYPES = {EventType.getEventType(PluginsLoadedEvent.class), EventType.getEventType(ClassNamesFoundEvent.class),
+			EventType.getEventType(ClassLoaderBuiltEvent.class), EventType.getEventType(PluginInstantiationFailedEvent.class)};
+
+	/** Constructor.
+	 * <br>This class has no state, you should use {@link #INSTANCE} instead of calling this constructor.
+	 */
+	protected JfrPluginLoaderListener() {
+		super();
+	}
+
+	@Override
+	public boolean isEnabled() {
+		for (EventType type : EVENT_TYPES) {
+			if (type.isEnabled()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void sourceScanned(Object source, Collection<? extends Class<?>> classes, int pluginCount, long duration) {
+		final PluginsLoadedEvent event = new PluginsLoadedEvent();
+		if (event.shouldCommit()) {
+			event.source = String.valueOf(source);
+			event.pluginClasses = toString(classes);
+			event.pluginCount = pluginCount;
+			event.elapsed = duration;
+			event.commit();
+		}
+	}
+
+	@Override
+	public void classNamesFound(Object source, Collection<? extends Class<?>> classes, int classNameCount, long duration) {
+		final ClassNamesFoundEvent event = new ClassNamesFoundEvent();
+		if (event.shouldCommit()) {
+			event.source = String.valueOf(source);
+			event.pluginClasses = toString(classes);
+			event.classCount = classNameCount;
+			event.elapsed = duration;
+			event.commit();
+		}
+	}
+
+	@Override
+	public void classLoaderBuilt(Object source, ClassLoader classLoader, long duration) {
+		final ClassLoaderBuiltEvent event = new ClassLoaderBuiltEvent();
+		if (event.shouldCommit()) {
+			event.source = String.valueOf(source);
+			event.classLoader = classLoader==null ? null : classLoader.getClass();
+			event.elapsed = duration;
+			event.commit();
+		}
+	}
+
+	@Override
+	public void instantiationFailed(Object source, String className, PluginInstantiationException exception, long duration) {
+		final PluginInstantiationFailedEvent event = new PluginInstantiationFailedEvent();
+		if (event.shouldCommit()) {
+			event.source = String.valueOf(source);
+			event.className = className;
+			event.message = exception.getMessage();
+			event.elapsed = duration;
+			event.commit();
+		}
+	}
+
+	private static String toString(Collection<? extends Class<?>> classes) {
+		return classes.stream().map(Class::getName).collect(Collectors.joining(","));
+	}
+}
@@ -0,0 +1,65 @@
+package com.fathzer.plugin.loader.jfr;
+
+import java.net.URI;
+import java.nio.file.Path;
+
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** The event emitted when a plugin jar is downloaded by a {@link com.fathzer.plugin.loader.utils.AbstractPluginsDownloader}.
+ * <br>The event's duration is the download time. Its fields should only be set if {@link #shouldCommit()} returns true.
+ */
+@IgnoreJRERequirement
+@Name("com.fathzer.plugin.loader.PluginDownload")
+@Label("Plugin Download")
+@Category(JfrPluginLoaderListener.CATEGORY)
+@Description("Plugin jar downloaded from a remote repository")
+@StackTrace(false)
+public class PluginDownloadEvent extends jdk.jfr.Event {
+	@Label("URI")
+	private String uri;
+
+	@Label("Path")
+	private String path;
+
+	@Label("Status Code")
+	private int statusCode;
+
+	@Label("Bytes Downloaded")
+	@DataAmount
+	private long bytes;
+
+	/** Sets the downloaded uri.
+	 * @param uri The uri
+	 */
+	public void setUri(URI uri) {
+		this.uri = uri.toString();
+	}
+
+	/** Sets the path of the local file.
+	 * @param path The path
+	 */
+	public void setPath(Path path) {
+		this.path = path.toString();
+	}
+
+	/** Sets the http status code of the download.
+	 * @param statusCode The status code
+	 */
+	public void setStatusCode(int statusCode) {
+		this.statusCode = statusCode;
+	}
+
+	/** Sets the number of bytes downloaded.
+	 * @param bytes The number of bytes
+	 */
+	public void setBytes(long bytes) {
+		this.bytes = bytes;
+	}
+}
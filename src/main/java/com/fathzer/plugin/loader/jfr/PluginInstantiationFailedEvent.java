@@ -0,0 +1,31 @@
+package com.fathzer.plugin.loader.jfr;
+
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/** The event emitted when a plugin can't be loaded or instantiated.
+ */
+@IgnoreJRERequirement
+@Name("com.fathzer.plugin.loader.PluginInstantiationFailed")
+@Label("Plugin Instantiation Failed")
+@Category(JfrPluginLoaderListener.CATEGORY)
+@Description("A plugin class can't be loaded or instantiated")
+class PluginInstantiationFailedEvent extends jdk.jfr.Event {
+	@Label("Source")
+	String source;
+
+	@Label("Class Name")
+	String className;
+
+	@Label("Message")
+	String message;
+
+	@Label("Elapsed Time")
+	@Timespan
+	long elapsed;
+}
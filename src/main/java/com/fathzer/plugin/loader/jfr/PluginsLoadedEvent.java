@@ -0,0 +1,34 @@
+package com.fathzer.plugin.loader.jfr;
+
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/** The event emitted when the plugins of a source are loaded.
+ */
+@IgnoreJRERequirement
+@Name("com.fathzer.plugin.loader.PluginsLoaded")
+@Label("Plugins Loaded")
+@Category(JfrPluginLoaderListener.CATEGORY)
+@Description("Plugins loaded and instantiated from a source")
+@StackTrace(false)
+class PluginsLoadedEvent extends jdk.jfr.Event {
+	@Label("Source")
+	String source;
+
+	@Label("Plugin Classes")
+	@Description("The interfaces or classes implemented by the plugins")
+	String pluginClasses;
+
+	@Label("Plugin Count")
+	int pluginCount;
+
+	@Label("Elapsed Time")
+	@Timespan
+	long elapsed;
+}
@@ -0,0 +1,4 @@
+/** <a href="https://docs.oracle.com/en/java/javase/11/docs/api/jdk.jfr/jdk/jfr/package-summary.html">JDK Flight Recorder</a> events emitted while plugins are loaded or downloaded.
+ * <br><b>WARNING</b>: This package requires a Java 11+ JVM and is not available in java 8 distribution!
+*/
+package com.fathzer.plugin.loader.jfr;
@@ -2,43 +2,221 @@ package com.fathzer.plugin.loader.utils;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.ProxySelector;
 import java.net.URI;
+import java.net.HttpURLConnection;
 import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.http.HttpClient.Builder;
 import java.net.http.HttpClient.Redirect;
 import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodySubscriber;
 import java.net.http.HttpResponse.BodyHandlers;
 import java.net.http.HttpResponse.BodySubscribers;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow.Subscription;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
 
+import com.fathzer.plugin.loader.jfr.PluginDownloadEvent;
+
 /** A class that downloads plugins from an Internet remote repository to a local folder.
+ * <br>The <i>ETag</i> and <i>Last-Modified</i> headers of the downloaded jars are saved in a {@link #getMetadataFile(Path) metadata file} next to the jar.
+ * When {@link #setRevalidation(boolean) revalidation} is enabled, they are used to send conditional requests that only download the jars that changed on the server.
+ * <br>The repository index can also be cached in memory and in the local directory (see {@link #setIndexTimeToLive(long, TimeUnit)}).
  * <br><b>WARNING</b>: This class requires a Java 11+ JVM and is not available in java 8 distribution!
  */
 @IgnoreJRERequirement
 public abstract class AbstractPluginsDownloader {
+	private static final String ETAG = "ETag";
+	private static final String LAST_MODIFIED = "Last-Modified";
+	private static final String METADATA_EXTENSION = ".metadata";
+	private static final String INDEX_FILE_NAME = "repository.index";
+
+	/** The digest of a file.
+	 * @see AbstractPluginsDownloader#getExpectedDigest(URI)
+	 */
+	public static final class Digest {
+		private final String algorithm;
+		private final byte[] value;
+
+		/** Constructor.
+		 * @param algorithm The name of the {@link MessageDigest} algorithm, for instance <i>SHA-256</i>
+		 * @param hexValue The digest, as an hexadecimal string
+		 * @throws IllegalArgumentException if an argument is null or hexValue is not a valid hexadecimal string
+		 */
+		public Digest(String algorithm, String hexValue) {
+			if (algorithm==null || hexValue==null || hexValue.length()%2!=0) {
+				throw new IllegalArgumentException();
+			}
+			this.algorithm = algorithm;
+			this.value = new byte[hexValue.length()/2];
+			for (int i = 0; i < value.length; i++) {
+				final int high = Character.digit(hexValue.charAt(2*i), 16);
+				final int low = Character.digit(hexValue.charAt(2*i+1), 16);
+				if (high<0 || low<0) {
+					throw new IllegalArgumentException(hexValue+" is not an hexadecimal string");
+				}
+				value[i] = (byte) (high*16+low);
+			}
+		}
+
+		/** Gets the digest algorithm.
+		 * @return The name of the {@link MessageDigest} algorithm
+		 */
+		public String getAlgorithm() {
+			return algorithm;
+		}
+
+		private MessageDigest newMessageDigest() throws IOException {
+			try {
+				return MessageDigest.getInstance(algorithm);
+			} catch (NoSuchAlgorithmException e) {
+				throw new IOException(e);
+			}
+		}
+	}
+
+	/** A download that can be cancelled.
+	 * <br>Cancelling it cancels the pending http request and guarantees that the downloaded file will not be moved to its final path.
+	 */
+	private final class Download extends CompletableFuture<Void> {
+		private final Object lock = new Object();
+		private CompletableFuture<?> request;
+		private boolean cancelled;
+
+		private void setRequest(CompletableFuture<?> request) {
+			synchronized (lock) {
+				this.request = request;
+				if (cancelled) {
+					request.cancel(true);
+				}
+			}
+		}
+
+		private void commit(Path tmp, Path path, HttpHeaders headers) throws IOException {
+			synchronized (lock) {
+				if (cancelled) {
+					throw new IOException("Download of "+path+" was cancelled");
+				}
+				Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				writeMetadata(path, headers);
+			}
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			synchronized (lock) {
+				cancelled = true;
+				if (request!=null) {
+					request.cancel(mayInterruptIfRunning);
+				}
+			}
+			return super.cancel(mayInterruptIfRunning);
+		}
+	}
+
+	/** A body subscriber that computes the digest of the body while it is passed to another subscriber. */
+	private static final class DigestBodySubscriber implements BodySubscriber<Path> {
+		private final BodySubscriber<Path> delegate;
+		private final MessageDigest digest;
+
+		private DigestBodySubscriber(BodySubscriber<Path> delegate, MessageDigest digest) {
+			this.delegate = delegate;
+			this.digest = digest;
+		}
+
+		@Override
+		public CompletionStage<Path> getBody() {
+			return delegate.getBody();
+		}
+
+		@Override
+		public void onSubscribe(Subscription subscription) {
+			delegate.onSubscribe(subscription);
+		}
+
+		@Override
+		public void onNext(List<ByteBuffer> items) {
+			for (ByteBuffer item : items) {
+				// Do not change the position of the buffer, it will be read by the delegate
+				digest.update(item.duplicate());
+			}
+			delegate.onNext(items);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			delegate.onError(throwable);
+		}
+
+		@Override
+		public void onComplete() {
+			delegate.onComplete();
+		}
+	}
+
+	private static final class CachedIndex {
+		private final Map<String, URI> map;
+		private final Properties metadata;
+		private final long timestamp;
+
+		private CachedIndex(Map<String, URI> map, Properties metadata, long timestamp) {
+			this.map = map;
+			this.metadata = metadata;
+			this.timestamp = timestamp;
+		}
+	}
+
 	private final URI uri;
 	private final Path localDirectory;
+	private final boolean uriMapOverridden;
 	private ProxySettings proxy;
 	private String pluginTypeWording = "plugin";
+	private int maxConcurrentDownloads = 1;
+	private boolean revalidation;
+	private int digestMismatchRetries = 2;
+	private long indexTimeToLive = -1;
+	private boolean staleWhileRevalidate;
+	// Volatile because the handler is called by the threads of the http client
+	private volatile Consumer<Throwable> indexRefreshFailureHandler = e -> {};
+	private volatile CachedIndex index;
+	private CompletableFuture<CachedIndex> indexRefresh;
 	
 	private HttpClient httpClient;
 	
@@ -55,6 +233,16 @@ public abstract class AbstractPluginsDownloader {
 		}
 		this.uri = uri;
 		this.localDirectory = localDirectory;
+		this.uriMapOverridden = isURIMapOverridden();
+	}
+
+	private boolean isURIMapOverridden() {
+		try {
+			return getClass().getMethod("getURIMap").getDeclaringClass()!=AbstractPluginsDownloader.class;
+		} catch (NoSuchMethodException e) {
+			// Can't happen, the method is public
+			throw new IllegalStateException(e);
+		}
 	}
 	
 	/** Gets the remote plugin repository URI.
@@ -95,11 +283,122 @@ public abstract class AbstractPluginsDownloader {
 		return this.pluginTypeWording;
 	}
 
+	/** Sets the maximum number of jars downloaded at the same time by {@link #download(String...)}.
+	 * <br>When it is greater than 1, jars are downloaded concurrently with {@link #downloadFileAsync(URI, Path)},
+	 * which is much faster than sequential downloads when a lot of jars are downloaded from a server that supports HTTP/2.
+	 * @param maxConcurrentDownloads The maximum number of in-flight requests (default is 1, jars are downloaded one after another with {@link #downloadFile(URI, Path)}).
+	 * @throws IllegalArgumentException if maxConcurrentDownloads is less than 1
+	 */
+	public void setMaxConcurrentDownloads(int maxConcurrentDownloads) {
+		if (maxConcurrentDownloads<1) {
+			throw new IllegalArgumentException("max concurrent downloads should be strictly positive");
+		}
+		this.maxConcurrentDownloads = maxConcurrentDownloads;
+	}
+
+	/** Gets the maximum number of jars downloaded at the same time by {@link #download(String...)}.
+	 * @return a strictly positive integer
+	 */
+	public int getMaxConcurrentDownloads() {
+		return maxConcurrentDownloads;
+	}
+
+	/** Sets whether jars already downloaded should be revalidated with the server.
+	 * <br>When revalidation is enabled, {@link #shouldLoad(URI, Path)} returns true for downloaded jars that have a {@link #getMetadataFile(Path) metadata file}.
+	 * The jar is then requested with <i>If-None-Match</i> and <i>If-Modified-Since</i> headers. If the server replies with a <i>304 Not Modified</i> status,
+	 * the local jar is kept. So, refreshing jars that did not change costs one round trip per jar and no body bytes.
+	 * @param revalidation true to revalidate downloaded jars (default is false, a jar is never downloaded again while it exists in the local directory).
+	 */
+	public void setRevalidation(boolean revalidation) {
+		this.revalidation = revalidation;
+	}
+
+	/** Tests whether jars already downloaded are revalidated with the server.
+	 * @return true if jars are revalidated
+	 * @see #setRevalidation(boolean)
+	 */
+	public boolean isRevalidation() {
+		return revalidation;
+	}
+
+	/** Sets the number of times a jar is downloaded again when its digest does not match the {@link #getExpectedDigest(URI) expected one}.
+	 * @param retries The number of retries (default is 2)
+	 * @throws IllegalArgumentException if retries is negative
+	 */
+	public void setDigestMismatchRetries(int retries) {
+		if (retries<0) {
+			throw new IllegalArgumentException("retries can't be negative");
+		}
+		this.digestMismatchRetries = retries;
+	}
+
+	/** Gets the number of times a jar is downloaded again when its digest does not match the expected one.
+	 * @return a positive or null integer
+	 */
+	public int getDigestMismatchRetries() {
+		return digestMismatchRetries;
+	}
+
+	/** Sets the time to live of the cached repository index.
+	 * <br>When the time to live is positive or null, the index returned by {@link #getURIMap()} is cached in memory and in the {@link #getIndexFile() local directory},
+	 * so it survives application restarts.
+	 * While it is younger than the time to live, it is used without any network access. Once expired, it is revalidated with a conditional request that
+	 * only downloads the index if it changed on the server.
+	 * <br>When {@link #getURIMap(Set)} (or {@link #download(String...)}) requests a key that is missing in the cached index, the index is revalidated once,
+	 * even if it is not expired, so that the plugins published after the index was cached are found.
+	 * @param duration The time to live, a negative value (the default) to disable the cache (the index is downloaded each time it is needed).
+	 * 0 to revalidate the cached index each time it is needed.
+	 * @param unit The unit of duration
+	 * @throws IllegalArgumentException if unit is null
+	 */
+	public void setIndexTimeToLive(long duration, TimeUnit unit) {
+		if (unit==null) {
+			throw new IllegalArgumentException("unit can't be null");
+		}
+		this.indexTimeToLive = duration<0 ? -1 : unit.toMillis(duration);
+	}
+
+	/** Sets whether an expired index should be used while it is revalidated.
+	 * <br>When enabled, {@link #getURIMap()} immediately returns the expired cached index and refreshes it in the background.
+	 * So, once the index is cached, {@link #download(String...)} does not wait for the repository.
+	 * If the background refresh fails, the expired index is kept, the exception is sent to the {@link #setIndexRefreshFailureHandler(Consumer) refresh failure handler}
+	 * and the refresh is tried again the next time the index is needed.
+	 * <br>This setting has no effect if the {@link #setIndexTimeToLive(long, TimeUnit) cache is disabled}.
+	 * @param staleWhileRevalidate true to use an expired index while it is refreshed (default is false, the caller waits for the revalidation).
+	 */
+	public void setStaleWhileRevalidate(boolean staleWhileRevalidate) {
+		this.staleWhileRevalidate = staleWhileRevalidate;
+	}
+
+	/** Sets the handler of the index refresh failures.
+	 * <br>The handler is called, in a thread of the http client, each time a refresh of the {@link #setIndexTimeToLive(long, TimeUnit) cached index} fails.
+	 * It is the only way to be notified of the failures of the background refreshes performed in {@link #setStaleWhileRevalidate(boolean) stale-while-revalidate}
+	 * mode. When the caller waits for the refresh, the exception is also thrown to the caller.
+	 * @param handler A consumer that receives the exception (default does nothing).
+	 * @throws IllegalArgumentException if handler is null
+	 */
+	public void setIndexRefreshFailureHandler(Consumer<Throwable> handler) {
+		if (handler==null) {
+			throw new IllegalArgumentException("handler can't be null");
+		}
+		this.indexRefreshFailureHandler = handler;
+	}
+
+	/** Gets the file where the repository index is cached.
+	 * @return a Path. Default is the <i>repository.index</i> file in the local directory.
+	 * @see #setIndexTimeToLive(long, TimeUnit)
+	 */
+	protected Path getIndexFile() {
+		return localDirectory.resolve(INDEX_FILE_NAME);
+	}
+
 	/** Deletes all files in local directory.
+	 * <br>The cached repository index is also deleted.
 	 * @return true if loacalDirectory existed and is deleted.  
 	 * @throws IOException If something went wrong
 	 */
 	public boolean clean() throws IOException {
+		index = null;
 		if (Files.isDirectory(localDirectory)) {
 			try (Stream<Path> files = Files.find(localDirectory, 1, (p, bfa) -> bfa.isRegularFile())) {
 				final List<Path> toDelete = files.collect(Collectors.toList());
@@ -113,6 +412,8 @@ public abstract class AbstractPluginsDownloader {
 	}
 	
 	/** Searches for plugin keys in remote repository, then downloads the corresponding jars.
+	 * <br>If {@link #getMaxConcurrentDownloads()} is greater than 1, the jars are downloaded concurrently. This method returns when all downloads are finished
+	 * or when the first one fails. In such a case, the other downloads are cancelled.
 	 * @param keys The plugin's keys to search
 	 * @throws IOException If something went wrong
 	 * @return The paths of files that contains the jars (including the ones for which {@link #shouldLoad(URI, Path)} returned false
@@ -121,19 +422,73 @@ public abstract class AbstractPluginsDownloader {
 		if (keys.length==0) {
 			return Collections.emptyList();
 		}
-		final Map<String, URI> remoteRepository = getURIMap();
+		final Map<String, URI> remoteRepository = getURIMap(new HashSet<>(Arrays.asList(keys)));
 		checkMissingKeys(Arrays.stream(keys), k -> !remoteRepository.containsKey(k));
-		final Set<URI> toDownload = Arrays.stream(keys).map(remoteRepository::get).collect(Collectors.toSet());
+		final Set<URI> toDownload = Arrays.stream(keys).map(remoteRepository::get).collect(Collectors.toCollection(LinkedHashSet::new));
 		final List<Path> paths = new ArrayList<>(toDownload.size());
+		final Map<URI, Path> toLoad = new LinkedHashMap<>();
 		for (URI current : toDownload) {
 			final Path file = getDownloadTarget(current);
 			paths.add(file);
 			if (shouldLoad(current, file)) {
-				downloadFile(current, file);
+				toLoad.put(current, file);
+			}
+		}
+		if (maxConcurrentDownloads==1) {
+			for (Map.Entry<URI, Path> entry : toLoad.entrySet()) {
+				downloadFile(entry.getKey(), entry.getValue());
 			}
+		} else {
+			downloadConcurrently(toLoad);
 		}
 		return paths;
 	}
+
+	private void downloadConcurrently(Map<URI, Path> toLoad) throws IOException {
+		final Semaphore permits = new Semaphore(maxConcurrentDownloads);
+		final CompletableFuture<Void> failure = new CompletableFuture<>();
+		final List<CompletableFuture<Void>> downloads = new ArrayList<>(toLoad.size());
+		try {
+			for (Map.Entry<URI, Path> entry : toLoad.entrySet()) {
+				// A failed download releases its permit, so this thread is never blocked forever if a download fails
+				permits.acquire();
+				if (failure.isDone()) {
+					break;
+				}
+				final CompletableFuture<Void> download = downloadFileAsync(entry.getKey(), entry.getValue());
+				downloads.add(download);
+				download.whenComplete((v, e) -> {
+					// The failure is set before the permit is released, so that the loop can't start another download after a failure
+					if (e!=null) {
+						failure.completeExceptionally(e);
+					}
+					permits.release();
+				});
+			}
+			CompletableFuture.anyOf(failure, CompletableFuture.allOf(downloads.toArray(new CompletableFuture<?>[0]))).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			throw toIOException(e.getCause());
+		} finally {
+			downloads.forEach(d -> d.cancel(true));
+		}
+	}
+
+	private static IOException toIOException(Throwable e) {
+		if (e instanceof CompletionException && e.getCause()!=null) {
+			e = e.getCause();
+		}
+		if (e instanceof IOException) {
+			return (IOException) e;
+		} else if (e instanceof RuntimeException) {
+			throw (RuntimeException) e;
+		} else if (e instanceof Error) {
+			throw (Error) e;
+		}
+		return new IOException(e);
+	}
 	
 	/** Gets the local path where a remote jar should be downloaded. 
 	 * @param uri The uri of a remote jar
@@ -146,31 +501,191 @@ public abstract class AbstractPluginsDownloader {
 	/** Tests whether a remote jar should be downloaded. 
 	 * @param uri The uri of a remote jar
 	 * @param path The local path where the file should be downloaded (the one returned by {@link #getDownloadTarget(URI)}
-	 * @return true if the file should be loaded (default is the file is loaded if it does not exists in local directory.
+	 * @return true if the file should be loaded (default is the file is loaded if it does not exists in local directory or,
+	 * if {@link #isRevalidation() revalidation} is enabled, if it has a {@link #getMetadataFile(Path) metadata file}.
 	 */
 	protected boolean shouldLoad(URI uri, Path path) {
-		return !Files.exists(path);
+		return !Files.exists(path) || (revalidation && Files.exists(getMetadataFile(path)));
+	}
+
+	/** Gets the file where the <i>ETag</i> and <i>Last-Modified</i> headers of a downloaded jar are saved.
+	 * @param path The local path of a jar (the one returned by {@link #getDownloadTarget(URI)}.
+	 * @return a Path. Default is the path of the jar followed by <i>.metadata</i>.
+	 */
+	protected Path getMetadataFile(Path path) {
+		return path.resolveSibling(path.getFileName()+METADATA_EXTENSION);
+	}
+
+	private Properties readMetadata(Path path) {
+		final Properties metadata = new Properties();
+		final Path file = getMetadataFile(path);
+		if (Files.exists(path) && Files.exists(file)) {
+			try (InputStream in = Files.newInputStream(file)) {
+				metadata.load(in);
+			} catch (IOException e) {
+				// The metadata file is corrupted, ignore it, the jar will be downloaded again
+				metadata.clear();
+			}
+		}
+		return metadata;
+	}
+
+	private void writeMetadata(Path path, HttpHeaders headers) throws IOException {
+		final Properties metadata = new Properties();
+		headers.firstValue(ETAG).ifPresent(v -> metadata.setProperty(ETAG, v));
+		headers.firstValue(LAST_MODIFIED).ifPresent(v -> metadata.setProperty(LAST_MODIFIED, v));
+		final Path file = getMetadataFile(path);
+		if (metadata.isEmpty()) {
+			Files.deleteIfExists(file);
+		} else {
+			try (OutputStream out = Files.newOutputStream(file)) {
+				metadata.store(out, null);
+			}
+		}
 	}
 
 	/** Downloads an URI to a file.
+	 * <br>This method is used by {@link #download(String...)} when {@link #getMaxConcurrentDownloads()} is 1.
+	 * <br>The default implementation waits for the end of {@link #downloadFileAsync(URI, Path)}.
 	 * @param uri The uri to download
 	 * @param path The local path where the file should be downloaded (the one returned by {@link #getDownloadTarget(URI)}.
 	 * There's no guarantee that the directory that contains path is created. If not, this method should create it.
 	 * @throws IOException if something went wrong
 	 */
 	protected void downloadFile(URI uri, Path path) throws IOException {
+		try {
+			downloadFileAsync(uri, path).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			throw toIOException(e.getCause());
+		}
+	}
+
+	/** Asynchronously downloads an URI to a file.
+	 * <br>This method is used by {@link #download(String...)} when {@link #getMaxConcurrentDownloads()} is greater than 1.
+	 * <br>The file is downloaded to a temporary file in the same directory, which is atomically moved to <i>path</i> once the download is complete.
+	 * So, an interrupted download never leaves a truncated jar at <i>path</i>.
+	 * <br>Cancelling the returned future cancels the http request, <i>path</i> is then left unchanged.
+	 * <br>If {@link #getExpectedDigest(URI)} returns a digest, the digest of the file is computed while it is downloaded. If it does not match,
+	 * the download is retried up to {@link #getDigestMismatchRetries()} times, then the future completes exceptionally.
+	 * <br>If the server replies with a <i>304 Not Modified</i> status to the conditional request built by {@link #getJarRequestBuilder(URI)}, the existing file is kept.
+	 * Otherwise, the <i>ETag</i> and <i>Last-Modified</i> headers of the response are saved in the {@link #getMetadataFile(Path) metadata file}.
+	 * <br>A {@link PluginDownloadEvent} JDK Flight Recorder event is emitted for each download.
+	 * @param uri The uri to download
+	 * @param path The local path where the file should be downloaded (the one returned by {@link #getDownloadTarget(URI)}.
+	 * There's no guarantee that the directory that contains path is created. If not, this method should create it.
+	 * @return A future that completes when the file is downloaded. It completes exceptionally with an IOException if something went wrong.
+	 */
+	protected CompletableFuture<Void> downloadFileAsync(URI uri, Path path) {
+		final Download download = new Download();
+		downloadFileAsync(uri, path, digestMismatchRetries, download);
+		return download;
+	}
+
+	private void downloadFileAsync(URI uri, Path path, int retries, Download download) {
 		final Path parent = path.getParent();
-		if (!Files.exists(parent)) {
-			Files.createDirectories(parent);
+		final Path tmp;
+		final Digest expected;
+		final MessageDigest digest;
+		try {
+			if (!Files.exists(parent)) {
+				Files.createDirectories(parent);
+			}
+			expected = getExpectedDigest(uri);
+			digest = expected==null ? null : expected.newMessageDigest();
+			tmp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+		} catch (IOException e) {
+			download.completeExceptionally(e);
+			return;
 		}
 		final HttpRequest request = getJarRequestBuilder(uri).build();
-		final BodyHandler<Path> bodyHandler = info -> info.statusCode() == 200 ? BodySubscribers.ofFile(path) : BodySubscribers.replacing(Paths.get("/NULL"));
-		final HttpResponse<Path> response = call(request, bodyHandler);
-		if (response.statusCode()!=200) {
-			throw new IOException(String.format("Unexpected status code %d received while downloading %s", response.statusCode(), uri));
+		final BodyHandler<Path> bodyHandler = info -> {
+			// Some http clients do not abort the exchange when the request is cancelled, the body of a cancelled download should not re-create the deleted temporary file
+			if (info.statusCode() != 200 || download.isCancelled()) {
+				return BodySubscribers.replacing(tmp);
+			}
+			return digest==null ? BodySubscribers.ofFile(tmp) : new DigestBodySubscriber(BodySubscribers.ofFile(tmp), digest);
+		};
+		final PluginDownloadEvent event = new PluginDownloadEvent();
+		event.begin();
+		final CompletableFuture<HttpResponse<Path>> response = getHttpClient().sendAsync(request, bodyHandler);
+		download.setRequest(response);
+		// The action is attached to the request itself, so it is executed even if the download is cancelled
+		response.whenComplete((r, e) -> {
+			Throwable error = e;
+			boolean retry = false;
+			try {
+				if (error==null) {
+					event.end();
+					final int status = r.statusCode();
+					if (event.shouldCommit()) {
+						event.setUri(uri);
+						event.setPath(path);
+						event.setStatusCode(status);
+						event.setBytes(status==HttpURLConnection.HTTP_OK ? tmp.toFile().length() : 0);
+						event.commit();
+					}
+					if (status==HttpURLConnection.HTTP_OK) {
+						if (digest!=null && !MessageDigest.isEqual(expected.value, digest.digest())) {
+							if (retries<=0) {
+								throw new IOException(String.format("The %s digest of %s does not match the expected one", expected.algorithm, uri));
+							}
+							retry = true;
+						} else {
+							download.commit(tmp, path, r.headers());
+						}
+					} else if (status!=HttpURLConnection.HTTP_NOT_MODIFIED || !Files.exists(path)) {
+						throw new IOException(String.format("Unexpected status code %d received while downloading %s", status, uri));
+					}
+				}
+			} catch (IOException | RuntimeException ex) {
+				error = ex;
+			}
+			// The temporary file is deleted before the download completes, so nothing remains when the caller is notified
+			try {
+				Files.deleteIfExists(tmp);
+			} catch (IOException ex) {
+				// Ignore, the file will be deleted by clean
+			}
+			if (retry) {
+				downloadFileAsync(uri, path, retries-1, download);
+			} else if (error!=null) {
+				download.completeExceptionally(error);
+			} else {
+				download.complete(null);
+			}
+		});
+	}
+
+	/** Gets the expected digest of a remote jar.
+	 * <br>The default implementation reads it in the uri's fragment, which should be <i>sha256=</i> or <i>sha512=</i> followed by the hexadecimal digest,
+	 * for instance <i>https://com.myApp/AppPlugins/http.jar#sha256=5f61...</i>.
+	 * A sub-class can override this method to get the digest from another part of the repository index.
+	 * @param uri The uri of a remote jar (as returned by {@link #getURIMap()})
+	 * @return The expected digest, or null if the digest is unknown (in such a case, the jar is not verified).
+	 * @throws IOException If the digest is invalid.
+	 */
+	protected Digest getExpectedDigest(URI uri) throws IOException {
+		final String fragment = uri.getFragment();
+		final int index = fragment==null ? -1 : fragment.indexOf('=');
+		if (index<0) {
+			return null;
 		}
+		final String algorithm = fragment.substring(0, index).toLowerCase();
+		try {
+			if ("sha256".equals(algorithm)) {
+				return new Digest("SHA-256", fragment.substring(index+1));
+			} else if ("sha512".equals(algorithm)) {
+				return new Digest("SHA-512", fragment.substring(index+1));
+			}
+		} catch (IllegalArgumentException e) {
+			throw new IOException(String.format("Invalid digest in %s", uri), e);
+		}
+		return null;
 	}
-	
+
 	private <V> HttpResponse<V> call(HttpRequest request, BodyHandler<V> handler) throws IOException {
 		try {
 			return getHttpClient().send(request, handler);
@@ -193,18 +708,183 @@ public abstract class AbstractPluginsDownloader {
 	
 	/** Gets the content of the remote repository.
 	 * <br>This method gets an input stream from the uri passed to this class constructor, then pass this input stream to {@link #getURIMap(InputStream)} and return its result.
+	 * <br>If the {@link #setIndexTimeToLive(long, TimeUnit) index cache} is enabled, the cached index is returned if it is not expired.
+	 * <br>If a sub-class overrides this method, {@link #getURIMap(Set)}, and so {@link #download(String...)}, use the overridden method.
 	 * @return A key to uri map.
 	 * @throws IOException If something went wrong
 	 */
 	public Map<String, URI> getURIMap() throws IOException {
+		if (indexTimeToLive<0) {
+			return downloadURIMap();
+		}
+		return getCachedIndex(Collections.emptySet()).map;
+	}
+
+	/** Gets the cached index.
+	 * @param keys Keys that should be in the index. If some are missing, the index is revalidated, even if it is not expired.
+	 * @return The cached index, revalidated if needed
+	 * @throws IOException If the index can't be revalidated
+	 */
+	private CachedIndex getCachedIndex(Set<String> keys) throws IOException {
+		CachedIndex current = index;
+		if (current==null) {
+			current = readIndexFile();
+		}
+		final boolean missingKeys = current!=null && !current.map.keySet().containsAll(keys);
+		if (current!=null && !missingKeys && System.currentTimeMillis()-current.timestamp<indexTimeToLive) {
+			return current;
+		}
+		final CompletableFuture<CachedIndex> refresh = refreshIndex();
+		// A stale index that does not contain the requested keys is useless, the caller waits for the refresh
+		if (current!=null && !missingKeys && staleWhileRevalidate) {
+			return current;
+		}
+		try {
+			return refresh.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			throw toIOException(e.getCause());
+		}
+	}
+
+	private CachedIndex readIndexFile() {
+		final Path file = getIndexFile();
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+		try (InputStream in = Files.newInputStream(file)) {
+			final CachedIndex result = new CachedIndex(getURIMap(in), readMetadata(file), Files.getLastModifiedTime(file).toMillis());
+			index = result;
+			return result;
+		} catch (IOException e) {
+			// The cached index is corrupted, it will be downloaded again
+			return null;
+		}
+	}
+
+	private synchronized CompletableFuture<CachedIndex> refreshIndex() {
+		if (indexRefresh!=null) {
+			return indexRefresh;
+		}
+		final Path file = getIndexFile();
+		final Path tmp;
+		try {
+			Files.createDirectories(file.getParent());
+			tmp = Files.createTempFile(file.getParent(), INDEX_FILE_NAME, ".tmp");
+		} catch (IOException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+		final CompletableFuture<CachedIndex> result = new CompletableFuture<>();
+		indexRefresh = result;
+		final CachedIndex current = index;
+		try {
+			final HttpRequest request = getRepositoryRequestBuilder().build();
+			final BodyHandler<Path> bodyHandler = info -> info.statusCode() == 200 ? BodySubscribers.ofFile(tmp) : BodySubscribers.replacing(tmp);
+			getHttpClient().sendAsync(request, bodyHandler).thenApply(response -> {
+				try {
+					return updateIndex(current, response, file);
+				} catch (IOException e) {
+					throw new CompletionException(e);
+				}
+			}).whenComplete((updated, e) -> {
+				if (e==null) {
+					index = updated;
+				}
+				endRefresh(result, tmp, updated, e);
+			});
+		} catch (RuntimeException e) {
+			endRefresh(result, tmp, null, e);
+		}
+		return result;
+	}
+
+	private void endRefresh(CompletableFuture<CachedIndex> refresh, Path tmp, CachedIndex updated, Throwable e) {
+		synchronized (this) {
+			try {
+				Files.deleteIfExists(tmp);
+			} catch (IOException ex) {
+				// Ignore, the file will be deleted by clean
+			}
+			indexRefresh = null;
+			if (e==null) {
+				refresh.complete(updated);
+			} else {
+				refresh.completeExceptionally(e);
+			}
+		}
+		if (e!=null) {
+			// The handler is called outside the lock, it may take time
+			indexRefreshFailureHandler.accept(e instanceof CompletionException && e.getCause()!=null ? e.getCause() : e);
+		}
+	}
+
+	private CachedIndex updateIndex(CachedIndex current, HttpResponse<Path> response, Path file) throws IOException {
+		final long now = System.currentTimeMillis();
+		if (response.statusCode()==HttpURLConnection.HTTP_NOT_MODIFIED && current!=null) {
+			if (Files.exists(file)) {
+				Files.setLastModifiedTime(file, FileTime.fromMillis(now));
+			}
+			return new CachedIndex(current.map, current.metadata, now);
+		} else if (response.statusCode()!=HttpURLConnection.HTTP_OK) {
+			throw new IOException(String.format("Unexpected status code %d received while downloading %s repository", response.statusCode(), pluginTypeWording));
+		}
+		final Map<String, URI> map;
+		try (InputStream in = Files.newInputStream(response.body())) {
+			map = getURIMap(in);
+		}
+		// The index is valid, save it
+		Files.move(response.body(), file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		writeMetadata(file, response.headers());
+		return new CachedIndex(map, readMetadata(file), now);
+	}
+
+	private Map<String, URI> downloadURIMap() throws IOException {
+		try (InputStream in = getIndexInputStream()) {
+			return getURIMap(in);
+		}
+	}
+
+	/** Gets the uris of some keys of the remote repository.
+	 * <br>If {@link #getURIMap()} is overridden, the result is extracted from {@link #getURIMap()}.
+	 * <br>Otherwise, if the {@link #setIndexTimeToLive(long, TimeUnit) index cache} is enabled, the result is extracted from the cached index,
+	 * which is revalidated if some keys are missing. If the cache is disabled, the index is parsed with {@link #parseIndex(InputStream, BiPredicate)},
+	 * only the entries of the requested keys are kept and the parsing stops as soon as all the keys are found.
+	 * @param keys The keys to search
+	 * @return A key to uri map that contains the keys found in the repository.
+	 * @throws IOException If something went wrong
+	 */
+	public Map<String, URI> getURIMap(Set<String> keys) throws IOException {
+		final Map<String, URI> result = new HashMap<>();
+		if (indexTimeToLive>=0 || uriMapOverridden) {
+			final Map<String, URI> map = uriMapOverridden ? getURIMap() : getCachedIndex(keys).map;
+			keys.stream().filter(map::containsKey).forEach(k -> result.put(k, map.get(k)));
+			return result;
+		}
+		if (keys.isEmpty()) {
+			return result;
+		}
+		// Closing the input stream before its end cancels the download of the rest of the index
+		try (InputStream in = getIndexInputStream()) {
+			parseIndex(in, (key, value) -> {
+				if (keys.contains(key)) {
+					result.put(key, value);
+				}
+				return result.size()<keys.size();
+			});
+		}
+		return result;
+	}
+
+	private InputStream getIndexInputStream() throws IOException {
 		final HttpRequest request = getRepositoryRequestBuilder().build();
 		final HttpResponse<InputStream> response = call(request, BodyHandlers.ofInputStream());
 		if (response.statusCode()!=200) {
+			response.body().close();
 			throw new IOException(String.format("Unexpected status code %d received while downloading %s repository", response.statusCode(), pluginTypeWording));
 		}
-		try (InputStream in = response.body()) {
-			return getURIMap(in);
-		}
+		return response.body();
 	}
 	
 	/** Gets the builder of the request used to query the repository.
@@ -212,16 +892,36 @@ public abstract class AbstractPluginsDownloader {
 	 * @return a request builder that build the request.
 	 */
 	protected HttpRequest.Builder getRepositoryRequestBuilder() {
-		return getRequestBuilder().uri(uri);
+		final HttpRequest.Builder builder = getRequestBuilder().uri(uri);
+		final CachedIndex current = indexTimeToLive<0 ? null : index;
+		if (current!=null) {
+			setConditionalHeaders(builder, current.metadata);
+		}
+		return builder;
 	}
 
 	/** Gets the builder of the request used to download a jar.
 	 * <br>A sub-class can override this method to, for example, add headers to the request.
+	 * <br>If the jar was already downloaded, the request contains the <i>If-None-Match</i> and <i>If-Modified-Since</i> headers
+	 * built from its {@link #getMetadataFile(Path) metadata file}.
 	 * @param uri The jar's uri.
 	 * @return a request builder that build the request.
 	 */
 	protected HttpRequest.Builder getJarRequestBuilder(URI uri) {
-		return getRequestBuilder().uri(uri);
+		final HttpRequest.Builder builder = getRequestBuilder().uri(uri);
+		setConditionalHeaders(builder, readMetadata(getDownloadTarget(uri)));
+		return builder;
+	}
+
+	private static void setConditionalHeaders(HttpRequest.Builder builder, Properties metadata) {
+		final String etag = metadata.getProperty(ETAG);
+		if (etag!=null) {
+			builder.setHeader("If-None-Match", etag);
+		}
+		final String lastModified = metadata.getProperty(LAST_MODIFIED);
+		if (lastModified!=null) {
+			builder.setHeader("If-Modified-Since", lastModified);
+		}
 	}
 
 	/** Gets the map that links a plugin key to the URI of a remote jar file from an InputStream 
@@ -231,6 +931,24 @@ public abstract class AbstractPluginsDownloader {
 	 */
 	protected abstract Map<String, URI> getURIMap(InputStream in) throws IOException;
 
+	/** Parses the index of the remote repository entry by entry.
+	 * <br>This method is used by {@link #getURIMap(Set)} to search some keys without building the whole key to uri map.
+	 * <br>The default implementation calls {@link #getURIMap(InputStream)}, then passes its entries to the consumer.
+	 * Sub-classes that are able to read the index progressively (for instance, with a streaming json parser) should override this method
+	 * and stop reading the input stream as soon as the consumer returns false. Then, the memory used is independent of the index size, and
+	 * the parsing time is proportional to the position of the searched keys in the index.
+	 * @param in An input stream on the remote repository URI
+	 * @param consumer A predicate that receives the key and the uri of each entry of the index. It returns false if the parsing should stop.
+	 * @throws IOException If something went wrong while reading the input stream
+	 */
+	protected void parseIndex(InputStream in, BiPredicate<String, URI> consumer) throws IOException {
+		for (Map.Entry<String, URI> entry : getURIMap(in).entrySet()) {
+			if (!consumer.test(entry.getKey(), entry.getValue())) {
+				return;
+			}
+		}
+	}
+
 	private HttpRequest.Builder getRequestBuilder() {
 		HttpRequest.Builder builder = HttpRequest.newBuilder()
 				  .version(HttpClient.Version.HTTP_2)
@@ -0,0 +1,334 @@
+package com.fathzer.plugin.loader.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/** A thread safe {@link PluginRegistry}.
+ * <br>This registry is optimized for applications that read the registry much more often than they modify it: The registered
+ * plugins are stored in an immutable map that is replaced (copied) each time the registry is modified.
+ * <br>Reads ({@link #get(String)}, {@link #getRegistered()}) are wait free, they never block, even while the registry is modified.
+ * Modifications are serialized, and {@link #registerAll(Collection)} is atomic: A reader sees either none or all of the registered plugins.
+ * <br>Each state of the registry is a {@link Generation}. Readers that need to use plugins safely while the registry is modified can
+ * {@link #acquire()} the current generation. {@link #replaceAll(Collection)} returns a future that is completed once all the previous
+ * generations were released. This allows, for instance, to close the class loaders of replaced plugins only when they are no more used.
+ * <br>Lazily registered plugins are instantiated at most once, even if many threads request them at the same time.
+ * @param <T> The class of the plugins.
+ */
+public class ConcurrentPluginRegistry<T> extends PluginRegistry<T> {
+	private volatile State<T> current;
+
+	/** A lazily registered plugin. */
+	private static final class LazyPlugin<T> {
+		private final String key;
+		private Supplier<? extends T> factory;
+		private T plugin;
+
+		private LazyPlugin(String key, Supplier<? extends T> factory) {
+			this.key = key;
+			this.factory = factory;
+		}
+
+		private synchronized T get(ConcurrentPluginRegistry<T> registry) {
+			if (factory!=null) {
+				// The factory is released once used, so that it can be garbage collected
+				final Supplier<? extends T> f = factory;
+				factory = null;
+				plugin = registry.instantiate(key, f);
+			}
+			return plugin;
+		}
+	}
+
+	/** A state of the registry, that is an immutable set of registered plugins.
+	 * @param <T> The class of the plugins.
+	 */
+	private static final class State<T> {
+		private final long number;
+		private final Map<String, T> plugins;
+		private final Map<String, LazyPlugin<T>> lazy;
+		/** The number of generations that are not closed, plus one if it is the current state */
+		private final AtomicInteger references = new AtomicInteger(1);
+		private final CompletableFuture<Void> released = new CompletableFuture<>();
+		private final CompletableFuture<Void> previousDrained;
+		private final CompletableFuture<Void> drained;
+
+		private State(long number, Map<String, T> plugins, Map<String, LazyPlugin<T>> lazy, CompletableFuture<Void> previousDrained) {
+			this.number = number;
+			this.plugins = plugins;
+			this.lazy = lazy;
+			this.previousDrained = previousDrained;
+			this.drained = previousDrained.thenCombine(released, (a, b) -> null);
+		}
+
+		private boolean tryAcquire() {
+			while (true) {
+				final int count = references.get();
+				if (count==0) {
+					// The state is retired and released
+					return false;
+				}
+				if (references.compareAndSet(count, count+1)) {
+					return true;
+				}
+			}
+		}
+
+		private void release() {
+			while (true) {
+				final int count = references.get();
+				if (count==0) {
+					throw new IllegalStateException("State "+number+" is already released");
+				}
+				if (references.compareAndSet(count, count-1)) {
+					if (count==1) {
+						released.complete(null);
+					}
+					return;
+				}
+			}
+		}
+	}
+
+	/** A generation of the registry, that is an immutable set of registered plugins.
+	 * <br>Each call to {@link ConcurrentPluginRegistry#acquire()} returns a new generation, that should be {@link #close() closed}
+	 * when the plugins retrieved from it are no more used. Closing a generation more than once has no effect.
+	 * @param <T> The class of the plugins.
+	 */
+	public static final class Generation<T> implements AutoCloseable {
+		private final ConcurrentPluginRegistry<T> registry;
+		private final State<T> state;
+		private final AtomicBoolean closed = new AtomicBoolean();
+
+		private Generation(ConcurrentPluginRegistry<T> registry, State<T> state) {
+			this.registry = registry;
+			this.state = state;
+		}
+
+		/** Gets the number of this generation.
+		 * <br>Every modification of the registry creates a new generation with a greater number.
+		 * Generations acquired while the registry is not modified have the same number.
+		 * @return a positive or null long
+		 */
+		public long getNumber() {
+			return state.number;
+		}
+
+		/** Gets a plugin by its key.
+		 * <br>If the plugin was lazily registered and is not yet instantiated, it is instantiated.
+		 * @param key The plugin's key
+		 * @return The plugin or null if the plugin does not exists in this generation (or its lazy instantiation failed).
+		 */
+		public T get(String key) {
+			return registry.get(state, key);
+		}
+
+		/** Gets all the plugins of this generation.
+		 * <br>Lazily registered plugins that were not instantiated when this generation was created are not returned.
+		 * @return An unmodifiable map.
+		 */
+		public Map<String, T> getRegistered() {
+			return state.plugins;
+		}
+
+		/** Releases this generation.
+		 * <br>This method is idempotent.
+		 */
+		@Override
+		public void close() {
+			if (closed.compareAndSet(false, true)) {
+				state.release();
+			}
+		}
+	}
+
+	/** Constructor.
+	 * <br>The built registry is empty.
+	 * @param keyFunction A function that get the plugin's key.
+	 */
+	public ConcurrentPluginRegistry(Function<T, String> keyFunction) {
+		super(keyFunction);
+		this.current = new State<>(0, Collections.emptyMap(), Collections.emptyMap(), CompletableFuture.completedFuture(null));
+	}
+
+	/** Acquires the current generation of this registry.
+	 * <br>This method is lock free. The returned generation should be {@link Generation#close() closed} when the plugins it contains are no more used.
+	 * @return A new generation
+	 */
+	public Generation<T> acquire() {
+		while (true) {
+			final State<T> state = current;
+			if (state.tryAcquire()) {
+				return new Generation<>(this, state);
+			}
+		}
+	}
+
+	/** Replaces all the registered plugins.
+	 * <br>The replacement is atomic.
+	 * @param plugins The new plugins
+	 * @return A future that is completed once all the previous generations of this registry are released.
+	 */
+	public synchronized CompletableFuture<Void> replaceAll(Collection<T> plugins) {
+		final Map<String, T> map = new HashMap<>();
+		for (T plugin : plugins) {
+			map.put(getKeyFunction().apply(plugin), plugin);
+		}
+		return publish(map, Collections.emptyMap()).drained;
+	}
+
+	/** Gets a future that is completed once all the generations older than the current one are released.
+	 * <br>This allows, for instance, to close the class loader of an unregistered plugin once no reader can use it anymore.
+	 * @return A future
+	 */
+	public CompletableFuture<Void> getPreviousGenerationsReleased() {
+		return current.previousDrained;
+	}
+
+	/** Publishes a new generation.
+	 * @param map The plugins of the new generation
+	 * @param lazy The lazily registered plugins of the new generation
+	 * @return The previous state
+	 */
+	private State<T> publish(Map<String, T> map, Map<String, LazyPlugin<T>> lazy) {
+		final State<T> previous = current;
+		current = new State<>(previous.number+1, Collections.unmodifiableMap(map), lazy.isEmpty() ? Collections.emptyMap() : lazy, previous.drained);
+		previous.release();
+		return previous;
+	}
+
+	/** Publishes a new generation with the same lazy plugins as the current one, except the one with a key.
+	 * @param map The plugins of the new generation
+	 * @param key The key to remove from the lazily registered plugins
+	 */
+	private void publish(Map<String, T> map, String key) {
+		Map<String, LazyPlugin<T>> lazy = current.lazy;
+		if (lazy.containsKey(key)) {
+			lazy = new HashMap<>(lazy);
+			lazy.remove(key);
+		}
+		publish(map, lazy);
+	}
+
+	@Override
+	public synchronized T register(T plugin) {
+		final Map<String, T> map = new HashMap<>(current.plugins);
+		final String key = getKeyFunction().apply(plugin);
+		final T result = map.put(key, plugin);
+		publish(map, key);
+		return result;
+	}
+
+	@Override
+	public synchronized void registerLazy(String key, Supplier<? extends T> factory) {
+		if (key==null || factory==null) {
+			throw new IllegalArgumentException();
+		}
+		final Map<String, T> map = new HashMap<>(current.plugins);
+		map.remove(key);
+		final Map<String, LazyPlugin<T>> lazy = new HashMap<>(current.lazy);
+		lazy.put(key, new LazyPlugin<>(key, factory));
+		publish(map, lazy);
+	}
+
+	/** Gets a lazily registered plugin, and moves it to the instantiated plugins of the registry.
+	 * @param lazyPlugin The lazily registered plugin
+	 * @return The plugin, or null if its instantiation failed
+	 */
+	private T resolve(LazyPlugin<T> lazyPlugin) {
+		T plugin = null;
+		try {
+			plugin = lazyPlugin.get(this);
+			return plugin;
+		} finally {
+			// The lazy plugin is removed even if the failure handler threw an exception, its factory is no more available
+			moveToRegistered(lazyPlugin, plugin);
+		}
+	}
+
+	/** Removes a lazily registered plugin from the lazy plugins of the registry and registers its instance.
+	 * @param lazyPlugin The lazily registered plugin
+	 * @param plugin Its instance, or null if its instantiation failed
+	 */
+	private synchronized void moveToRegistered(LazyPlugin<T> lazyPlugin, T plugin) {
+		// Only update the registry if the plugin was not unregistered or replaced in the meantime
+		if (current.lazy.get(lazyPlugin.key)==lazyPlugin) {
+			final Map<String, T> map = current.plugins;
+			if (plugin==null) {
+				publish(map, lazyPlugin.key);
+			} else {
+				final Map<String, T> newMap = new HashMap<>(map);
+				newMap.put(lazyPlugin.key, plugin);
+				publish(newMap, lazyPlugin.key);
+			}
+		}
+	}
+
+	/** {@inheritDoc}
+	 * <br>The plugins are registered atomically.
+	 */
+	@Override
+	public synchronized List<T> registerAll(Collection<T> plugins) {
+		final Map<String, T> map = new HashMap<>(current.plugins);
+		final Map<String, LazyPlugin<T>> lazy = new HashMap<>(current.lazy);
+		final List<T> result = new ArrayList<>(plugins.size());
+		for (T plugin : plugins) {
+			final String key = getKeyFunction().apply(plugin);
+			lazy.remove(key);
+			final T old = map.put(key, plugin);
+			if (old==null || !plugin.getClass().equals(old.getClass())) {
+				result.add(plugin);
+			}
+		}
+		publish(map, lazy);
+		return result;
+	}
+
+	@Override
+	public synchronized T unregister(String key) {
+		if (!current.plugins.containsKey(key) && !current.lazy.containsKey(key)) {
+			return null;
+		}
+		final Map<String, T> map = new HashMap<>(current.plugins);
+		final T result = map.remove(key);
+		publish(map, key);
+		return result;
+	}
+
+	@Override
+	public T get(String key) {
+		return get(current, key);
+	}
+
+	private T get(State<T> state, String key) {
+		final T result = state.plugins.get(key);
+		if (result!=null || state.lazy.isEmpty()) {
+			return result;
+		}
+		final LazyPlugin<T> lazyPlugin = state.lazy.get(key);
+		return lazyPlugin==null ? null : resolve(lazyPlugin);
+	}
+
+	@Override
+	public Set<String> getUninstantiated() {
+		return Collections.unmodifiableSet(current.lazy.keySet());
+	}
+
+	/** Gets all available plugins.
+	 * @return An unmodifiable snapshot of the registered plugins. Unlike {@link PluginRegistry#getRegistered()}, the returned map does not reflect
+	 * the changes made in this registry after this method was called.
+	 */
+	@Override
+	public Map<String, T> getRegistered() {
+		return current.plugins;
+	}
+}
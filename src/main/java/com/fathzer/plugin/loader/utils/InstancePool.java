@@ -0,0 +1,170 @@
+package com.fathzer.plugin.loader.utils;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fathzer.plugin.loader.PluginInstantiationException;
+
+/** An {@link InstanceScope} where instances are borrowed from a bounded pool.
+ * <br>Instances are created when needed, up to the pool's maximum size. Once released, an instance is reused by the next {@link #acquire()}.
+ * When all the instances are borrowed, {@link #acquire()} waits until an instance is released.
+ * <br>The pool exposes metrics that help to size it: The number of created, idle and borrowed instances, the number of borrows
+ * and the number of borrows that had to wait for an instance.
+ * <br>An instance should be released once, and only to the pool that returned it. The pool keeps track of the borrowed instances
+ * and rejects the release of any other instance.
+ * @param <T> The class of the plugins.
+ * @see InstanceScope#pool(Class, int)
+ */
+public class InstancePool<T> extends InstanceScope<T> {
+	private final int maxSize;
+	private final Semaphore permits;
+	private final ConcurrentLinkedDeque<T> idle = new ConcurrentLinkedDeque<>();
+	// Instances are compared by identity, plugins may override equals
+	private final Set<Identity> active;
+	private final LongAdder created = new LongAdder();
+	private final LongAdder borrowed = new LongAdder();
+	private final LongAdder waited = new LongAdder();
+
+	/** Constructor.
+	 * @param factory The factory that creates the instances.
+	 * @param maxSize The maximum number of instances.
+	 * @throws IllegalArgumentException if factory is null or maxSize is &lt; 1
+	 */
+	public InstancePool(Callable<? extends T> factory, int maxSize) {
+		super(factory);
+		if (maxSize<1) {
+			throw new IllegalArgumentException();
+		}
+		this.maxSize = maxSize;
+		this.permits = new Semaphore(maxSize);
+		this.active = ConcurrentHashMap.newKeySet(maxSize);
+	}
+
+	/** A wrapper that compares instances by identity.
+	 * <br>It allows to use a concurrent set, which does not lock the whole pool on every acquire/release, as an identity set.
+	 */
+	private static final class Identity {
+		private final Object instance;
+
+		private Identity(Object instance) {
+			this.instance = instance;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(instance);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Identity && ((Identity)obj).instance==instance;
+		}
+	}
+
+	/** {@inheritDoc}
+	 * <br>If all the instances are borrowed, this method waits, uninterruptibly, until an instance is released.
+	 */
+	@Override
+	public T acquire() {
+		if (!permits.tryAcquire()) {
+			waited.increment();
+			permits.acquireUninterruptibly();
+		}
+		return borrow();
+	}
+
+	/** Acquires an instance, waiting at most a given time if all the instances are borrowed.
+	 * @param timeout The maximum time to wait
+	 * @param unit The unit of <i>timeout</i>
+	 * @return An instance or null if no instance was released before the timeout.
+	 * @throws InterruptedException if the current thread is interrupted while waiting
+	 * @throws PluginInstantiationException if the instance can't be created
+	 */
+	public T tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+		if (!permits.tryAcquire()) {
+			waited.increment();
+			if (!permits.tryAcquire(timeout, unit)) {
+				return null;
+			}
+		}
+		return borrow();
+	}
+
+	private T borrow() {
+		T result = idle.pollFirst();
+		if (result==null) {
+			try {
+				result = create();
+			} catch (RuntimeException e) {
+				permits.release();
+				throw e;
+			}
+			created.increment();
+		}
+		active.add(new Identity(result));
+		borrowed.increment();
+		return result;
+	}
+
+	/** {@inheritDoc}
+	 * <br>The instance is returned to the pool.
+	 * @throws IllegalArgumentException if instance is null, was not borrowed from this pool or was already released
+	 */
+	@Override
+	public void release(T instance) {
+		if (instance==null || !active.remove(new Identity(instance))) {
+			throw new IllegalArgumentException();
+		}
+		// Most recently used instances are reused first, they are more likely to be in processor caches
+		idle.offerFirst(instance);
+		permits.release();
+	}
+
+	/** Gets the maximum number of instances of this pool.
+	 * @return a positive integer
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/** Gets the number of instances created by this pool.
+	 * @return a positive or null long
+	 */
+	public long getCreatedCount() {
+		return created.sum();
+	}
+
+	/** Gets the number of instances that are currently borrowed.
+	 * @return a positive or null integer
+	 */
+	public int getActiveCount() {
+		return maxSize - permits.availablePermits();
+	}
+
+	/** Gets the number of instances that are currently available in the pool.
+	 * @return a positive or null integer
+	 */
+	public int getIdleCount() {
+		return idle.size();
+	}
+
+	/** Gets the number of times an instance was acquired.
+	 * @return a positive or null long
+	 */
+	public long getBorrowCount() {
+		return borrowed.sum();
+	}
+
+	/** Gets the number of times a thread had to wait because all the instances were borrowed.
+	 * <br>If this number is high compared to {@link #getBorrowCount()}, the pool is probably too small.
+	 * @return a positive or null long
+	 */
+	public long getWaitCount() {
+		return waited.sum();
+	}
+}
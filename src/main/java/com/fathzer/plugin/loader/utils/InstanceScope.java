@@ -0,0 +1,210 @@
+package com.fathzer.plugin.loader.utils;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+
+import com.fathzer.plugin.loader.CachedInstanceBuilder;
+import com.fathzer.plugin.loader.PluginInstantiationException;
+
+/** The scope of plugin instances.
+ * <br>Many plugins are not thread safe. Calling a plugin loader each time an instance is required re-runs the plugin discovery
+ * and reflection. An instance scope creates the instances of a plugin class once its class is known, and controls how instances are shared:<ul>
+ * <li>{@link #singleton(Class)}: A single instance is shared by all threads.</li>
+ * <li>{@link #perThread(Class)}: Each thread has its own instance, that it should {@link PerThread#remove() remove} when it no more uses the scope.</li>
+ * <li>{@link #pool(Class, int)}: Instances are borrowed from a bounded pool of instances, and returned when no more used.</li>
+ * </ul>
+ * Instances are created through {@link CachedInstanceBuilder} factories, or any {@link Callable}.
+ * <br>Typical usage is:<pre>
+ * final InstanceScope&lt;MyPlugin&gt; scope = InstanceScope.pool(pluginClass, 10);
+ * final String result = scope.apply(p -&gt; p.doSomething());
+ * </pre>
+ * Scopes can be stored in a {@link PluginRegistry}.
+ * <br>All implementations of this class are thread safe.
+ * @param <T> The class of the plugins.
+ */
+public abstract class InstanceScope<T> {
+	private final Callable<? extends T> factory;
+
+	/** Constructor.
+	 * @param factory The factory that creates the instances.
+	 * @throws IllegalArgumentException if factory is null
+	 */
+	protected InstanceScope(Callable<? extends T> factory) {
+		if (factory==null) {
+			throw new IllegalArgumentException();
+		}
+		this.factory = factory;
+	}
+
+	/** Creates a scope where a single instance is shared by all threads.
+	 * <br>The instance is created the first time it is acquired.
+	 * @param <T> The class of the plugins.
+	 * @param factory The factory that creates the instance.
+	 * @return A new scope
+	 */
+	public static <T> InstanceScope<T> singleton(Callable<? extends T> factory) {
+		return new Singleton<>(factory);
+	}
+
+	/** Creates a scope where a single instance is shared by all threads.
+	 * <br>The instance is created the first time it is acquired, using the class' public no argument constructor.
+	 * @param <T> The class of the plugins.
+	 * @param aClass The plugin's class.
+	 * @return A new scope
+	 */
+	public static <T> InstanceScope<T> singleton(Class<T> aClass) {
+		return singleton(getFactory(aClass));
+	}
+
+	/** Creates a scope where each thread has its own instance.
+	 * <br>The instance of a thread is created the first time it is acquired by the thread.
+	 * @param <T> The class of the plugins.
+	 * @param factory The factory that creates the instances.
+	 * @return A new scope
+	 * @see PerThread
+	 */
+	public static <T> PerThread<T> perThread(Callable<? extends T> factory) {
+		return new PerThread<>(factory);
+	}
+
+	/** Creates a scope where each thread has its own instance.
+	 * <br>The instance of a thread is created the first time it is acquired by the thread, using the class' public no argument constructor.
+	 * @param <T> The class of the plugins.
+	 * @param aClass The plugin's class.
+	 * @return A new scope
+	 * @see PerThread
+	 */
+	public static <T> PerThread<T> perThread(Class<T> aClass) {
+		return perThread(getFactory(aClass));
+	}
+
+	/** Creates a scope where instances are borrowed from a bounded pool.
+	 * @param <T> The class of the plugins.
+	 * @param factory The factory that creates the instances.
+	 * @param maxSize The maximum number of instances.
+	 * @return A new pool
+	 * @see InstancePool
+	 */
+	public static <T> InstancePool<T> pool(Callable<? extends T> factory, int maxSize) {
+		return new InstancePool<>(factory, maxSize);
+	}
+
+	/** Creates a scope where instances are borrowed from a bounded pool.
+	 * <br>Instances are created using the class' public no argument constructor.
+	 * @param <T> The class of the plugins.
+	 * @param aClass The plugin's class.
+	 * @param maxSize The maximum number of instances.
+	 * @return A new pool
+	 * @see InstancePool
+	 */
+	public static <T> InstancePool<T> pool(Class<T> aClass, int maxSize) {
+		return pool(getFactory(aClass), maxSize);
+	}
+
+	private static <T> Callable<T> getFactory(Class<T> aClass) {
+		if (aClass==null) {
+			throw new IllegalArgumentException();
+		}
+		return CachedInstanceBuilder.INSTANCE.getFactory(aClass);
+	}
+
+	/** Creates a new instance.
+	 * @return a new instance
+	 * @throws PluginInstantiationException if the factory fails or returns null
+	 */
+	protected T create() {
+		final T result;
+		try {
+			result = factory.call();
+		} catch (InvocationTargetException e) {
+			throw new PluginInstantiationException(e.getCause());
+		} catch (Exception e) {
+			throw new PluginInstantiationException(e);
+		}
+		if (result==null) {
+			throw new PluginInstantiationException("Factory returned null");
+		}
+		return result;
+	}
+
+	/** Acquires an instance.
+	 * <br>The instance should be {@link #release(Object) released} when it is no more used.
+	 * @return An instance
+	 * @throws PluginInstantiationException if the instance can't be created
+	 */
+	public abstract T acquire();
+
+	/** Releases an instance previously returned by {@link #acquire()}.
+	 * <br>The default implementation does nothing.
+	 * @param instance The instance to release
+	 */
+	public void release(T instance) {
+		// Nothing to do by default
+	}
+
+	/** Acquires an instance, applies a function to it, and releases it.
+	 * @param <R> The type of the function's result
+	 * @param function The function to apply
+	 * @return The function's result
+	 * @throws PluginInstantiationException if the instance can't be created
+	 */
+	public <R> R apply(Function<? super T, R> function) {
+		final T instance = acquire();
+		try {
+			return function.apply(instance);
+		} finally {
+			release(instance);
+		}
+	}
+
+	private static final class Singleton<T> extends InstanceScope<T> {
+		private volatile T instance;
+
+		private Singleton(Callable<? extends T> factory) {
+			super(factory);
+		}
+
+		@Override
+		public T acquire() {
+			T result = instance;
+			if (result==null) {
+				synchronized (this) {
+					result = instance;
+					if (result==null) {
+						result = create();
+						instance = result;
+					}
+				}
+			}
+			return result;
+		}
+	}
+
+	/** A scope where each thread has its own instance.
+	 * <br>The instance of a thread is kept until the thread ends or calls {@link #remove()}. As an instance references its class loader,
+	 * threads that outlive the scope, like the threads of an executor service, should call {@link #remove()} once they no more use the scope,
+	 * otherwise the class loader of the plugin can't be garbage collected.
+	 * @param <T> The class of the plugins.
+	 * @see InstanceScope#perThread(Class)
+	 */
+	public static final class PerThread<T> extends InstanceScope<T> {
+		private final ThreadLocal<T> instances = ThreadLocal.withInitial(this::create);
+
+		private PerThread(Callable<? extends T> factory) {
+			super(factory);
+		}
+
+		@Override
+		public T acquire() {
+			return instances.get();
+		}
+
+		/** Removes the instance of the current thread.
+		 * <br>If the current thread acquires an instance again, a new instance is created.
+		 */
+		public void remove() {
+			instances.remove();
+		}
+	}
+}
@@ -0,0 +1,213 @@
+package com.fathzer.plugin.loader.utils;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fathzer.plugin.loader.PluginInstantiationException;
+import com.fathzer.plugin.loader.PluginLoaderListener;
+
+/** A {@link PluginLoaderListener} that collects the durations of the loading phases in memory.
+ * <br>Durations are collected per source (for instance per jar file) and per {@link Phase}. Their count, total and percentiles
+ * can then be retrieved for a source or for all sources.
+ * <br>Typical usage is:<pre>
+ * final PluginLoaderMetrics&lt;Path&gt; metrics = new PluginLoaderMetrics&lt;&gt;();
+ * final JarPluginLoader loader = new JarPluginLoader();
+ * loader.withListener(metrics);
+ * ...
+ * for (Path jar : metrics.getSources()) {
+ *   System.out.println(jar+": p99 class loading time is "+metrics.get(jar, Phase.CLASS_LOADING).getPercentile(99)+"ns");
+ * }
+ * </pre>
+ * All durations are kept until {@link #clear()} is called, so this class is intended to be used during startup or diagnosis, not permanently.
+ * <br>This class is thread safe.
+ * @param <T> The source type
+ */
+public class PluginLoaderMetrics<T> implements PluginLoaderListener<T> {
+	/** A loading phase. */
+	public enum Phase {
+		/** The whole processing of a source. */
+		SCAN,
+		/** The search of the plugin class names by the {@link com.fathzer.plugin.loader.ClassNameBuilder}. */
+		CLASS_NAMES,
+		/** The construction of the class loader. */
+		CLASS_LOADER,
+		/** The loading of a plugin class. */
+		CLASS_LOADING,
+		/** The instantiation of a plugin by the {@link com.fathzer.plugin.loader.InstanceBuilder}. */
+		INSTANTIATION
+	}
+
+	private final Map<T, SourceMetrics> metrics = new ConcurrentHashMap<>();
+
+	private static final class Samples {
+		private long[] values = new long[16];
+		private int size;
+
+		private synchronized void add(long value) {
+			if (size==values.length) {
+				values = Arrays.copyOf(values, size*2);
+			}
+			values[size++] = value;
+		}
+
+		private synchronized long[] get() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+
+	private static final class SourceMetrics {
+		private final Map<Phase, Samples> samples = new EnumMap<>(Phase.class);
+		private final LongAdder failures = new LongAdder();
+
+		private SourceMetrics() {
+			for (Phase phase : Phase.values()) {
+				samples.put(phase, new Samples());
+			}
+		}
+	}
+
+	/** Durations of a phase.
+	 * <br>This class is an immutable snapshot.
+	 */
+	public static final class Durations {
+		private final long[] sorted;
+
+		private Durations(long[] values) {
+			this.sorted = values;
+			Arrays.sort(sorted);
+		}
+
+		/** Gets the number of durations.
+		 * @return a positive or null integer
+		 */
+		public int getCount() {
+			return sorted.length;
+		}
+
+		/** Gets the sum of the durations.
+		 * @return a duration in nanoseconds
+		 */
+		public long getTotal() {
+			long result = 0;
+			for (long value : sorted) {
+				result += value;
+			}
+			return result;
+		}
+
+		/** Gets the maximum duration.
+		 * @return a duration in nanoseconds, 0 if there's no duration.
+		 */
+		public long getMax() {
+			return sorted.length==0 ? 0 : sorted[sorted.length-1];
+		}
+
+		/** Gets a percentile of the durations.
+		 * <br>The nearest rank method is used: The result is one of the durations.
+		 * @param percentile The percentile, for instance 50 for the median.
+		 * @return a duration in nanoseconds, 0 if there's no duration.
+		 * @throws IllegalArgumentException if percentile is not in [0,100]
+		 */
+		public long getPercentile(double percentile) {
+			if (percentile<0 || percentile>100) {
+				throw new IllegalArgumentException();
+			}
+			if (sorted.length==0) {
+				return 0;
+			}
+			final int rank = (int) Math.ceil(percentile/100*sorted.length);
+			return sorted[Math.max(0, rank-1)];
+		}
+	}
+
+	/** Gets the sources that were loaded.
+	 * @return An unmodifiable set. Please note the returned set will reflect the sources loaded later.
+	 */
+	public Set<T> getSources() {
+		return Collections.unmodifiableSet(metrics.keySet());
+	}
+
+	/** Gets the durations of a phase for a source.
+	 * @param source The source
+	 * @param phase The phase
+	 * @return The durations, empty if the source is unknown
+	 */
+	public Durations get(T source, Phase phase) {
+		final SourceMetrics sourceMetrics = metrics.get(source);
+		return new Durations(sourceMetrics==null ? new long[0] : sourceMetrics.samples.get(phase).get());
+	}
+
+	/** Gets the durations of a phase for all sources.
+	 * @param phase The phase
+	 * @return The durations
+	 */
+	public Durations get(Phase phase) {
+		long[] result = new long[0];
+		for (SourceMetrics sourceMetrics : metrics.values()) {
+			final long[] values = sourceMetrics.samples.get(phase).get();
+			final int length = result.length;
+			result = Arrays.copyOf(result, length+values.length);
+			System.arraycopy(values, 0, result, length, values.length);
+		}
+		return new Durations(result);
+	}
+
+	/** Gets the number of plugins of a source that could not be loaded or instantiated.
+	 * @param source The source
+	 * @return a positive or null long
+	 */
+	public long getFailureCount(T source) {
+		final SourceMetrics sourceMetrics = metrics.get(source);
+		return sourceMetrics==null ? 0 : sourceMetrics.failures.sum();
+	}
+
+	/** Removes all the collected durations.
+	 */
+	public void clear() {
+		metrics.clear();
+	}
+
+	private SourceMetrics getMetrics(T source) {
+		return metrics.computeIfAbsent(source, s -> new SourceMetrics());
+	}
+
+	private void add(T source, Phase phase, long duration) {
+		getMetrics(source).samples.get(phase).add(duration);
+	}
+
+	@Override
+	public void sourceScanned(T source, Collection<? extends Class<?>> classes, int pluginCount, long duration) {
+		add(source, Phase.SCAN, duration);
+	}
+
+	@Override
+	public void classNamesFound(T source, Collection<? extends Class<?>> classes, int classNameCount, long duration) {
+		add(source, Phase.CLASS_NAMES, duration);
+	}
+
+	@Override
+	public void classLoaderBuilt(T source, ClassLoader classLoader, long duration) {
+		add(source, Phase.CLASS_LOADER, duration);
+	}
+
+	@Override
+	public void classLoaded(T source, String className, long duration) {
+		add(source, Phase.CLASS_LOADING, duration);
+	}
+
+	@Override
+	public void instanceBuilt(T source, String className, long duration) {
+		add(source, Phase.INSTANTIATION, duration);
+	}
+
+	@Override
+	public void instantiationFailed(T source, String className, PluginInstantiationException exception, long duration) {
+		getMetrics(source).failures.increment();
+	}
+}
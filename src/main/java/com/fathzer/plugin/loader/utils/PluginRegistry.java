@@ -5,16 +5,24 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /** A class to manage plugins identified by a key String.
- * <br>This class is not thread safe
+ * <br>Plugins can be registered already instantiated, or {@link #registerLazy(String, Supplier) lazily}: They are then instantiated
+ * the first time they are requested.
+ * <br>This class is not thread safe, use {@link ConcurrentPluginRegistry} if the registry is shared between threads.
  * @param <T> The class of the plugins. 
  */
 public class PluginRegistry<T> {
 	private final Map<String, T> pluginsMap;
+	private final Map<String, Supplier<? extends T>> lazyMap;
 	private final Function<T, String> keyFunction;
+	// Volatile because ConcurrentPluginRegistry may call the handler from any thread
+	private volatile BiConsumer<String, RuntimeException> failureHandler;
 	
 	/** Constructor.
 	 * <br>The built registry is empty.
@@ -25,7 +33,9 @@ public class PluginRegistry<T> {
 			throw new IllegalArgumentException();
 		}
 		this.pluginsMap = new HashMap<>();
+		this.lazyMap = new HashMap<>();
 		this.keyFunction = keyFunction;
+		this.failureHandler = (k, e) -> {throw e;};
 	}
 
 	/** Gets the key function passed to the constructor.
@@ -35,12 +45,53 @@ public class PluginRegistry<T> {
 		return keyFunction;
 	}
 
+	/** Sets the handler of the errors that occur when a {@link #registerLazy(String, Supplier) lazily registered} plugin is instantiated.
+	 * <br>By default, the exception is thrown by the {@link #get(String)} method that triggered the plugin instantiation.
+	 * @param failureHandler A consumer that receives the key of the plugin and the exception thrown by its factory.
+	 * If the consumer does not throw an exception, {@link #get(String)} returns null.
+	 * @throws IllegalArgumentException if failureHandler is null
+	 */
+	public void setFailureHandler(BiConsumer<String, RuntimeException> failureHandler) {
+		if (failureHandler==null) {
+			throw new IllegalArgumentException();
+		}
+		this.failureHandler = failureHandler;
+	}
+
+	/** Gets the handler of the errors that occur when a lazily registered plugin is instantiated.
+	 * @return a BiConsumer
+	 * @see #setFailureHandler(BiConsumer)
+	 */
+	public BiConsumer<String, RuntimeException> getFailureHandler() {
+		return failureHandler;
+	}
+
 	/** Register a plugin.
 	 * @param plugin The plugin to register.
 	 * @return The plugin previously registered for the same key. Null if no plugin was registered for that key.
 	 */
 	public T register(T plugin) {
-		return pluginsMap.put(keyFunction.apply(plugin), plugin);
+		final String key = keyFunction.apply(plugin);
+		lazyMap.remove(key);
+		return pluginsMap.put(key, plugin);
+	}
+
+	/** Registers a plugin that will be instantiated the first time it is requested.
+	 * <br>The plugin is instantiated at most once, by the first {@link #get(String)} call with <i>key</i>. If the factory fails,
+	 * the exception is sent to the {@link #setFailureHandler(BiConsumer) failure handler} and the plugin is unregistered.
+	 * <br>A {@link com.fathzer.plugin.loader.PluginProvider} returned by {@link com.fathzer.plugin.loader.PluginLoader#getProviders(Object, Class)}
+	 * can be used as factory, in such a case, even the plugin class is not loaded until the plugin is requested.
+	 * <br>Please note that the key function is not applied to the instantiated plugin.
+	 * @param key The plugin's key
+	 * @param factory The factory that will create the plugin.
+	 * @throws IllegalArgumentException if key or factory is null
+	 */
+	public void registerLazy(String key, Supplier<? extends T> factory) {
+		if (key==null || factory==null) {
+			throw new IllegalArgumentException();
+		}
+		pluginsMap.remove(key);
+		lazyMap.put(key, factory);
 	}
 	
 	/** Register a plugins collection.
@@ -61,19 +112,60 @@ public class PluginRegistry<T> {
 	 * @return The plugin that was registered with that key. Null if the key is unknown.
 	 */
 	public T unregister(String key) {
+		lazyMap.remove(key);
 		return pluginsMap.remove(key);
 	}
 	
 	/** Gets a plugin by its key.
+	 * <br>If the plugin was {@link #registerLazy(String, Supplier) lazily registered} and is not yet instantiated, it is instantiated.
 	 * @param key The plugin's key
-	 * @return The plugin or null if the plugin does not exists.
+	 * @return The plugin or null if the plugin does not exists (or its lazy instantiation failed).
 	 */
 	public T get(String key) {
-		return pluginsMap.get(key);
+		final T result = pluginsMap.get(key);
+		if (result!=null || lazyMap.isEmpty()) {
+			return result;
+		}
+		final Supplier<? extends T> factory = lazyMap.remove(key);
+		if (factory==null) {
+			return null;
+		}
+		final T plugin = instantiate(key, factory);
+		if (plugin!=null) {
+			pluginsMap.put(key, plugin);
+		}
+		return plugin;
+	}
+
+	/** Instantiates a lazily registered plugin.
+	 * @param key The plugin's key
+	 * @param factory The plugin's factory
+	 * @return The plugin or null if the factory failed and the failure handler did not throw any exception
+	 */
+	protected T instantiate(String key, Supplier<? extends T> factory) {
+		try {
+			final T result = factory.get();
+			if (result==null) {
+				throw new IllegalStateException("Factory of "+key+" returned null");
+			}
+			return result;
+		} catch (RuntimeException e) {
+			failureHandler.accept(key, e);
+			return null;
+		}
+	}
+
+	/** Gets the keys of the lazily registered plugins that are not yet instantiated.
+	 * @return An unmodifiable set. Please note the returned set will reflect changes in this registry.
+	 */
+	public Set<String> getUninstantiated() {
+		return Collections.unmodifiableSet(lazyMap.keySet());
 	}
 	
 	/** Gets all available plugins.
+	 * <br>Lazily registered plugins that are not yet instantiated are not returned.
 	 * @return An unmodifiable map. Please note the returned map will reflect changes in this registry. If a plugin is added, it will appear in the returned map.
+	 * @see #getUninstantiated()
 	 */
 	public Map<String, T> getRegistered() {
 		return Collections.unmodifiableMap(pluginsMap);
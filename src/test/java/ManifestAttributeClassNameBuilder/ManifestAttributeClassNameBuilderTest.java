@@ -7,6 +7,7 @@ import static com.fathzer.plugin.loader.Constants.*;
 import java.io.IOException;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 
 import org.junit.jupiter.api.Test;
@@ -21,6 +22,9 @@ class ManifestAttributeClassNameBuilderTest {
 		assertTrue(builder.get(EMPTY_FILE, getClass()).isEmpty());
 		assertTrue(builder.get(EMPTY_MANIFEST, getClass()).isEmpty());
 		assertEquals(new HashSet<>(Arrays.asList("com.fathzer.plugin.loader.test.Plugin","another")), new ManifestAttributeClassNameBuilder("Strange-names").get(OK_FILE, getClass()));
+		assertEquals(Collections.singletonMap(getClass(), new HashSet<>(Arrays.asList("com.fathzer.plugin.loader.test.Plugin","another"))),
+				new ManifestAttributeClassNameBuilder("Strange-names").getAll(OK_FILE, Arrays.asList(getClass(), getClass())));
+		assertTrue(builder.getAll(OK_FILE, Collections.emptyList()).isEmpty());
 		assertThrows(IOException.class, () -> builder.get(KO_FILE, getClass()).isEmpty());
 		assertThrows(IOException.class, () -> builder.get(Paths.get("src/test/resources/missing.jar"), getClass()));
 	}
@@ -0,0 +1,62 @@
+package com.fathzer.plugin.loader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+
+import com.fathzer.plugin.loader.classloader.MySupplier;
+
+class CachedInstanceBuilderTest {
+	public abstract static class AbstractPlugin {
+		public AbstractPlugin() {
+			super();
+		}
+	}
+	
+	static class NotPublicPlugin {
+		public NotPublicPlugin() {
+			super();
+		}
+	}
+	
+	public static class FailingPlugin {
+		public FailingPlugin() {
+			throw new IllegalStateException("failed");
+		}
+	}
+	
+	public static class ArgPlugin {
+		public ArgPlugin(String arg) {
+			super();
+		}
+	}
+
+	@Test
+	void test() throws Exception {
+		final CachedInstanceBuilder builder = CachedInstanceBuilder.INSTANCE;
+		final MySupplier plugin = builder.get(MySupplier.class);
+		assertEquals("hi", plugin.get());
+		assertNotSame(plugin, builder.get(MySupplier.class));
+		
+		final Callable<MySupplier> factory = builder.getFactory(MySupplier.class);
+		assertSame(factory, builder.getFactory(MySupplier.class));
+		assertEquals(MySupplier.class, factory.call().getClass());
+		
+		// Test exceptions are the same as the default builder
+		assertSameException(InstantiationException.class, AbstractPlugin.class);
+		assertSameException(IllegalAccessException.class, NotPublicPlugin.class);
+		assertSameException(NoSuchMethodException.class, ArgPlugin.class);
+		assertSameException(NoSuchMethodException.class, Supplier.class);
+		final Exception e = assertSameException(InvocationTargetException.class, FailingPlugin.class);
+		assertTrue(e.getCause() instanceof IllegalStateException);
+	}
+
+	private Exception assertSameException(Class<? extends Exception> expected, Class<?> pluginClass) {
+		assertThrows(expected, () -> InstanceBuilder.DEFAULT.get(pluginClass));
+		return assertThrows(expected, () -> CachedInstanceBuilder.INSTANCE.get(pluginClass));
+	}
+}
@@ -0,0 +1,10 @@
+package com.fathzer.plugin.loader;
+
+/** A factory similar to the ones generated by plugin-loader-index-processor.
+ */
+public final class IndexedPlugin$$PluginFactory implements java.util.function.Supplier<IndexedPlugin> {
+	@Override
+	public IndexedPlugin get() {
+		return new IndexedPlugin("factory");
+	}
+}
@@ -0,0 +1,20 @@
+package com.fathzer.plugin.loader;
+
+import java.util.function.Supplier;
+
+public class IndexedPlugin implements Supplier<String> {
+	private final String content;
+	
+	public IndexedPlugin() {
+		this("reflection");
+	}
+
+	IndexedPlugin(String content) {
+		this.content = content;
+	}
+
+	@Override
+	public String get() {
+		return content;
+	}
+}
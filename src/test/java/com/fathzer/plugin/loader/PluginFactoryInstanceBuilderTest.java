@@ -0,0 +1,24 @@
+package com.fathzer.plugin.loader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import com.fathzer.plugin.loader.classloader.MySupplier;
+
+class PluginFactoryInstanceBuilderTest {
+
+	@Test
+	void test() throws Exception {
+		final PluginFactoryInstanceBuilder builder = PluginFactoryInstanceBuilder.INSTANCE;
+		// Test the factory is used
+		final IndexedPlugin plugin = builder.get(IndexedPlugin.class);
+		assertEquals("factory", plugin.get());
+		assertNotSame(plugin, builder.get(IndexedPlugin.class));
+		assertEquals("reflection", InstanceBuilder.DEFAULT.get(IndexedPlugin.class).get());
+		
+		// Test fall back when there's no factory
+		assertEquals("hi", builder.get(MySupplier.class).get());
+		assertThrows(NoSuchMethodException.class, () -> builder.get(Runnable.class));
+	}
+}
@@ -0,0 +1,42 @@
+package com.fathzer.plugin.loader.jar;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static com.fathzer.plugin.loader.Constants.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ClassDataSharingRecorderTest {
+
+	@SuppressWarnings("rawtypes")
+	@Test
+	void test(@TempDir Path dir) throws IOException {
+		try (ClassDataSharingRecorder recorder = new ClassDataSharingRecorder()) {
+			final JarPluginLoader loader = new JarPluginLoader().withClassLoaderPool(recorder);
+			assertTrue(recorder.getRecordedClasses().isEmpty());
+			final List<Supplier> plugins = loader.getPlugins(OK_FILE, Supplier.class);
+			assertEquals(1, plugins.size());
+			// Loading the same plugins again does not record them twice
+			loader.getPlugins(OK_FILE, Supplier.class);
+			final Map<Path, List<String>> recorded = recorder.getRecordedClasses();
+			assertEquals(Collections.singletonMap(OK_FILE.toAbsolutePath().normalize(), Collections.singletonList("com.fathzer.plugin.loader.test.Plugin")), recorded);
+
+			final Path classList = dir.resolve("classes.lst");
+			recorder.writeClassList(classList);
+			assertEquals(Arrays.asList("java/lang/Object id: 1", "java/util/function/Supplier id: 2",
+					"com/fathzer/plugin/loader/test/Plugin id: 3 super: 1 interfaces: 2 source: "+OK_FILE.toAbsolutePath().normalize()), Files.readAllLines(classList));
+		}
+		final Path archive = Paths.get("plugins.jsa");
+		assertEquals(Collections.singletonList("-XX:SharedArchiveFile="+archive.toAbsolutePath()), ClassDataSharingRecorder.getRuntimeOptions(archive));
+	}
+}
@@ -0,0 +1,131 @@
+package com.fathzer.plugin.loader.jar;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static com.fathzer.plugin.loader.Constants.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fathzer.plugin.loader.PluginInstantiationException;
+import com.fathzer.plugin.loader.test.support.SyntheticJarBuilder;
+import com.fathzer.plugin.loader.test.support.SyntheticJarBuilder.BrokenEntry;
+import com.fathzer.plugin.loader.utils.ConcurrentPluginRegistry.Generation;
+import com.fathzer.plugin.loader.utils.FileUtils;
+
+class EvictingPluginRegistryTest {
+	private static class TestPool extends JarClassLoaderPool {
+		private final List<ClassLoader> closed = Collections.synchronizedList(new ArrayList<>());
+
+		@Override
+		protected ClassLoader create(Path jar) throws IOException {
+			return new URLClassLoader(new URL[] {FileUtils.getURL(jar)}) {
+				@Override
+				public void close() throws IOException {
+					closed.add(this);
+					super.close();
+				}
+			};
+		}
+	}
+
+	/** Gets the name of the jar that contains a plugin. */
+	@SuppressWarnings("rawtypes")
+	private static String getJarName(Supplier plugin) {
+		return new File(((URLClassLoader)plugin.getClass().getClassLoader()).getURLs()[0].getPath()).getName();
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Test
+	void test(@TempDir Path dir) throws Exception {
+		final Path a = Files.copy(OK_FILE, dir.resolve("a.jar"));
+		final Path b = Files.copy(OK_FILE, dir.resolve("b.jar"));
+		final TestPool pool = new TestPool();
+		final EvictingPluginRegistry<Supplier> registry = new EvictingPluginRegistry<>(EvictingPluginRegistryTest::getJarName, new JarPluginLoader().withClassLoaderPool(pool), Supplier.class);
+		registry.setMaxLoadedJars(1);
+
+		assertEquals(Collections.singleton("a.jar"), registry.registerJar(a));
+		final Supplier first = registry.get("a.jar");
+		assertEquals("a.jar", getJarName(first));
+		assertEquals(Collections.singleton(a.toAbsolutePath().normalize()), registry.getLoadedJars());
+
+		// Loading b evicts the least recently used jar
+		assertEquals(Collections.singleton("b.jar"), registry.registerJar(b));
+		assertEquals(Collections.singleton(b.toAbsolutePath().normalize()), registry.getLoadedJars());
+		assertEquals(1, pool.closed.size());
+		assertEquals(-1, pool.getReferenceCount(a));
+		assertEquals(new HashSet<>(Arrays.asList("a.jar", "b.jar")), registry.getUninstantiated());
+
+		// Evicted plugins are transparently reloaded
+		final Supplier reloaded = registry.get("a.jar");
+		assertNotNull(reloaded);
+		assertNotSame(first.getClass(), reloaded.getClass());
+		assertEquals(Collections.singleton(a.toAbsolutePath().normalize()), registry.getLoadedJars());
+		assertSame(reloaded, registry.get("a.jar"));
+		assertEquals(2, pool.closed.size());
+
+		// Class loaders are released once the generations that can contain evicted plugins are released
+		try (Generation<Supplier> generation = registry.acquire()) {
+			assertTrue(registry.evict(a));
+			assertFalse(registry.evict(a));
+			assertEquals(2, pool.closed.size());
+			assertSame(reloaded, generation.get("a.jar"));
+		}
+		assertEquals(3, pool.closed.size());
+		assertTrue(registry.getLoadedJars().isEmpty());
+
+		// Idle jars
+		registry.setMaxLoadedJars(10);
+		assertNotNull(registry.get("a.jar"));
+		assertNotNull(registry.get("b.jar"));
+		assertEquals(0, registry.evictIdle());
+		registry.setIdleTimeout(0, TimeUnit.MILLISECONDS);
+		assertEquals(2, registry.evictIdle());
+		assertTrue(registry.getLoadedJars().isEmpty());
+
+		// Unregistered plugins are not registered again when their jar is evicted
+		assertNotNull(registry.get("a.jar"));
+		assertNotNull(registry.unregister("a.jar"));
+		assertTrue(registry.evict(a));
+		assertNull(registry.get("a.jar"));
+		assertEquals(Collections.singleton("b.jar"), registry.getUninstantiated());
+
+		assertThrows(IOException.class, () -> registry.registerJar(dir.resolve("missing.jar")));
+		assertThrows(IllegalArgumentException.class, () -> registry.setMaxLoadedJars(0));
+		assertThrows(IllegalArgumentException.class, () -> new EvictingPluginRegistry<>(EvictingPluginRegistryTest::getJarName, null, Supplier.class));
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Test
+	void testNoPluginInstantiated(@TempDir Path dir) throws Exception {
+		final Path broken = new SyntheticJarBuilder().withClassCount(0).withBrokenEntry(BrokenEntry.NOT_A_PLUGIN)
+				.withBrokenEntry(BrokenEntry.WRONG_CONSTRUCTOR).build(dir.resolve("broken.jar"));
+		final TestPool pool = new TestPool();
+		final JarPluginLoader loader = new JarPluginLoader().withClassLoaderPool(pool);
+		final EvictingPluginRegistry<Supplier> registry = new EvictingPluginRegistry<>(EvictingPluginRegistryTest::getJarName, loader, Supplier.class);
+
+		// The class loader of a jar whose plugins can't be instantiated is not referenced anymore
+		assertThrows(PluginInstantiationException.class, () -> registry.registerJar(broken));
+		assertEquals(0, pool.getReferenceCount(broken));
+		loader.withExceptionConsumer(e -> {});
+		assertTrue(registry.registerJar(broken).isEmpty());
+		assertEquals(0, pool.getReferenceCount(broken));
+		// The unreferenced class loader is closed when the jar is evicted
+		assertTrue(registry.evict(broken));
+		assertEquals(-1, pool.getReferenceCount(broken));
+		assertEquals(1, pool.closed.size());
+	}
+}
@@ -0,0 +1,195 @@
+package com.fathzer.plugin.loader.jar;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static com.fathzer.plugin.loader.Constants.*;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fathzer.plugin.loader.PluginInstantiationException;
+import com.fathzer.plugin.loader.test.support.SyntheticJarBuilder;
+import com.fathzer.plugin.loader.test.support.SyntheticJarBuilder.BrokenEntry;
+import com.fathzer.plugin.loader.utils.FileUtils;
+
+class JarClassLoaderPoolTest {
+	private static class TestPool extends JarClassLoaderPool {
+		private final List<ClassLoader> closed = new ArrayList<>();
+		
+		@Override
+		protected ClassLoader create(Path jar) throws IOException {
+			return new URLClassLoader(new URL[] {FileUtils.getURL(jar)}) {
+				@Override
+				public void close() throws IOException {
+					closed.add(this);
+					super.close();
+				}
+			};
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Test
+	void test(@TempDir Path dir) throws IOException {
+		final Path jar = dir.resolve("plugin.jar");
+		Files.copy(OK_FILE, jar);
+		final TestPool pool = new TestPool();
+		final JarPluginLoader loader = new JarPluginLoader().withClassLoaderPool(pool);
+		assertSame(pool, loader.getClassLoaderPool());
+		
+		// Test the same class loader is used for all plugins of the jar
+		final List<Supplier> plugins = loader.getPlugins(jar, Supplier.class);
+		final List<Supplier> otherPlugins = loader.getPlugins(jar, Supplier.class);
+		assertEquals(1, plugins.size());
+		assertSame(plugins.get(0).getClass(), otherPlugins.get(0).getClass());
+		final ClassLoader classLoader = plugins.get(0).getClass().getClassLoader();
+		assertEquals(1, pool.size());
+		assertEquals(2, pool.getReferenceCount(jar));
+		assertEquals(-1, pool.getReferenceCount(OK_FILE));
+		
+		// Test no class loader is acquired when no plugin is found
+		assertTrue(loader.getPlugins(jar, Runnable.class).isEmpty());
+		assertEquals(2, pool.getReferenceCount(jar));
+		
+		// Test release
+		assertFalse(pool.release(classLoader));
+		assertEquals(1, pool.getReferenceCount(jar));
+		
+		// Test a modified jar is loaded in a new class loader and previous one is closed when no more referenced
+		final FileTime lastModified = Files.getLastModifiedTime(jar);
+		Files.copy(OK_FILE, jar, StandardCopyOption.REPLACE_EXISTING);
+		Files.setLastModifiedTime(jar, FileTime.fromMillis(lastModified.toMillis()+1000));
+		final List<Supplier> newPlugins = loader.getPlugins(jar, Supplier.class);
+		assertNotSame(plugins.get(0).getClass(), newPlugins.get(0).getClass());
+		assertEquals(1, pool.size());
+		assertEquals(1, pool.getReferenceCount(jar));
+		assertTrue(pool.closed.isEmpty());
+		assertTrue(pool.release(classLoader));
+		assertEquals(1, pool.closed.size());
+		assertThrows(IllegalArgumentException.class, () -> pool.release(classLoader));
+		
+		// Test evict
+		final ClassLoader newClassLoader = newPlugins.get(0).getClass().getClassLoader();
+		assertTrue(pool.evict(jar));
+		assertFalse(pool.evict(jar));
+		assertEquals(0, pool.size());
+		assertEquals(1, pool.closed.size());
+		assertTrue(pool.release(newClassLoader));
+		assertEquals(2, pool.closed.size());
+		
+		// Test evict of an unreferenced class loader closes it immediately
+		pool.release(pool.acquire(jar));
+		assertEquals(1, pool.size());
+		assertTrue(pool.evict(jar));
+		assertEquals(3, pool.closed.size());
+		
+		// Test close
+		pool.acquire(jar);
+		pool.acquire(OK_FILE);
+		pool.close();
+		assertEquals(0, pool.size());
+		assertEquals(5, pool.closed.size());
+		
+		// Test missing file
+		assertThrows(IOException.class, () -> pool.acquire(dir.resolve("missing.jar")));
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Test
+	void testNoPluginInstantiated(@TempDir Path dir) throws IOException {
+		final Path jar = new SyntheticJarBuilder().withClassCount(0).withBrokenEntry(BrokenEntry.NOT_A_PLUGIN)
+				.withBrokenEntry(BrokenEntry.WRONG_CONSTRUCTOR).build(dir.resolve("broken.jar"));
+		final TestPool pool = new TestPool();
+		final JarPluginLoader loader = new JarPluginLoader().withClassLoaderPool(pool);
+		final List<PluginInstantiationException> errors = new ArrayList<>();
+		loader.withExceptionConsumer(errors::add);
+
+		// The class loader is released when every instantiation fails
+		assertTrue(loader.getPlugins(jar, Supplier.class).isEmpty());
+		assertEquals(2, errors.size());
+		assertEquals(0, pool.getReferenceCount(jar));
+		assertTrue(loader.getPlugins(jar, Collections.singleton(Supplier.class)).get(Supplier.class).isEmpty());
+		assertEquals(0, pool.getReferenceCount(jar));
+		// or when the exception consumer throws an exception
+		loader.withExceptionConsumer(e -> {throw e;});
+		assertThrows(PluginInstantiationException.class, () -> loader.getPlugins(jar, Supplier.class));
+		assertEquals(0, pool.getReferenceCount(jar));
+		// The class loader of returned plugins is not released
+		final List<Supplier> plugins = loader.getPlugins(OK_FILE, Supplier.class);
+		assertEquals(1, plugins.size());
+		assertEquals(1, pool.getReferenceCount(OK_FILE));
+
+		// Without pool, the class loader is closed
+		final List<ClassLoader> released = new ArrayList<>();
+		final JarPluginLoader noPoolLoader = new JarPluginLoader() {
+			@Override
+			protected void releaseClassLoader(Path jarFile, ClassLoader classLoader) {
+				released.add(classLoader);
+				super.releaseClassLoader(jarFile, classLoader);
+			}
+		};
+		noPoolLoader.withExceptionConsumer(e -> {});
+		assertTrue(noPoolLoader.getPlugins(jar, Supplier.class).isEmpty());
+		assertEquals(1, released.size());
+		// A closed URLClassLoader does not find resources anymore
+		assertNull(((URLClassLoader)released.get(0)).findResource(SyntheticJarBuilder.SERVICES_FILE));
+		assertEquals(1, noPoolLoader.getPlugins(OK_FILE, Supplier.class).size());
+		assertEquals(1, released.size());
+	}
+
+	@Test
+	void testGetAllPluginsFailure(@TempDir Path dir) throws Exception {
+		final List<Path> jars = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			jars.add(new SyntheticJarBuilder().withPackageName("p"+i).build(dir.resolve("plugin"+i+".jar")));
+		}
+		final Path broken = new SyntheticJarBuilder().withPackageName("broken").withBrokenEntry(BrokenEntry.WRONG_CONSTRUCTOR)
+				.build(dir.resolve("broken.jar"));
+		final TestPool pool = new TestPool();
+		final JarPluginLoader loader = new JarPluginLoader().withClassLoaderPool(pool);
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			loader.withExecutor(executor);
+			// A source that can't be read
+			final List<Path> sources = new ArrayList<>(jars);
+			sources.add(4, dir.resolve("missing.jar"));
+			assertThrows(IOException.class, () -> loader.getAllPlugins(sources, Supplier.class));
+			assertNoReference(pool, jars);
+
+			// A plugin that can't be instantiated
+			sources.set(4, broken);
+			assertThrows(PluginInstantiationException.class, () -> loader.getAllPlugins(sources, Supplier.class));
+			assertNoReference(pool, jars);
+			assertEquals(0, pool.getReferenceCount(broken));
+
+			// The class loaders of the returned plugins are kept
+			loader.withExceptionConsumer(e -> {});
+			assertEquals(jars.size()+1, loader.getAllPlugins(sources, Supplier.class).size());
+			for (Path jar : jars) {
+				assertEquals(1, pool.getReferenceCount(jar));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static void assertNoReference(JarClassLoaderPool pool, List<Path> jars) {
+		for (Path jar : jars) {
+			// -1 if the source was skipped
+			assertTrue(pool.getReferenceCount(jar)<=0, jar+" is still referenced");
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package com.fathzer.plugin.loader.jar;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static com.fathzer.plugin.loader.Constants.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fathzer.plugin.loader.utils.PluginRegistry;
+
+class JarFolderWatcherTest {
+	private static final String PLUGIN_CLASS = "com.fathzer.plugin.loader.test.Plugin";
+
+	@SuppressWarnings("rawtypes")
+	@Test
+	void test(@TempDir Path dir) throws Exception {
+		Files.copy(OK_FILE, dir.resolve("plugin.jar"));
+		Files.copy(EMPTY_FILE, dir.resolve("empty.jar"));
+		final PluginRegistry<Supplier> registry = new PluginRegistry<>(p -> p.getClass().getName());
+		final JarClassLoaderPool pool = new JarClassLoaderPool();
+		final List<Path> errors = Collections.synchronizedList(new ArrayList<>());
+		try (JarFolderWatcher<Supplier> watcher = new JarFolderWatcher<>(dir, new JarPluginLoader().withClassLoaderPool(pool), Supplier.class, registry)) {
+			watcher.setDebounceDelay(50);
+			watcher.setErrorHandler((p, e) -> errors.add(p.getFileName()));
+			watcher.start();
+			assertThrows(IllegalStateException.class, watcher::start);
+			// Existing jars are loaded by start
+			assertEquals(Collections.singleton(PLUGIN_CLASS), registry.getRegistered().keySet());
+			assertEquals(1, pool.getReferenceCount(dir.resolve("plugin.jar")));
+
+			// Remove the jar
+			Files.delete(dir.resolve("plugin.jar"));
+			waitFor(() -> isEmpty(registry));
+			assertEquals(-1, pool.getReferenceCount(dir.resolve("plugin.jar")));
+
+			// Add a jar
+			Files.copy(OK_FILE, dir.resolve("other.jar"));
+			waitFor(() -> !isEmpty(registry));
+			assertEquals(1, pool.getReferenceCount(dir.resolve("other.jar")));
+
+			// Add an invalid jar
+			Files.copy(KO_FILE, dir.resolve("wrong.jar"));
+			waitFor(() -> !errors.isEmpty());
+			assertTrue(errors.contains(dir.resolve("wrong.jar").getFileName()));
+			assertFalse(isEmpty(registry));
+		}
+		assertThrows(IllegalArgumentException.class, () -> new JarFolderWatcher<>(dir, null, Supplier.class, registry));
+	}
+
+	private static boolean isEmpty(PluginRegistry<?> registry) {
+		synchronized (registry) {
+			return registry.getRegistered().isEmpty();
+		}
+	}
+
+	private static void waitFor(BooleanSupplier condition) throws InterruptedException, IOException {
+		// Some WatchService implementations poll the file system every 10s
+		final long end = System.currentTimeMillis()+30000;
+		while (!condition.getAsBoolean()) {
+			if (System.currentTimeMillis()>end) {
+				fail("Timeout");
+			}
+			Thread.sleep(20);
+		}
+	}
+}
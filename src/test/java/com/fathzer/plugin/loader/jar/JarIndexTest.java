@@ -0,0 +1,132 @@
+package com.fathzer.plugin.loader.jar;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static com.fathzer.plugin.loader.Constants.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JarIndexTest {
+	private static final String PLUGIN_CLASS_NAME = "com.fathzer.plugin.loader.test.Plugin";
+
+	@Test
+	void test(@TempDir Path dir) throws IOException {
+		final Path indexFile = dir.resolve("index");
+		assertThrows(IllegalArgumentException.class, () -> new JarIndex(null));
+		final JarIndex index = new JarIndex(indexFile);
+		assertEquals(0, index.size());
+		assertFalse(index.isModified());
+		
+		final IndexedClassNameBuilder builder = new IndexedClassNameBuilder(index);
+		assertEquals(ServiceClassNameBuilder.INSTANCE.get(OK_FILE, Supplier.class), builder.get(OK_FILE, Supplier.class));
+		assertTrue(builder.get(OK_FILE, Function.class).isEmpty());
+		assertEquals(new HashSet<>(Arrays.asList(PLUGIN_CLASS_NAME,"another")), new IndexedClassNameBuilder(index, "Strange-names").get(OK_FILE, Supplier.class));
+		assertTrue(new IndexedClassNameBuilder(index, "Unknown-Attribute").get(OK_FILE, Supplier.class).isEmpty());
+		assertTrue(builder.get(EMPTY_MANIFEST, Supplier.class).isEmpty());
+		assertEquals(2, index.size());
+		assertTrue(index.isModified());
+		assertThrows(IOException.class, () -> builder.get(KO_FILE, Supplier.class));
+		assertThrows(IllegalArgumentException.class, () -> new IndexedClassNameBuilder(null));
+		
+		index.save();
+		assertFalse(index.isModified());
+		assertTrue(Files.isRegularFile(indexFile));
+		
+		// Test saved index is reloaded and not modified by reading unchanged jars
+		final JarIndex reloaded = new JarIndex(indexFile);
+		assertEquals(2, reloaded.size());
+		assertEquals(Collections.singleton(Supplier.class.getName()), reloaded.get(OK_FILE).getServiceNames());
+		assertEquals(Collections.singleton(PLUGIN_CLASS_NAME), reloaded.get(OK_FILE).getClassNames(Supplier.class.getName()));
+		assertEquals(PLUGIN_CLASS_NAME, reloaded.get(OK_FILE).getManifestAttribute("Plugin-Class"));
+		assertFalse(reloaded.isModified());
+	}
+	
+	@Test
+	void testChangedJar(@TempDir Path dir) throws IOException {
+		final Path jar = dir.resolve("plugin.jar");
+		Files.copy(OK_FILE, jar);
+		final JarIndex index = new JarIndex(dir.resolve("index"));
+		final IndexedClassNameBuilder builder = new IndexedClassNameBuilder(index);
+		assertEquals(Collections.singleton(PLUGIN_CLASS_NAME), builder.get(jar, Supplier.class));
+		
+		// Replace the jar with a jar without service, keeping the last modified time
+		final FileTime lastModified = Files.getLastModifiedTime(jar);
+		Files.copy(EMPTY_MANIFEST, jar, StandardCopyOption.REPLACE_EXISTING);
+		Files.setLastModifiedTime(jar, lastModified);
+		assertTrue(builder.get(jar, Supplier.class).isEmpty());
+		
+		// Test an entry without hash is refreshed when hash check is enabled
+		index.setHashCheck(true);
+		assertTrue(builder.get(jar, Supplier.class).isEmpty());
+		
+		// Test prune
+		assertFalse(index.prune());
+		Files.delete(jar);
+		assertTrue(index.prune());
+		assertEquals(0, index.size());
+	}
+	
+	@Test
+	void testCorruptedIndex(@TempDir Path dir) throws IOException {
+		final Path indexFile = dir.resolve("index");
+		final JarIndex index = new JarIndex(indexFile);
+		index.get(OK_FILE);
+		index.save();
+		
+		final byte[] bytes = Files.readAllBytes(indexFile);
+		bytes[bytes.length/2] ^= 1;
+		Files.write(indexFile, bytes);
+		JarIndex corrupted = new JarIndex(indexFile);
+		assertEquals(0, corrupted.size());
+		assertTrue(corrupted.isModified());
+		
+		Files.write(indexFile, new byte[] {1,2,3});
+		corrupted = new JarIndex(indexFile);
+		assertEquals(0, corrupted.size());
+		// Test index is rebuilt
+		assertEquals(Collections.singleton(PLUGIN_CLASS_NAME), new IndexedClassNameBuilder(corrupted).get(OK_FILE, Supplier.class));
+		corrupted.save();
+		assertEquals(1, new JarIndex(indexFile).size());
+	}
+	
+	@Test
+	void testLongManifestAttribute(@TempDir Path dir) throws IOException {
+		// Attributes like OSGi's Export-Package can be longer than 64KB
+		final StringBuilder value = new StringBuilder();
+		while (value.length()<100000) {
+			value.append("com.fathzer.plugin.loader.package").append(value.length()).append("\u00e9,");
+		}
+		final Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().putValue("Export-Package", value.toString());
+		final Path jar = dir.resolve("long.jar");
+		try (OutputStream out = new JarOutputStream(Files.newOutputStream(jar), manifest)) {
+			// Only the manifest is needed
+		}
+		final Path indexFile = dir.resolve("index");
+		final JarIndex index = new JarIndex(indexFile);
+		assertEquals(value.toString(), index.get(jar).getManifestAttribute("Export-Package"));
+		index.save();
+		
+		final JarIndex reloaded = new JarIndex(indexFile);
+		assertEquals(1, reloaded.size());
+		assertFalse(reloaded.isModified());
+		assertEquals(value.toString(), reloaded.get(jar).getManifestAttribute("Export-Package"));
+		assertFalse(reloaded.isModified());
+	}
+}
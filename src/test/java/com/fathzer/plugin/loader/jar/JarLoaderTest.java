@@ -7,16 +7,23 @@ import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.Test;
 
 import com.fathzer.plugin.loader.PluginLoader;
 import com.fathzer.plugin.loader.InstanceBuilder;
 import com.fathzer.plugin.loader.PluginInstantiationException;
+import com.fathzer.plugin.loader.PluginProvider;
 
 class JarLoaderTest {
 
@@ -78,6 +85,117 @@ class JarLoaderTest {
 		assertTrue(loader.getPlugins(OK_FILE, Supplier.class).isEmpty());
 	}
 	
+	@SuppressWarnings("rawtypes")
+	@Test
+	void testGetAllPlugins() throws IOException {
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			final PluginLoader<Path> loader = new JarPluginLoader().withExecutor(executor);
+			assertThrows(IllegalArgumentException.class, () -> loader.withExecutor(null));
+			assertTrue(loader.getAllPlugins(Collections.emptyList(), Supplier.class).isEmpty());
+			
+			final List<Supplier> plugins = loader.getAllPlugins(Arrays.asList(OK_FILE, EMPTY_FILE, OK_FILE), Supplier.class);
+			assertEquals(2, plugins.size());
+			assertEquals("com.fathzer.plugin.loader.test.Plugin",plugins.get(0).getClass().getCanonicalName());
+			assertNotSame(plugins.get(0).getClass(), plugins.get(1).getClass());
+
+			// Test invalid jar file
+			assertThrows (IOException.class, () -> loader.getAllPlugins(Arrays.asList(OK_FILE, KO_FILE), Supplier.class));
+			
+			// Test exceptions are sent to the consumer, in sources order
+			final List<PluginInstantiationException> ex = new ArrayList<>();
+			loader.withExceptionConsumer(ex::add);
+			loader.withClassNameBuilder((p,c) -> Collections.singleton(p.equals(OK_FILE) ? "com.fathzer.plugin.loader.test.Plugin" : "Unknown"));
+			assertEquals(1, loader.getAllPlugins(Arrays.asList(EMPTY_MANIFEST, OK_FILE, EMPTY_FILE), Supplier.class).size());
+			assertEquals(2, ex.size());
+			
+			// Test default exception consumer
+			loader.withExceptionConsumer(e -> {throw e;});
+			assertThrows(PluginInstantiationException.class, () -> loader.getAllPlugins(Arrays.asList(OK_FILE, EMPTY_FILE), Supplier.class));
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	@SuppressWarnings("rawtypes")
+	@Test
+	void testProviders() throws IOException {
+		final List<String> built = new ArrayList<>();
+		final JarPluginLoader loader = new JarPluginLoader() {
+			@Override
+			protected ClassLoader buildClassLoader(Path jarFile) {
+				built.add(jarFile.toString());
+				return super.buildClassLoader(jarFile);
+			}
+		};
+		loader.withClassNameBuilder((p,c) -> new HashSet<>(Arrays.asList("com.fathzer.plugin.loader.test.Plugin", "Unknown")));
+		
+		// Test nothing is loaded until required
+		List<PluginProvider<Supplier>> providers = loader.getProviders(OK_FILE, Supplier.class).collect(Collectors.toList());
+		assertEquals(2, providers.size());
+		assertEquals(new HashSet<>(Arrays.asList("com.fathzer.plugin.loader.test.Plugin", "Unknown")), providers.stream().map(PluginProvider::getClassName).collect(Collectors.toSet()));
+		assertTrue(built.isEmpty());
+		
+		final PluginProvider<Supplier> provider = providers.stream().filter(p -> !"Unknown".equals(p.getClassName())).findAny().get();
+		assertEquals("com.fathzer.plugin.loader.test.Plugin", provider.type().getCanonicalName());
+		assertEquals(1, built.size());
+		final Supplier plugin = provider.get();
+		assertEquals("Hello", plugin.get());
+		assertNotSame(plugin, provider.get());
+		
+		// Test the class loader is shared by all providers
+		final PluginProvider<Supplier> unknown = providers.stream().filter(p -> "Unknown".equals(p.getClassName())).findAny().get();
+		assertThrows(PluginInstantiationException.class, unknown::type);
+		assertThrows(PluginInstantiationException.class, unknown::get);
+		assertEquals(1, built.size());
+		
+		// Test not assignable class
+		final PluginProvider<Function> notAFunction = loader.getProviders(OK_FILE, Function.class).filter(p -> !"Unknown".equals(p.getClassName())).findAny().get();
+		assertThrows(PluginInstantiationException.class, notAFunction::type);
+		
+		// Test no class loader is built when no class is found
+		built.clear();
+		loader.withClassNameBuilder((p,c) -> Collections.emptySet());
+		assertEquals(0, loader.getProviders(OK_FILE, Supplier.class).count());
+		assertTrue(built.isEmpty());
+	}
+	
+	@Test
+	void testMultipleServices() throws IOException {
+		final List<Path> built = new ArrayList<>();
+		final JarPluginLoader loader = new JarPluginLoader() {
+			@Override
+			protected ClassLoader buildClassLoader(Path jarFile) {
+				built.add(jarFile);
+				return super.buildClassLoader(jarFile);
+			}
+		};
+		final Map<Class<?>, List<?>> plugins = loader.getPlugins(OK_FILE, Arrays.asList(Supplier.class, Function.class));
+		assertEquals(Arrays.asList(Supplier.class, Function.class), new ArrayList<>(plugins.keySet()));
+		assertEquals(1, plugins.get(Supplier.class).size());
+		assertEquals("com.fathzer.plugin.loader.test.Plugin", plugins.get(Supplier.class).get(0).getClass().getCanonicalName());
+		assertTrue(plugins.get(Function.class).isEmpty());
+		assertEquals(1, built.size());
+		
+		// Test with a manifest attribute
+		loader.withClassNameBuilder(new ManifestAttributeClassNameBuilder("Plugin-Class"));
+		final Map<Class<?>, List<?>> manifestPlugins = loader.getPlugins(OK_FILE, Arrays.asList(Supplier.class, Object.class));
+		assertEquals(1, manifestPlugins.get(Supplier.class).size());
+		assertEquals(1, manifestPlugins.get(Object.class).size());
+		assertSame(manifestPlugins.get(Supplier.class).get(0).getClass(), manifestPlugins.get(Object.class).get(0).getClass());
+		assertEquals(2, built.size());
+		
+		// Test exception consumer
+		final List<PluginInstantiationException> ex = new ArrayList<>();
+		loader.withExceptionConsumer(ex::add);
+		final Map<Class<?>, List<?>> withErrors = loader.getPlugins(OK_FILE, Arrays.asList(Supplier.class, Function.class));
+		assertEquals(1, withErrors.get(Supplier.class).size());
+		assertTrue(withErrors.get(Function.class).isEmpty());
+		assertEquals(1, ex.size());
+
+		assertThrows (IOException.class, () -> loader.getPlugins(KO_FILE, Arrays.asList(Supplier.class, Function.class)));
+	}
+	
 	private static class OtherInstanceBuilder<P> implements InstanceBuilder {
 		private final P param;
 		private final Class<P> aClass;
@@ -0,0 +1,129 @@
+package com.fathzer.plugin.loader.jar;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static com.fathzer.plugin.loader.Constants.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fathzer.plugin.loader.PluginInstantiationException;
+import com.fathzer.plugin.loader.test.support.SyntheticJarBuilder;
+import com.fathzer.plugin.loader.test.support.SyntheticJarBuilder.BrokenEntry;
+
+class MappedJarPluginLoaderTest {
+
+	@SuppressWarnings("rawtypes")
+	@Test
+	void test() throws IOException {
+		try (MappedJarPluginLoader loader = new MappedJarPluginLoader()) {
+			final List<Supplier> plugins = loader.getPlugins(OK_FILE, Supplier.class);
+			assertEquals(1, plugins.size());
+			final Class<? extends Supplier> pluginClass = plugins.get(0).getClass();
+			assertEquals("com.fathzer.plugin.loader.test.Plugin", pluginClass.getCanonicalName());
+			assertTrue(pluginClass.getClassLoader() instanceof MappedJarClassLoader);
+			assertNotNull(pluginClass.getPackage());
+			assertEquals(OK_FILE.toUri().toURL(), pluginClass.getProtectionDomain().getCodeSource().getLocation());
+			assertSame(pluginClass, loader.getPlugins(OK_FILE, Supplier.class).get(0).getClass());
+
+			assertTrue(loader.getPlugins(OK_FILE, Function.class).isEmpty());
+			assertTrue(loader.getPlugins(EMPTY_FILE, Supplier.class).isEmpty());
+			assertThrows(IOException.class, () -> loader.getPlugins(KO_FILE, Supplier.class));
+		}
+	}
+
+	@Test
+	void testClassLoader() throws Exception {
+		try (MappedJarClassLoader loader = new MappedJarClassLoader(OK_FILE)) {
+			// Deflated entry
+			try (InputStream in = loader.getEntryInputStream("META-INF/services/java.util.function.Supplier")) {
+				assertNotNull(in);
+				assertTrue(new String(readAll(in), "UTF-8").contains("com.fathzer.plugin.loader.test.Plugin"));
+			}
+			assertNull(loader.getEntryInputStream("unknown"));
+			final URL url = loader.getResource("com/fathzer/plugin/loader/test/Plugin.class");
+			assertNotNull(url);
+			try (InputStream fromUrl = url.openStream(); InputStream fromMapping = loader.getResourceAsStream("com/fathzer/plugin/loader/test/Plugin.class")) {
+				assertArrayEquals(readAll(fromUrl), readAll(fromMapping));
+			}
+			// Resource URLs are read from the mapped file, not through a JarURLConnection that would open the jar again
+			assertEquals("jar:"+OK_FILE.toUri().toURL()+"!/com/fathzer/plugin/loader/test/Plugin.class", url.toString());
+			final URLConnection connection = url.openConnection();
+			assertFalse(connection instanceof JarURLConnection);
+			assertTrue(connection.getContentLengthLong()>0);
+			assertEquals(Collections.singletonList(url), Collections.list(loader.getResources("com/fathzer/plugin/loader/test/Plugin.class")));
+			@SuppressWarnings("rawtypes")
+			final Iterator<Supplier> services = ServiceLoader.load(Supplier.class, loader).iterator();
+			assertEquals("com.fathzer.plugin.loader.test.Plugin", services.next().getClass().getName());
+			assertThrows(ClassNotFoundException.class, () -> loader.loadClass("com.fathzer.Unknown"));
+			final Class<?> pluginClass = loader.loadClass("com.fathzer.plugin.loader.test.Plugin");
+			assertSame(loader, pluginClass.getClassLoader());
+
+			loader.close();
+			assertThrows(IOException.class, () -> loader.getEntryInputStream("META-INF/services/java.util.function.Supplier"));
+			assertNull(loader.getResource("com/fathzer/plugin/loader/test/Plugin.class"));
+			assertThrows(IOException.class, url::openStream);
+			// Already loaded classes are still available
+			assertSame(pluginClass, loader.loadClass("com.fathzer.plugin.loader.test.Plugin"));
+		}
+		// Stored entries only
+		try (MappedJarClassLoader loader = new MappedJarClassLoader(EMPTY_MANIFEST)) {
+			try (InputStream in = loader.getEntryInputStream("META-INF/MANIFEST.MF")) {
+				assertEquals(0, readAll(in).length);
+			}
+		}
+		assertThrows(IOException.class, () -> new MappedJarClassLoader(KO_FILE));
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Test
+	void testSyntheticJars(@TempDir Path dir) throws IOException {
+		final SyntheticJarBuilder builder = new SyntheticJarBuilder().withClassCount(200).withServiceEntryCount(150)
+				.withBrokenEntry(BrokenEntry.UNKNOWN_CLASS).withBrokenEntry(BrokenEntry.NOT_A_PLUGIN).withBrokenEntry(BrokenEntry.WRONG_CONSTRUCTOR)
+				.withMinimumSize(100000);
+		final Path stored = builder.withPackageName("stored").withCompressionLevel(Deflater.NO_COMPRESSION).build(dir.resolve("stored.jar"));
+		final Path deflated = builder.withPackageName("deflated").withCompressionLevel(Deflater.BEST_COMPRESSION).build(dir.resolve("deflated.jar"));
+		for (Path jar : new Path[] {stored, deflated}) {
+			assertTrue(jar.toFile().length()>=100000);
+			final String packageName = jar==stored ? "stored" : "deflated";
+			final Set<String> expected = new HashSet<>(builder.withPackageName(packageName).getClassNames().subList(0, 150));
+			try (MappedJarPluginLoader mappedLoader = new MappedJarPluginLoader()) {
+				for (JarPluginLoader loader : new JarPluginLoader[] {new JarPluginLoader(), mappedLoader}) {
+					final List<PluginInstantiationException> errors = new ArrayList<>();
+					loader.withExceptionConsumer(errors::add);
+					final List<Supplier> plugins = loader.getPlugins(jar, Supplier.class);
+					assertEquals(expected, plugins.stream().map(p -> p.getClass().getName()).collect(Collectors.toSet()));
+					assertEquals(plugins.get(0).getClass().getSimpleName(), plugins.get(0).get());
+					assertEquals(3, errors.size());
+				}
+			}
+		}
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[1024];
+		for (int read = in.read(buffer); read>=0; read = in.read(buffer)) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,48 @@
+package com.fathzer.plugin.loader.jar;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static com.fathzer.plugin.loader.Constants.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PluginIndexClassNameBuilderTest {
+
+	@Test
+	void test(@TempDir Path dir) throws IOException {
+		final PluginIndexClassNameBuilder builder = PluginIndexClassNameBuilder.INSTANCE;
+		final Path jar = dir.resolve("indexed.jar");
+		try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+			out.putNextEntry(new ZipEntry(PluginIndexClassNameBuilder.INDEX_PATH));
+			write(out, "java.util.function.Supplier=com.a.Plugin\n# A comment\njava.util.function.Supplier=com.b.Plugin # Another comment\njava.lang.Runnable=com.c.Plugin\n");
+			// The service definition file should be ignored
+			out.putNextEntry(new ZipEntry("META-INF/services/java.util.function.Supplier"));
+			write(out, "com.d.Plugin");
+		}
+		assertEquals(new HashSet<>(Arrays.asList("com.a.Plugin","com.b.Plugin")), builder.get(jar, Supplier.class));
+		assertEquals(Collections.singleton("com.c.Plugin"), builder.get(jar, Runnable.class));
+		assertTrue(builder.get(jar, Function.class).isEmpty());
+		
+		// Test fall back to service definition files
+		assertEquals(Collections.singleton("com.fathzer.plugin.loader.test.Plugin"), builder.get(OK_FILE, Supplier.class));
+		assertTrue(builder.get(OK_FILE, Function.class).isEmpty());
+		assertThrows(IOException.class, () -> builder.get(KO_FILE, Supplier.class));
+	}
+
+	private void write(OutputStream out, String content) throws IOException {
+		out.write(content.getBytes(StandardCharsets.UTF_8));
+	}
+}
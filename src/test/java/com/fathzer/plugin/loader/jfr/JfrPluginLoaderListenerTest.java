@@ -0,0 +1,68 @@
+package com.fathzer.plugin.loader.jfr;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static com.fathzer.plugin.loader.Constants.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fathzer.plugin.loader.PluginLoaderListener;
+import com.fathzer.plugin.loader.jar.JarPluginLoader;
+import com.fathzer.plugin.loader.utils.PluginLoaderMetrics;
+import com.fathzer.plugin.loader.utils.PluginLoaderMetrics.Phase;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+class JfrPluginLoaderListenerTest {
+	private static final String PREFIX = "com.fathzer.plugin.loader.";
+
+	@SuppressWarnings("rawtypes")
+	@Test
+	void test(@TempDir Path dir) throws IOException {
+		final JarPluginLoader loader = new JarPluginLoader();
+		final PluginLoaderMetrics<Path> metrics = new PluginLoaderMetrics<>();
+		loader.withListener(PluginLoaderListener.of(JfrPluginLoaderListener.INSTANCE, metrics));
+		// No recording is running
+		assertFalse(JfrPluginLoaderListener.INSTANCE.isEnabled());
+		assertEquals(1, loader.getPlugins(OK_FILE, Supplier.class).size());
+		assertEquals(1, metrics.get(OK_FILE, Phase.SCAN).getCount());
+
+		final Path file = dir.resolve("recording.jfr");
+		try (Recording recording = new Recording()) {
+			recording.enable(PREFIX+"PluginsLoaded");
+			recording.enable(PREFIX+"ClassNamesFound");
+			recording.enable(PREFIX+"ClassLoaderBuilt");
+			recording.start();
+			assertTrue(JfrPluginLoaderListener.INSTANCE.isEnabled());
+			assertEquals(1, loader.getPlugins(OK_FILE, Supplier.class).size());
+			recording.stop();
+			recording.dump(file);
+		}
+		// The metrics are still collected while the recording runs
+		assertEquals(2, metrics.get(OK_FILE, Phase.SCAN).getCount());
+		final List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+				.filter(e -> e.getEventType().getName().startsWith(PREFIX)).collect(Collectors.toList());
+		assertEquals(3, events.size());
+		final RecordedEvent loaded = get(events, "PluginsLoaded");
+		assertEquals(OK_FILE.toString(), loaded.getString("source"));
+		assertEquals(Supplier.class.getName(), loaded.getString("pluginClasses"));
+		assertEquals(1, loaded.getInt("pluginCount"));
+		assertTrue(loaded.getDuration("elapsed").toNanos()>0);
+		// Events are recorded at the end of their phase, the duration is only in the elapsed field
+		assertTrue(loaded.getDuration().isZero());
+		assertEquals(1, get(events, "ClassNamesFound").getInt("classCount"));
+		assertNotNull(get(events, "ClassLoaderBuilt").getClass("classLoader"));
+	}
+
+	private static RecordedEvent get(List<RecordedEvent> events, String name) {
+		return events.stream().filter(e -> e.getEventType().getName().equals(PREFIX+name)).findAny().orElseThrow(() -> new AssertionError(name+" not found"));
+	}
+}
@@ -2,8 +2,11 @@ package com.fathzer.plugin.loader.utils;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
 import java.net.ProxySelector;
@@ -13,13 +16,22 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -41,6 +53,25 @@ class AbstractPluginsDownloaderTest {
 	private static final String CUSTOM_HEADER = "myHeader";
 	private static final String REPOSITORY_HEADER_VALUE = "repository";
 	private static final String JAR_HEADER_VALUE = "jar";
+	private static final String SLOW_JAR_PATH_PREFIX = "/plugins/slow";
+	private static volatile CountDownLatch slowGate = new CountDownLatch(0);
+	private static volatile CountDownLatch slowStarted = new CountDownLatch(0);
+	private static final AtomicInteger IN_FLIGHT = new AtomicInteger();
+	private static final AtomicInteger MAX_IN_FLIGHT = new AtomicInteger();
+	private static final AtomicInteger SLOW_REQUESTS = new AtomicInteger();
+	private static final String VERSIONED_JAR_PATH = "/plugins/versioned.jar";
+	private static final String DATED_JAR_PATH = "/plugins/dated.jar";
+	private static final String LAST_MODIFIED = "Wed, 21 Oct 2015 07:28:00 GMT";
+	private static final AtomicInteger VERSION = new AtomicInteger();
+	private static final AtomicInteger NOT_MODIFIED = new AtomicInteger();
+	private static final String CACHED_REPOSITORY_PATH = "/cachedRepository";
+	private static final String INDEX_ETAG = "\"index\"";
+	private static final AtomicInteger INDEX_REQUESTS = new AtomicInteger();
+	private static volatile CountDownLatch indexGate = new CountDownLatch(0);
+	private static final String LARGE_REPOSITORY_PATH = "/largeRepository";
+	private static final int LARGE_REPOSITORY_SIZE = 50000;
+	private static final String FLAKY_JAR_PATH = "/plugins/flaky.jar";
+	private static final AtomicInteger FLAKY_REQUESTS = new AtomicInteger();
 
 	private static class TestPluginDownloader extends AbstractPluginsDownloader {
 		private final Map<String,URI> map;
@@ -56,7 +87,8 @@ class AbstractPluginsDownloaderTest {
 		protected Map<String, URI> getURIMap(InputStream in) throws IOException {
 			final String content = new String(in.readAllBytes(), StandardCharsets.UTF_8);
 			if (REPOSITORY_OK_CONTENT.equals(content)) {
-				return map;
+				// Return a copy, so that changes in map are only visible to the index downloaded after them
+				return new HashMap<>(map);
 			} else {
 				throw new IOException(content);
 			}
@@ -77,13 +109,53 @@ class AbstractPluginsDownloaderTest {
 		}
 	}
 
+	private static class LineIndexDownloader extends AbstractPluginsDownloader {
+		private final AtomicInteger readLines = new AtomicInteger();
+
+		private LineIndexDownloader(URI uri, Path localDirectory) {
+			super(uri, localDirectory);
+		}
+
+		@Override
+		protected Map<String, URI> getURIMap(InputStream in) throws IOException {
+			final Map<String, URI> result = new HashMap<>();
+			parseIndex(in, (k, v) -> {
+				result.put(k, v);
+				return true;
+			});
+			return result;
+		}
+
+		@Override
+		protected void parseIndex(InputStream in, BiPredicate<String, URI> consumer) throws IOException {
+			readLines.set(0);
+			final BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+			for (String line = reader.readLine(); line!=null; line = reader.readLine()) {
+				readLines.incrementAndGet();
+				final int index = line.indexOf('=');
+				if (!consumer.test(line.substring(0, index), getUri().resolve(line.substring(index+1)))) {
+					return;
+				}
+			}
+		}
+	}
+
 	private static MockWebServer server;
+	private static String largeRepository;
 	
 	@BeforeAll
 	static void init() throws IOException {
+		final StringBuilder builder = new StringBuilder(VALID_PLUGIN_KEY+"="+PLUGINS_JAR_URI_PATH+"\n");
+		for (int i = 1; i < LARGE_REPOSITORY_SIZE; i++) {
+			builder.append("key").append(i).append("=/plugins/plugin").append(i).append(".jar\n");
+		}
+		largeRepository = builder.toString();
 		final Dispatcher dispatcher = new Dispatcher() {
 		    @Override
 		    public MockResponse dispatch (RecordedRequest request) throws InterruptedException {
+		        if (request.getPath().startsWith(SLOW_JAR_PATH_PREFIX)) {
+		            return slowJar(request);
+		        }
 		        switch (request.getPath()) {
 		            case REPOSITORY_PATH:
 		                return new MockResponse().setResponseCode(200).setBody(REPOSITORY_OK_CONTENT);
@@ -91,6 +163,32 @@ class AbstractPluginsDownloaderTest {
 		                return new MockResponse().setResponseCode(200).setBody("repositoryKo");
 		            case PLUGINS_JAR_URI_PATH:
 		                return new MockResponse().setResponseCode(200).setBody(FAKE_JAR_FILE_CONTENT);
+		            case FLAKY_JAR_PATH:
+		                // Every other response is corrupted
+		                final boolean corrupted = FLAKY_REQUESTS.incrementAndGet()%2==1;
+		                return new MockResponse().setResponseCode(200).setBody(corrupted ? "A fake jar filE" : FAKE_JAR_FILE_CONTENT);
+		            case LARGE_REPOSITORY_PATH:
+		                return new MockResponse().setResponseCode(200).setBody(largeRepository);
+		            case CACHED_REPOSITORY_PATH:
+		                INDEX_REQUESTS.incrementAndGet();
+		                indexGate.await(5, TimeUnit.SECONDS);
+		                if (INDEX_ETAG.equals(request.getHeader("If-None-Match"))) {
+		                    return new MockResponse().setResponseCode(304).setHeader("ETag", INDEX_ETAG);
+		                }
+		                return new MockResponse().setResponseCode(200).setHeader("ETag", INDEX_ETAG).setBody(REPOSITORY_OK_CONTENT);
+		            case VERSIONED_JAR_PATH:
+		                final String etag = "\"v"+VERSION.get()+"\"";
+		                if (etag.equals(request.getHeader("If-None-Match"))) {
+		                    NOT_MODIFIED.incrementAndGet();
+		                    return new MockResponse().setResponseCode(304).setHeader("ETag", etag);
+		                }
+		                return new MockResponse().setResponseCode(200).setHeader("ETag", etag).setBody(VERSION.get()==1 ? "version 1 is longer than version 2" : "version "+VERSION.get());
+		            case DATED_JAR_PATH:
+		                if (LAST_MODIFIED.equals(request.getHeader("If-Modified-Since"))) {
+		                    NOT_MODIFIED.incrementAndGet();
+		                    return new MockResponse().setResponseCode(304);
+		                }
+		                return new MockResponse().setResponseCode(200).setHeader("Last-Modified", LAST_MODIFIED).setBody(FAKE_JAR_FILE_CONTENT);
 		        }
 		        return new MockResponse().setResponseCode(404);
 		    }
@@ -101,6 +199,19 @@ class AbstractPluginsDownloaderTest {
 		server.start();
 	}
 	
+	private static MockResponse slowJar(RecordedRequest request) throws InterruptedException {
+		SLOW_REQUESTS.incrementAndGet();
+		final int inFlight = IN_FLIGHT.incrementAndGet();
+		MAX_IN_FLIGHT.accumulateAndGet(inFlight, Math::max);
+		slowStarted.countDown();
+		try {
+			slowGate.await(5, TimeUnit.SECONDS);
+			return new MockResponse().setResponseCode(200).setBody(request.getPath());
+		} finally {
+			IN_FLIGHT.decrementAndGet();
+		}
+	}
+	
 	@AfterAll
 	static void cleanUp() throws IOException {
 		server.close();
@@ -192,6 +303,16 @@ class AbstractPluginsDownloaderTest {
 			}
 		};
 		assertEquals(paths, failDownloader.download(VALID_PLUGIN_KEY));
+		// Test an overridden getURIMap is used by download
+		final TestPluginDownloader aliasDownloader = new TestPluginDownloader(uri, dir) {
+			@Override
+			public Map<String, URI> getURIMap() throws IOException {
+				final Map<String, URI> result = new HashMap<>(super.getURIMap());
+				result.put("alias", result.get(VALID_PLUGIN_KEY));
+				return result;
+			}
+		};
+		assertEquals(paths, aliasDownloader.download("alias"));
 		
 		// Test load of a key missing in repository
 		assertThrows(IllegalArgumentException.class, () -> downloader.download("Not in repository"));
@@ -257,6 +378,315 @@ class AbstractPluginsDownloaderTest {
 		assertEquals(1,downloader.download(VALID_PLUGIN_KEY).size());
 	}
 
+	@Test
+	void testConcurrentDownloads(@TempDir Path dir) throws Exception {
+		final int count = 8;
+		final TestPluginDownloader downloader = new TestPluginDownloader(server.url(REPOSITORY_PATH).uri(), dir);
+		final String[] keys = new String[count];
+		for (int i = 0; i < count; i++) {
+			keys[i] = "slow"+i;
+			downloader.map.put(keys[i], downloader.getUri().resolve(SLOW_JAR_PATH_PREFIX+i+".jar"));
+		}
+		assertEquals(1, downloader.getMaxConcurrentDownloads());
+		assertThrows(IllegalArgumentException.class, () -> downloader.setMaxConcurrentDownloads(0));
+		downloader.setMaxConcurrentDownloads(3);
+		MAX_IN_FLIGHT.set(0);
+		SLOW_REQUESTS.set(0);
+		// The server holds the responses until 3 requests are received
+		slowGate = new CountDownLatch(1);
+		slowStarted = new CountDownLatch(3);
+		final CompletableFuture<Collection<Path>> result;
+		try {
+			result = CompletableFuture.supplyAsync(() -> {
+				try {
+					return downloader.download(keys);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			assertTrue(slowStarted.await(5, TimeUnit.SECONDS));
+			// No more than 3 requests are sent while they are pending
+			assertEquals(3, SLOW_REQUESTS.get());
+		} finally {
+			slowGate.countDown();
+		}
+		final Collection<Path> paths = result.get(5, TimeUnit.SECONDS);
+		assertEquals(count, paths.size());
+		for (int i = 0; i < count; i++) {
+			final Path path = dir.resolve("slow"+i+".jar");
+			assertTrue(paths.contains(path));
+			assertEquals(SLOW_JAR_PATH_PREFIX+i+".jar", Files.readAllLines(path).get(0));
+		}
+		assertEquals(count, SLOW_REQUESTS.get());
+		assertEquals(3, MAX_IN_FLIGHT.get());
+
+		// shouldLoad is still honored
+		SLOW_REQUESTS.set(0);
+		assertEquals(paths, downloader.download(keys));
+		assertEquals(0, SLOW_REQUESTS.get());
+
+		// First failure stops the download
+		downloader.clean();
+		final String[] withMissing = new String[count+1];
+		withMissing[0] = MISSING_JAR_PLUGIN_KEY;
+		System.arraycopy(keys, 0, withMissing, 1, count);
+		downloader.setMaxConcurrentDownloads(2);
+		SLOW_REQUESTS.set(0);
+		// The slow jar requested with the missing one is pending until the end of the test
+		slowGate = new CountDownLatch(1);
+		try {
+			assertThrows(IOException.class, () -> downloader.download(withMissing));
+			// The failure stops the process, only the jar requested before the failure may be sent
+			assertTrue(SLOW_REQUESTS.get()<=1, SLOW_REQUESTS.get()+" jars were requested");
+			// The pending download is cancelled, no jar is downloaded and its temporary file is deleted
+			assertEquals(Collections.emptySet(), listFiles(dir));
+		} finally {
+			slowGate.countDown();
+		}
+	}
+
+	private static Set<Path> listFiles(Path dir) throws IOException {
+		if (!Files.exists(dir)) {
+			return Collections.emptySet();
+		}
+		try (Stream<Path> files = Files.list(dir)) {
+			return files.collect(Collectors.toSet());
+		}
+	}
+
+	@Test
+	void testRevalidation(@TempDir Path dir) throws Exception {
+		final TestPluginDownloader downloader = new TestPluginDownloader(server.url(REPOSITORY_PATH).uri(), dir);
+		downloader.map.put("versioned", downloader.getUri().resolve(VERSIONED_JAR_PATH));
+		downloader.map.put("dated", downloader.getUri().resolve(DATED_JAR_PATH));
+		final Path versioned = dir.resolve("versioned.jar");
+		final Path dated = dir.resolve("dated.jar");
+		VERSION.set(1);
+		NOT_MODIFIED.set(0);
+		assertFalse(downloader.isRevalidation());
+		downloader.download("versioned", "dated", VALID_PLUGIN_KEY);
+		assertEquals("version 1 is longer than version 2", Files.readAllLines(versioned).get(0));
+		assertTrue(Files.exists(downloader.getMetadataFile(versioned)));
+		assertTrue(Files.exists(downloader.getMetadataFile(dated)));
+		// No validator => no metadata
+		assertFalse(Files.exists(downloader.getMetadataFile(dir.resolve("test.jar"))));
+
+		// Without revalidation, downloaded jars are not requested again
+		clearRequests();
+		VERSION.set(2);
+		downloader.download("versioned", "dated", VALID_PLUGIN_KEY);
+		assertEquals(REPOSITORY_PATH, server.takeRequest().getPath());
+		assertNull(server.takeRequest(100, TimeUnit.MILLISECONDS));
+		assertEquals("version 1 is longer than version 2", Files.readAllLines(versioned).get(0));
+
+		// With revalidation, changed jars are downloaded again
+		downloader.setRevalidation(true);
+		downloader.download("versioned", "dated", VALID_PLUGIN_KEY);
+		assertEquals("version 2", Files.readAllLines(versioned).get(0));
+		assertEquals(1, NOT_MODIFIED.get());
+		assertEquals(FAKE_JAR_FILE_CONTENT, Files.readAllLines(dated).get(0));
+
+		// Unchanged jars are not downloaded again, even concurrently
+		downloader.setMaxConcurrentDownloads(2);
+		clearRequests();
+		downloader.download("versioned", "dated", VALID_PLUGIN_KEY);
+		assertEquals(3, NOT_MODIFIED.get());
+		assertEquals("version 2", Files.readAllLines(versioned).get(0));
+		assertEquals(REPOSITORY_PATH, server.takeRequest().getPath());
+		for (int i = 0; i < 2; i++) {
+			final RecordedRequest request = server.takeRequest();
+			if (VERSIONED_JAR_PATH.equals(request.getPath())) {
+				assertEquals("\"v2\"", request.getHeader("If-None-Match"));
+				assertNull(request.getHeader("If-Modified-Since"));
+			} else {
+				assertEquals(DATED_JAR_PATH, request.getPath());
+				assertEquals(LAST_MODIFIED, request.getHeader("If-Modified-Since"));
+			}
+		}
+		// Jar without metadata is not revalidated
+		assertNull(server.takeRequest(100, TimeUnit.MILLISECONDS));
+
+		// A lost jar is downloaded without conditional headers
+		Files.delete(versioned);
+		assertFalse(downloader.getJarRequestBuilder(downloader.map.get("versioned")).build().headers().firstValue("If-None-Match").isPresent());
+		downloader.download("versioned");
+		assertEquals("version 2", Files.readAllLines(versioned).get(0));
+		assertEquals(3, NOT_MODIFIED.get());
+	}
+
+	@Test
+	void testIndexCache(@TempDir Path dir) throws Exception {
+		final URI uri = server.url(CACHED_REPOSITORY_PATH).uri();
+		final Set<String> expectedKeys = new HashSet<>(Arrays.asList(VALID_PLUGIN_KEY,MISSING_JAR_PLUGIN_KEY));
+		final TestPluginDownloader downloader = new TestPluginDownloader(uri, dir);
+		// Cache is disabled by default
+		INDEX_REQUESTS.set(0);
+		downloader.getURIMap();
+		downloader.getURIMap();
+		assertEquals(2, INDEX_REQUESTS.get());
+		assertFalse(Files.exists(downloader.getIndexFile()));
+		assertThrows(IllegalArgumentException.class, () -> downloader.setIndexTimeToLive(1, null));
+
+		// Index is cached in memory and on disk
+		downloader.setIndexTimeToLive(1, TimeUnit.HOURS);
+		INDEX_REQUESTS.set(0);
+		assertEquals(expectedKeys, downloader.getURIMap().keySet());
+		assertEquals(expectedKeys, downloader.getURIMap().keySet());
+		assertEquals(1, downloader.download(VALID_PLUGIN_KEY).size());
+		assertEquals(1, INDEX_REQUESTS.get());
+		assertTrue(Files.isRegularFile(downloader.getIndexFile()));
+
+		// Disk copy survives restarts
+		final TestPluginDownloader other = new TestPluginDownloader(uri, dir);
+		other.setIndexTimeToLive(1, TimeUnit.HOURS);
+		assertEquals(expectedKeys, other.getURIMap().keySet());
+		assertEquals(1, INDEX_REQUESTS.get());
+
+		// Expired index is revalidated
+		other.setIndexTimeToLive(0, TimeUnit.SECONDS);
+		clearRequests();
+		assertEquals(expectedKeys, other.getURIMap().keySet());
+		assertEquals(2, INDEX_REQUESTS.get());
+		final RecordedRequest request = server.takeRequest();
+		assertEquals(INDEX_ETAG, request.getHeader("If-None-Match"));
+		assertEquals(REPOSITORY_HEADER_VALUE, request.getHeader(CUSTOM_HEADER));
+
+		// Stale index is returned while revalidated
+		other.setStaleWhileRevalidate(true);
+		indexGate = new CountDownLatch(1);
+		try {
+			assertEquals(expectedKeys, other.getURIMap().keySet());
+			assertEquals(expectedKeys, other.getURIMap().keySet());
+			for (int i = 0; i < 100 && INDEX_REQUESTS.get()<3; i++) {
+				Thread.sleep(10);
+			}
+			// Only one refresh at a time
+			assertEquals(3, INDEX_REQUESTS.get());
+		} finally {
+			indexGate.countDown();
+		}
+		// Wait for the end of the refresh
+		other.setStaleWhileRevalidate(false);
+		assertEquals(expectedKeys, other.getURIMap().keySet());
+
+		// Clean deletes the cached index
+		assertTrue(other.clean());
+		assertFalse(Files.exists(other.getIndexFile()));
+		assertEquals(expectedKeys, other.getURIMap().keySet());
+		assertTrue(Files.isRegularFile(other.getIndexFile()));
+	}
+
+	@Test
+	void testIndexCacheMissingKey(@TempDir Path dir) throws Exception {
+		final TestPluginDownloader downloader = new TestPluginDownloader(server.url(REPOSITORY_PATH).uri(), dir);
+		downloader.setIndexTimeToLive(1, TimeUnit.HOURS);
+		clearRequests();
+		assertEquals(1, downloader.download(VALID_PLUGIN_KEY).size());
+		assertEquals(REPOSITORY_PATH, server.takeRequest().getPath());
+		assertEquals(PLUGINS_JAR_URI_PATH, server.takeRequest().getPath());
+
+		// A plugin published after the index was cached is found
+		downloader.map.put("published", downloader.map.get(VALID_PLUGIN_KEY));
+		assertEquals(1, downloader.download("published").size());
+		assertEquals(REPOSITORY_PATH, server.takeRequest().getPath());
+		assertTrue(downloader.getURIMap().containsKey("published"));
+
+		// An unknown key revalidates the index once
+		assertThrows(IllegalArgumentException.class, () -> downloader.download("unknown"));
+		assertEquals(REPOSITORY_PATH, server.takeRequest().getPath());
+		assertNull(server.takeRequest(100, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	void testIndexRefreshFailure(@TempDir Path dir) throws Exception {
+		final TestPluginDownloader downloader = new TestPluginDownloader(server.url("/repositoryKo").uri(), dir);
+		assertThrows(IllegalArgumentException.class, () -> downloader.setIndexRefreshFailureHandler(null));
+		final CompletableFuture<Throwable> failure = new CompletableFuture<>();
+		downloader.setIndexRefreshFailureHandler(failure::complete);
+		// An expired index cached by a previous run
+		Files.write(downloader.getIndexFile(), REPOSITORY_OK_CONTENT.getBytes(StandardCharsets.UTF_8));
+		downloader.setIndexTimeToLive(0, TimeUnit.SECONDS);
+		downloader.setStaleWhileRevalidate(true);
+		assertEquals(new HashSet<>(Arrays.asList(VALID_PLUGIN_KEY,MISSING_JAR_PLUGIN_KEY)), downloader.getURIMap().keySet());
+		// The failure of the background refresh is reported to the handler
+		final Throwable e = failure.get(5, TimeUnit.SECONDS);
+		assertTrue(e instanceof IOException);
+		assertEquals("repositoryKo", e.getMessage());
+	}
+
+	@Test
+	void testStreamingIndex(@TempDir Path dir) throws Exception {
+		final LineIndexDownloader downloader = new LineIndexDownloader(server.url(LARGE_REPOSITORY_PATH).uri(), dir);
+		// Parsing stops as soon as the keys are found
+		final Map<String, URI> map = downloader.getURIMap(new HashSet<>(Arrays.asList("key10", "key20")));
+		assertEquals(new HashSet<>(Arrays.asList("key10", "key20")), map.keySet());
+		assertEquals(downloader.getUri().resolve("/plugins/plugin20.jar"), map.get("key20"));
+		assertEquals(21, downloader.readLines.get());
+		assertTrue(downloader.getURIMap(Collections.emptySet()).isEmpty());
+
+		final Collection<Path> paths = downloader.download(VALID_PLUGIN_KEY);
+		assertEquals(FAKE_JAR_FILE_CONTENT, Files.readAllLines(paths.iterator().next()).get(0));
+		assertEquals(1, downloader.readLines.get());
+
+		// The whole index is read when a key is missing
+		assertThrows(IllegalArgumentException.class, () -> downloader.download(VALID_PLUGIN_KEY, "missing"));
+		assertEquals(LARGE_REPOSITORY_SIZE, downloader.readLines.get());
+
+		// With the index cache, the whole index is parsed once
+		downloader.setIndexTimeToLive(1, TimeUnit.HOURS);
+		assertEquals(Collections.singleton("key10"), downloader.getURIMap(Collections.singleton("key10")).keySet());
+		assertEquals(LARGE_REPOSITORY_SIZE, downloader.getURIMap().size());
+
+		// Default implementation relies on getURIMap(InputStream)
+		final TestPluginDownloader defaultDownloader = new TestPluginDownloader(server.url(REPOSITORY_PATH).uri(), dir);
+		assertEquals(Collections.singleton(VALID_PLUGIN_KEY), defaultDownloader.getURIMap(new HashSet<>(Arrays.asList(VALID_PLUGIN_KEY, "unknown"))).keySet());
+	}
+
+	@Test
+	void testDigest(@TempDir Path dir) throws Exception {
+		final String sha256 = toHex(MessageDigest.getInstance("SHA-256").digest(FAKE_JAR_FILE_CONTENT.getBytes(StandardCharsets.UTF_8)));
+		final String sha512 = toHex(MessageDigest.getInstance("SHA-512").digest(FAKE_JAR_FILE_CONTENT.getBytes(StandardCharsets.UTF_8)));
+		final TestPluginDownloader downloader = new TestPluginDownloader(server.url(REPOSITORY_PATH).uri(), dir);
+		final URI jarURI = server.url(PLUGINS_JAR_URI_PATH).uri();
+		final URI flakyURI = server.url(FLAKY_JAR_PATH).uri();
+		assertNull(downloader.getExpectedDigest(jarURI));
+		assertNull(downloader.getExpectedDigest(URI.create(jarURI+"#md5="+sha256)));
+		assertEquals("SHA-512", downloader.getExpectedDigest(URI.create(jarURI+"#sha512="+sha512)).getAlgorithm());
+		assertThrows(IOException.class, () -> downloader.getExpectedDigest(URI.create(jarURI+"#sha256=xyz")));
+		assertThrows(IllegalArgumentException.class, () -> downloader.setDigestMismatchRetries(-1));
+		assertEquals(2, downloader.getDigestMismatchRetries());
+
+		// Valid digests
+		downloader.map.put("sha256", URI.create(jarURI+"#sha256="+sha256));
+		downloader.map.put("sha512", URI.create(flakyURI+"#SHA512="+sha512.toUpperCase()));
+		FLAKY_REQUESTS.set(0);
+		final Collection<Path> paths = downloader.download("sha256");
+		assertEquals(FAKE_JAR_FILE_CONTENT, Files.readAllLines(paths.iterator().next()).get(0));
+		// Mismatches are retried
+		assertEquals(FAKE_JAR_FILE_CONTENT, Files.readAllLines(downloader.download("sha512").iterator().next()).get(0));
+		assertEquals(2, FLAKY_REQUESTS.get());
+
+		// Invalid digest
+		downloader.clean();
+		downloader.setDigestMismatchRetries(3);
+		FLAKY_REQUESTS.set(0);
+		downloader.map.put("wrong", URI.create(flakyURI+"#sha256="+String.join("", Collections.nCopies(64, "0"))));
+		assertThrows(IOException.class, () -> downloader.download("wrong"));
+		assertEquals(4, FLAKY_REQUESTS.get());
+		// No truncated or temporary file is left
+		try (Stream<Path> files = Files.list(dir)) {
+			assertEquals(0, files.count());
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		final StringBuilder result = new StringBuilder();
+		for (byte b : bytes) {
+			result.append(String.format("%02x", b));
+		}
+		return result.toString();
+	}
+
 	private void clearRequests() throws InterruptedException {
 		do {} while(server.takeRequest(100, TimeUnit.MILLISECONDS)!=null);
 	}
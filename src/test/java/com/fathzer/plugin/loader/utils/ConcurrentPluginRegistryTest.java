@@ -0,0 +1,203 @@
+package com.fathzer.plugin.loader.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.fathzer.plugin.loader.utils.ConcurrentPluginRegistry.Generation;
+
+class ConcurrentPluginRegistryTest {
+	private static final class FakePlugin {
+		private final String key;
+
+		private FakePlugin(String key) {
+			this.key = key;
+		}
+	}
+
+	@Test
+	void test() {
+		final ConcurrentPluginRegistry<FakePlugin> registry = new ConcurrentPluginRegistry<>(p -> p.key);
+		final Map<String, FakePlugin> empty = registry.getRegistered();
+		assertTrue(empty.isEmpty());
+		final FakePlugin a = new FakePlugin("a");
+		assertNull(registry.register(a));
+		// Snapshots are not modified
+		assertTrue(empty.isEmpty());
+		assertSame(a, registry.get("a"));
+		assertSame(a, registry.register(new FakePlugin("a")));
+		assertNotSame(a, registry.get("a"));
+
+		final FakePlugin b = new FakePlugin("b");
+		final FakePlugin c = new FakePlugin("c");
+		final List<FakePlugin> newOnes = registry.registerAll(Arrays.asList(new FakePlugin("a"), b, c));
+		assertEquals(Arrays.asList(b, c), newOnes);
+		final Map<String, FakePlugin> snapshot = registry.getRegistered();
+		assertEquals(new HashSet<>(Arrays.asList("a","b","c")), snapshot.keySet());
+		assertThrows(UnsupportedOperationException.class, () -> snapshot.remove("a"));
+
+		assertSame(c, registry.unregister("c"));
+		assertNull(registry.unregister("c"));
+		assertNull(registry.get("c"));
+		assertEquals(3, snapshot.size());
+		assertEquals(2, registry.getRegistered().size());
+		
+		assertThrows(IllegalArgumentException.class, () -> new ConcurrentPluginRegistry<>(null));
+	}
+
+	@Test
+	void testAtomicRegisterAll() throws Exception {
+		final ConcurrentPluginRegistry<FakePlugin> registry = new ConcurrentPluginRegistry<>(p -> p.key);
+		final AtomicBoolean stop = new AtomicBoolean();
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			final Future<Boolean> reader = executor.submit(() -> {
+				while (!stop.get()) {
+					final Map<String, FakePlugin> snapshot = registry.getRegistered();
+					// Plugins are always registered by pairs
+					if (snapshot.size()%2!=0) {
+						return false;
+					}
+				}
+				return true;
+			});
+			executor.submit(() -> {
+				for (int i = 0; i < 1000; i++) {
+					final List<FakePlugin> plugins = new ArrayList<>();
+					plugins.add(new FakePlugin("x"+i));
+					plugins.add(new FakePlugin("y"+i));
+					registry.registerAll(plugins);
+				}
+				stop.set(true);
+			}).get();
+			assertTrue(reader.get());
+			assertEquals(2000, registry.getRegistered().size());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	void testGenerations() {
+		final ConcurrentPluginRegistry<FakePlugin> registry = new ConcurrentPluginRegistry<>(p -> p.key);
+		final FakePlugin a = new FakePlugin("a");
+		registry.register(a);
+		final Generation<FakePlugin> first = registry.acquire();
+		assertSame(a, first.get("a"));
+		registry.register(new FakePlugin("b"));
+		final Generation<FakePlugin> second = registry.acquire();
+		assertTrue(second.getNumber()>first.getNumber());
+		assertNull(first.get("b"));
+		assertEquals(2, second.getRegistered().size());
+
+		// Acquiring the current generation twice returns two generations with the same content
+		final Generation<FakePlugin> other = registry.acquire();
+		assertNotSame(second, other);
+		assertEquals(second.getNumber(), other.getNumber());
+		assertSame(second.getRegistered(), other.getRegistered());
+		other.close();
+
+		final FakePlugin c = new FakePlugin("c");
+		final CompletableFuture<Void> drained = registry.replaceAll(Collections.singleton(c));
+		assertEquals(Collections.singletonMap("c", c), registry.getRegistered());
+		assertNull(registry.get("a"));
+		// Old generations are still usable
+		assertSame(a, first.get("a"));
+		assertFalse(drained.isDone());
+		second.close();
+		assertFalse(drained.isDone());
+		first.close();
+		assertTrue(drained.isDone());
+
+		// Nobody uses the current generation
+		assertTrue(registry.replaceAll(Collections.emptyList()).isDone());
+		assertTrue(registry.getRegistered().isEmpty());
+	}
+
+	@Test
+	void testCloseTwice() {
+		final ConcurrentPluginRegistry<FakePlugin> registry = new ConcurrentPluginRegistry<>(p -> p.key);
+		final FakePlugin a = new FakePlugin("a");
+		registry.register(a);
+		final Generation<FakePlugin> first = registry.acquire();
+		final Generation<FakePlugin> second = registry.acquire();
+		first.close();
+		first.close();
+		// Closing a generation twice does not release the generations acquired by others
+		try (Generation<FakePlugin> generation = registry.acquire()) {
+			assertSame(a, generation.get("a"));
+		}
+		final CompletableFuture<Void> drained = registry.replaceAll(Collections.emptyList());
+		assertFalse(drained.isDone());
+		second.close();
+		assertTrue(drained.isDone());
+		second.close();
+		assertTrue(registry.getPreviousGenerationsReleased().isDone());
+		assertTrue(registry.replaceAll(Collections.singleton(a)).isDone());
+	}
+
+	@Test
+	void testLazy() throws Exception {
+		final ConcurrentPluginRegistry<FakePlugin> registry = new ConcurrentPluginRegistry<>(p -> p.key);
+		final AtomicInteger count = new AtomicInteger();
+		final CountDownLatch started = new CountDownLatch(1);
+		registry.registerLazy("a", () -> {
+			count.incrementAndGet();
+			started.countDown();
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return new FakePlugin("a");
+		});
+		final Generation<FakePlugin> generation = registry.acquire();
+		assertEquals(Collections.singleton("a"), registry.getUninstantiated());
+		final ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			final List<Future<FakePlugin>> results = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				results.add(executor.submit(() -> registry.get("a")));
+			}
+			started.await();
+			final FakePlugin a = generation.get("a");
+			for (Future<FakePlugin> result : results) {
+				assertSame(a, result.get());
+			}
+			assertEquals(1, count.get());
+			assertTrue(registry.getUninstantiated().isEmpty());
+			assertSame(a, registry.getRegistered().get("a"));
+		} finally {
+			executor.shutdown();
+			generation.close();
+		}
+
+		registry.registerLazy("b", () -> {throw new IllegalStateException();});
+		assertThrows(IllegalStateException.class, () -> registry.get("b"));
+		// The failed plugin is unregistered even if the failure handler threw an exception
+		assertTrue(registry.getUninstantiated().isEmpty());
+		assertFalse(registry.getRegistered().containsKey("b"));
+		assertNull(registry.get("b"));
+
+		registry.registerLazy("c", () -> new FakePlugin("c"));
+		assertNull(registry.unregister("c"));
+		assertNull(registry.get("c"));
+		registry.registerLazy("c", () -> new FakePlugin("c"));
+		registry.registerAll(Collections.singletonList(new FakePlugin("c")));
+		assertTrue(registry.getUninstantiated().isEmpty());
+	}
+}
@@ -0,0 +1,160 @@
+package com.fathzer.plugin.loader.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.fathzer.plugin.loader.PluginInstantiationException;
+
+class InstanceScopeTest {
+	public static class Counter {
+		private int count;
+
+		public int increment() {
+			return ++count;
+		}
+	}
+
+	public static class Failing {
+		public Failing() {
+			throw new IllegalStateException("Not instantiable");
+		}
+	}
+
+	@Test
+	void testSingleton() throws Exception {
+		final InstanceScope<Counter> scope = InstanceScope.singleton(Counter.class);
+		final Counter counter = scope.acquire();
+		assertSame(counter, scope.acquire());
+		assertEquals(1, (int)scope.apply(Counter::increment));
+		final ExecutorService service = Executors.newSingleThreadExecutor();
+		try {
+			assertSame(counter, service.submit(scope::acquire).get());
+		} finally {
+			service.shutdown();
+		}
+
+		final InstanceScope<Failing> failing = InstanceScope.singleton(Failing.class);
+		final PluginInstantiationException e = assertThrows(PluginInstantiationException.class, failing::acquire);
+		assertTrue(e.getCause() instanceof IllegalStateException);
+		assertThrows(PluginInstantiationException.class, InstanceScope.singleton(() -> null)::acquire);
+		assertThrows(IllegalArgumentException.class, () -> InstanceScope.singleton((Class<Counter>)null));
+	}
+
+	@Test
+	void testPerThread() throws Exception {
+		final AtomicInteger created = new AtomicInteger();
+		final InstanceScope.PerThread<Counter> scope = InstanceScope.perThread(() -> {
+			created.incrementAndGet();
+			return new Counter();
+		});
+		final Counter counter = scope.acquire();
+		assertSame(counter, scope.acquire());
+		final ExecutorService service = Executors.newSingleThreadExecutor();
+		try {
+			final Counter other = service.submit(scope::acquire).get();
+			assertNotSame(counter, other);
+			assertSame(other, service.submit(scope::acquire).get());
+			// Removing the instance of a thread does not change the instances of other threads
+			service.submit(scope::remove).get();
+			assertSame(counter, scope.acquire());
+			final Counter third = service.submit(scope::acquire).get();
+			assertNotSame(other, third);
+		} finally {
+			service.shutdown();
+		}
+		assertEquals(3, created.get());
+		scope.remove();
+		assertNotSame(counter, scope.acquire());
+		assertEquals(4, created.get());
+	}
+
+	@Test
+	void testPool() throws Exception {
+		final InstancePool<Counter> pool = InstanceScope.pool(Counter.class, 2);
+		assertEquals(2, pool.getMaxSize());
+		final Counter first = pool.acquire();
+		final Counter second = pool.acquire();
+		assertNotSame(first, second);
+		assertEquals(2, pool.getActiveCount());
+		assertEquals(0, pool.getIdleCount());
+		// The pool is exhausted
+		assertNull(pool.tryAcquire(10, TimeUnit.MILLISECONDS));
+		assertEquals(1, pool.getWaitCount());
+
+		pool.release(second);
+		assertEquals(1, pool.getActiveCount());
+		assertEquals(1, pool.getIdleCount());
+		// Released instances are reused
+		assertSame(second, pool.acquire());
+		pool.release(second);
+		pool.release(first);
+		assertEquals(2, pool.getCreatedCount());
+		assertEquals(3, pool.getBorrowCount());
+		assertEquals(0, pool.getActiveCount());
+		assertEquals(2, pool.getIdleCount());
+		assertThrows(IllegalArgumentException.class, () -> pool.release(null));
+		// Released or unknown instances can't be released
+		assertThrows(IllegalArgumentException.class, () -> pool.release(first));
+		assertThrows(IllegalArgumentException.class, () -> pool.release(new Counter()));
+		assertEquals(0, pool.getActiveCount());
+		assertEquals(2, pool.getIdleCount());
+
+		assertThrows(IllegalArgumentException.class, () -> InstanceScope.pool(Counter.class, 0));
+		assertThrows(IllegalArgumentException.class, () -> InstanceScope.pool((Class<Counter>)null, 1));
+	}
+
+	@Test
+	void testPoolFailure() {
+		final InstancePool<Failing> pool = InstanceScope.pool(Failing.class, 1);
+		assertThrows(PluginInstantiationException.class, pool::acquire);
+		// The failed instantiation does not consume the pool's capacity
+		assertEquals(0, pool.getActiveCount());
+		assertThrows(PluginInstantiationException.class, pool::acquire);
+		assertEquals(0, pool.getCreatedCount());
+	}
+
+	@Test
+	void testPoolContention() throws Exception {
+		final InstancePool<Counter> pool = InstanceScope.pool(Counter.class, 2);
+		final int threads = 8;
+		final int loops = 1000;
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicInteger concurrent = new AtomicInteger();
+		final AtomicInteger maxConcurrent = new AtomicInteger();
+		final ExecutorService service = Executors.newFixedThreadPool(threads);
+		try {
+			final Future<?>[] futures = new Future<?>[threads];
+			for (int i = 0; i < threads; i++) {
+				futures[i] = service.submit(() -> {
+					start.await();
+					for (int j = 0; j < loops; j++) {
+						pool.apply(c -> {
+							maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+							c.increment();
+							return concurrent.decrementAndGet();
+						});
+					}
+					return null;
+				});
+			}
+			start.countDown();
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			service.shutdown();
+		}
+		assertTrue(maxConcurrent.get()<=2);
+		assertTrue(pool.getCreatedCount()<=2);
+		assertEquals(threads*loops, pool.getBorrowCount());
+		assertEquals(0, pool.getActiveCount());
+	}
+}
@@ -0,0 +1,100 @@
+package com.fathzer.plugin.loader.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static com.fathzer.plugin.loader.Constants.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+
+import com.fathzer.plugin.loader.PluginInstantiationException;
+import com.fathzer.plugin.loader.PluginLoaderListener;
+import com.fathzer.plugin.loader.jar.JarPluginLoader;
+import com.fathzer.plugin.loader.utils.PluginLoaderMetrics.Durations;
+import com.fathzer.plugin.loader.utils.PluginLoaderMetrics.Phase;
+
+class PluginLoaderMetricsTest {
+
+	@SuppressWarnings("rawtypes")
+	@Test
+	void test() throws IOException {
+		final PluginLoaderMetrics<Path> metrics = new PluginLoaderMetrics<>();
+		final JarPluginLoader loader = new JarPluginLoader();
+		loader.withListener(metrics);
+		assertEquals(1, loader.getPlugins(OK_FILE, Supplier.class).size());
+		assertEquals(Collections.singleton(OK_FILE), metrics.getSources());
+		for (Phase phase : Phase.values()) {
+			final Durations durations = metrics.get(OK_FILE, phase);
+			assertEquals(1, durations.getCount(), phase.name());
+			assertTrue(durations.getTotal()>0, phase.name());
+		}
+		assertEquals(0, metrics.getFailureCount(OK_FILE));
+		// The whole scan includes the other phases
+		assertTrue(metrics.get(OK_FILE, Phase.SCAN).getTotal()>=metrics.get(OK_FILE, Phase.INSTANTIATION).getTotal());
+
+		// Instantiation failures
+		loader.withInstanceBuilder(new com.fathzer.plugin.loader.InstanceBuilder() {
+			@Override
+			public <T> T get(Class<T> aClass) throws Exception {
+				throw new IllegalStateException();
+			}
+		});
+		loader.withExceptionConsumer(e -> {});
+		assertTrue(loader.getPlugins(OK_FILE, Supplier.class).isEmpty());
+		assertEquals(1, metrics.getFailureCount(OK_FILE));
+		assertEquals(2, metrics.get(OK_FILE, Phase.SCAN).getCount());
+		assertEquals(1, metrics.get(OK_FILE, Phase.INSTANTIATION).getCount());
+
+		metrics.clear();
+		assertTrue(metrics.getSources().isEmpty());
+		assertEquals(0, metrics.get(OK_FILE, Phase.SCAN).getCount());
+		assertThrows(IllegalArgumentException.class, () -> loader.withListener(null));
+	}
+
+	@Test
+	void testPercentiles() {
+		final PluginLoaderMetrics<String> metrics = new PluginLoaderMetrics<>();
+		for (int i = 100; i > 0; i--) {
+			metrics.classLoaded("a", "class"+i, i);
+		}
+		metrics.classLoaded("b", "class", 1000);
+		final Durations durations = metrics.get("a", Phase.CLASS_LOADING);
+		assertEquals(100, durations.getCount());
+		assertEquals(5050, durations.getTotal());
+		assertEquals(1, durations.getPercentile(0));
+		assertEquals(50, durations.getPercentile(50));
+		assertEquals(99, durations.getPercentile(99));
+		assertEquals(100, durations.getMax());
+		assertThrows(IllegalArgumentException.class, () -> durations.getPercentile(101));
+
+		final Durations all = metrics.get(Phase.CLASS_LOADING);
+		assertEquals(101, all.getCount());
+		assertEquals(1000, all.getMax());
+		assertEquals(0, metrics.get("c", Phase.CLASS_LOADING).getPercentile(50));
+		assertEquals(0, metrics.get("a", Phase.INSTANTIATION).getMax());
+
+		metrics.instantiationFailed("b", "class", new PluginInstantiationException("failed"), 1);
+		assertEquals(1, metrics.getFailureCount("b"));
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Test
+	void testCombinedListeners() throws IOException {
+		final PluginLoaderMetrics<Path> metrics = new PluginLoaderMetrics<>();
+		final PluginLoaderMetrics<Object> other = new PluginLoaderMetrics<>();
+		final JarPluginLoader loader = new JarPluginLoader();
+		final PluginLoaderListener<Path> disabled = PluginLoaderListener.of(PluginLoaderListener.NONE);
+		assertFalse(disabled.isEnabled());
+		loader.withListener(PluginLoaderListener.of(metrics, PluginLoaderListener.NONE, other));
+		assertEquals(1, loader.getPlugins(OK_FILE, Supplier.class).size());
+		for (Phase phase : Phase.values()) {
+			assertEquals(1, metrics.get(OK_FILE, phase).getCount(), phase.name());
+			assertEquals(1, other.get(OK_FILE, phase).getCount(), phase.name());
+		}
+		assertThrows(IllegalArgumentException.class, () -> PluginLoaderListener.of((PluginLoaderListener<Object>[])null));
+		assertThrows(IllegalArgumentException.class, () -> PluginLoaderListener.of(metrics, null));
+	}
+}
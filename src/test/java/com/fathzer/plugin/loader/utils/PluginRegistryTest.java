@@ -2,10 +2,13 @@ package com.fathzer.plugin.loader.utils;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 import org.junit.jupiter.api.Test;
@@ -65,4 +68,48 @@ class PluginRegistryTest {
 		
 		assertThrows(IllegalArgumentException.class, () -> new PluginRegistry<>(null));
 	}
+
+	@Test
+	void testLazy() {
+		final PluginRegistry<Api> registry = new PluginRegistry<>(Api::get);
+		final AtomicInteger count = new AtomicInteger();
+		registry.registerLazy("a", () -> {
+			count.incrementAndGet();
+			return new FakePlugin("a");
+		});
+		assertEquals(0, count.get());
+		assertTrue(registry.getRegistered().isEmpty());
+		assertEquals(Collections.singleton("a"), registry.getUninstantiated());
+		final Api a = registry.get("a");
+		assertEquals("a", a.get());
+		assertSame(a, registry.get("a"));
+		assertEquals(1, count.get());
+		assertTrue(registry.getUninstantiated().isEmpty());
+		assertEquals(Collections.singleton("a"), registry.getRegistered().keySet());
+
+		// Registering an instance replaces a lazy plugin
+		registry.registerLazy("b", () -> {throw new IllegalStateException();});
+		final FakePlugin b = new FakePlugin("b");
+		registry.register(b);
+		assertSame(b, registry.get("b"));
+
+		// Test unregister
+		registry.registerLazy("c", () -> new FakePlugin("c"));
+		assertNull(registry.unregister("c"));
+		assertNull(registry.get("c"));
+
+		// Test failure handler
+		registry.registerLazy("d", () -> {throw new IllegalStateException();});
+		assertThrows(IllegalStateException.class, () -> registry.get("d"));
+		// Factory is called only once
+		assertNull(registry.get("d"));
+		final List<String> failures = new ArrayList<>();
+		registry.setFailureHandler((k, e) -> failures.add(k));
+		registry.registerLazy("e", () -> null);
+		assertNull(registry.get("e"));
+		assertEquals(Collections.singletonList("e"), failures);
+
+		assertThrows(IllegalArgumentException.class, () -> registry.registerLazy("f", null));
+		assertThrows(IllegalArgumentException.class, () -> registry.setFailureHandler(null));
+	}
 }